@@ -0,0 +1,96 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi;
+
+/**
+ * An immutable snapshot of a {@link Configuration}'s separators, compiled into a table that
+ * classifies any single-byte character with one array load. Characters outside the single-byte
+ * range are always {@link #WORD} characters.
+ *
+ * <p>
+ * Created by {@link Configuration#compile()}; tokenizers take a new snapshot once per interchange,
+ * after the ISA segment has assigned the sub-element separator.
+ */
+public final class CompiledConfiguration {
+
+  /** Class of a character that is part of a word. */
+  public static final byte WORD = 0;
+
+  /** Class of the element separator. */
+  public static final byte ELEMENT = 1;
+
+  /** Class of the sub-element separator. */
+  public static final byte SUBELEMENT = 2;
+
+  /** Class of the segment terminator. */
+  public static final byte SEGMENT = 3;
+
+  /** Class of the repetition separator. */
+  public static final byte REPETITION = 4;
+
+  /** Value of an unassigned separator. */
+  public static final int UNASSIGNED = -1;
+
+  private static final int TABLE_SIZE = 0x100;
+
+  private final byte[] classes = new byte[TABLE_SIZE];
+  private final int segmentTerminator;
+  private final int elementSeparator;
+  private final int subElementSeparator;
+  private final int repetitionSeparator;
+
+  CompiledConfiguration(char segmentTerminator, char elementSeparator,
+      Character subElementSeparator, Character repetitionSeparator) {
+    this.segmentTerminator = segmentTerminator;
+    this.elementSeparator = elementSeparator;
+    this.subElementSeparator = subElementSeparator == null ? UNASSIGNED : subElementSeparator;
+    this.repetitionSeparator = repetitionSeparator == null ? UNASSIGNED : repetitionSeparator;
+
+    // Assigned in increasing order of precedence, in case a document reuses a character.
+    assign(this.repetitionSeparator, REPETITION);
+    assign(this.subElementSeparator, SUBELEMENT);
+    assign(this.elementSeparator, ELEMENT);
+    assign(this.segmentTerminator, SEGMENT);
+  }
+
+  private void assign(int separator, byte characterClass) {
+    if (separator >= 0 && separator < TABLE_SIZE) {
+      classes[separator] = characterClass;
+    }
+  }
+
+  /**
+   * Returns the class of {@code ch}: one of {@link #WORD}, {@link #ELEMENT}, {@link #SUBELEMENT},
+   * {@link #SEGMENT} or {@link #REPETITION}.
+   */
+  public byte classOf(int ch) {
+    return ch < TABLE_SIZE ? classes[ch] : WORD;
+  }
+
+  /** Returns whether {@code ch} terminates a word. The repetition separator does not. */
+  public boolean isWordTerminal(int ch) {
+    final byte characterClass = classOf(ch);
+    return characterClass != WORD && characterClass != REPETITION;
+  }
+
+  public int getSegmentTerminator() {
+    return segmentTerminator;
+  }
+
+  public int getElementSeparator() {
+    return elementSeparator;
+  }
+
+  /** Returns the sub-element separator, or {@link #UNASSIGNED} before the ISA has been read. */
+  public int getSubElementSeparator() {
+    return subElementSeparator;
+  }
+
+  /** Returns the repetition separator, or {@link #UNASSIGNED} if the document has none. */
+  public int getRepetitionSeparator() {
+    return repetitionSeparator;
+  }
+
+  public boolean hasSubElementSeparator() {
+    return subElementSeparator != UNASSIGNED;
+  }
+}
@@ -15,12 +15,15 @@ public class Configuration {
   private char segmentTerminator = '~';
   private char elementSeparator = '*';
   private final LockingHolder<Character> subElementSeparator = LockingHolder.of((Character) null);
+  private Character repetitionSeparator;
+  private CompiledConfiguration compiled;
 
   public static class Builder {
 
     private Character segmentTerminator;
     private Character elementSeparator;
     private Character subElementSeparator;
+    private Character repetitionSeparator;
 
     public Builder setSegmentTerminator(char segmentTerminator) {
       this.segmentTerminator = segmentTerminator;
@@ -37,6 +40,11 @@ public class Configuration {
       return this;
     }
 
+    public Builder setRepetitionSeparator(char repetitionSeparator) {
+      this.repetitionSeparator = repetitionSeparator;
+      return this;
+    }
+
     public Configuration build() {
       final Configuration configuration = new Configuration();
       if (segmentTerminator != null) {
@@ -48,6 +56,7 @@ public class Configuration {
       if (subElementSeparator != null) {
         configuration.subElementSeparator.set(subElementSeparator);
       }
+      configuration.repetitionSeparator = repetitionSeparator;
 
       return configuration;
     }
@@ -57,6 +66,10 @@ public class Configuration {
     return new Builder();
   }
 
+  public boolean hasSubElementSeparator() {
+    return subElementSeparator.get() != null;
+  }
+
   public boolean isSubElementSeparator(char ch) {
     return subElementSeparator.get() != null && subElementSeparator.get() == ch;
   }
@@ -66,6 +79,19 @@ public class Configuration {
     // block.
     this.subElementSeparator.set(subElementSeparator);
     this.subElementSeparator.lock();
+    compiled = null;
+  }
+
+  /**
+   * Returns the separators compiled into a character class table. The result is cached until the
+   * sub-element separator is assigned, so compiling once per interchange is cheap.
+   */
+  public CompiledConfiguration compile() {
+    if (compiled == null) {
+      compiled = new CompiledConfiguration(segmentTerminator, elementSeparator,
+          subElementSeparator.get(), repetitionSeparator);
+    }
+    return compiled;
   }
 
   public boolean isSegmentTerminator(char ch) {
@@ -84,6 +110,15 @@ public class Configuration {
     return elementSeparator;
   }
 
+  public boolean hasRepetitionSeparator() {
+    return repetitionSeparator != null;
+  }
+
+  public char getRepetitionSeparator() {
+    Preconditions.checkState(repetitionSeparator != null, "Repetition separator not assigned");
+    return repetitionSeparator;
+  }
+
   public char getSubElementSeparator() {
     Preconditions
         .checkState(subElementSeparator.get() != null, "Sub-element separtor not assigned");
@@ -0,0 +1,291 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.grammar.GrammarLoader.Loop;
+import com.sociodyne.edi.grammar.GrammarLoader.Segment;
+import com.sociodyne.edi.parser.SegmentIdentifiers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+
+/**
+ * The loop structure of one transaction set, taken from its implementation guide: the loops, the
+ * order of the segments in each, and how HL loops nest. Grammars are read from a text form (see
+ * {@link GrammarLoader}) and compiled once into a table-driven state machine. Each state is a
+ * segment position; for each state and segment identifier, the table holds the loops to close and
+ * open and the next state, so {@link GrammarHandler} does one table lookup per segment.
+ *
+ * <p>
+ * A segment is matched by searching forward from the current position in the current loop, then
+ * by starting another iteration of the current loop, and then the same way in each enclosing loop.
+ * Segments that share an identifier but start different loops, such as the HL segments of a 271,
+ * are told apart by a qualifying element. Maximum use is read but not enforced, so only order and
+ * triggers determine loop boundaries.
+ *
+ * <p>
+ * Grammars are immutable and may be shared between threads. Grammars for the 270, 271, 276, 277
+ * and 835 transaction sets are built in, and apply to every version of them; they follow the
+ * 004010 implementation guides named in their files. A grammar may also be built in for a single
+ * version, as given by ST03 or GS08: the only one is for the 837 Professional, 004010X098A1. The
+ * Institutional and Dental guides, and other versions of the 837, have no grammar, so their
+ * segments are reported without loops. See {@link #forTransactionSet(String, String)}.
+ */
+public final class Grammar {
+
+  /** The state before the first segment of the transaction set. */
+  static final int START = 0;
+
+  private static final String RESOURCE_SUFFIX = ".grammar";
+
+  /**
+   * Built-in grammars by resource name, the transaction set identifier optionally followed by a
+   * version; {@code null} if there is none.
+   */
+  private static final Map<String, Grammar> BUILT_IN = new HashMap<String, Grammar>();
+
+  private final String transactionSetId;
+  /** Sorted codes of the segments in the grammar; indexes the columns of {@link #transitions}. */
+  private final int[] codes;
+  /** Qualifying element of each segment code, or 0. */
+  private final int[] qualifierElements;
+  /** Candidate transitions, in order of preference, by state and segment code. */
+  private final Transition[][][] transitions;
+  /** Name of the innermost loop of each state. */
+  private final String[] loopNames;
+
+  private final IdentityHashMap<Segment, Integer> states = new IdentityHashMap<Segment, Integer>();
+
+  private Grammar(Loop root) throws EdiException {
+    transactionSetId = root.name;
+
+    final List<Loop> stateLoops = new ArrayList<Loop>();
+    final List<Integer> stateIndices = new ArrayList<Integer>();
+    stateLoops.add(root);
+    stateIndices.add(0);
+    final SortedSet<Integer> codeSet = new TreeSet<Integer>();
+    enumerate(root, stateLoops, stateIndices, codeSet);
+
+    codes = new int[codeSet.size()];
+    int i = 0;
+    for (final Integer code : codeSet) {
+      codes[i++] = code;
+    }
+    qualifierElements = new int[codes.length];
+    assignQualifierElements(root);
+
+    final int stateCount = stateLoops.size();
+    transitions = new Transition[stateCount][][];
+    loopNames = new String[stateCount];
+    for (int state = 0; state < stateCount; state++) {
+      final Loop loop = stateLoops.get(state);
+      loopNames[state] = loop.name;
+      transitions[state] = new Transition[codes.length][];
+      for (int column = 0; column < codes.length; column++) {
+        transitions[state][column] = candidates(loop, stateIndices.get(state), codes[column]);
+      }
+    }
+  }
+
+  /** Assigns a state to every segment position, depth first. */
+  private void enumerate(Loop loop, List<Loop> stateLoops, List<Integer> stateIndices,
+      SortedSet<Integer> codeSet) throws EdiException {
+    for (int i = 0; i < loop.children.size(); i++) {
+      final Object child = loop.children.get(i);
+      if (child instanceof Loop) {
+        enumerate((Loop) child, stateLoops, stateIndices, codeSet);
+      } else {
+        final Segment segment = (Segment) child;
+        if (segment.code == SegmentIdentifiers.NONE) {
+          throw new EdiException("Invalid segment identifier " + segment.identifier);
+        }
+        states.put(segment, stateLoops.size());
+        stateLoops.add(loop);
+        stateIndices.add(i);
+        codeSet.add(segment.code);
+      }
+    }
+  }
+
+  private void assignQualifierElements(Loop loop) throws EdiException {
+    for (final Object child : loop.children) {
+      if (child instanceof Loop) {
+        assignQualifierElements((Loop) child);
+      } else {
+        final Segment segment = (Segment) child;
+        if (segment.isQualified()) {
+          final int column = Arrays.binarySearch(codes, segment.code);
+          if (qualifierElements[column] != 0
+              && qualifierElements[column] != segment.qualifierElement) {
+            throw new EdiException("Segment " + segment.identifier
+                + " is qualified by more than one element");
+          }
+          qualifierElements[column] = segment.qualifierElement;
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the transitions for segment {@code code} in the state at {@code index} of
+   * {@code loop}, in order of preference. The search stops at the first unqualified candidate.
+   *
+   * @return the candidates, or {@code null} if the segment is not allowed in this state
+   */
+  private Transition[] candidates(Loop loop, int index, int code) {
+    final List<Transition> candidates = new ArrayList<Transition>();
+    int endLoops = 0;
+    Loop current = loop;
+    int from = index;
+    while (true) {
+      // The trigger of a loop only repeats by starting another iteration of the loop.
+      final int start = current.isRoot() ? from : Math.max(from, 1);
+      for (int i = start; i < current.children.size(); i++) {
+        final Object child = current.children.get(i);
+        final Segment segment;
+        final String startLoop;
+        if (child instanceof Loop) {
+          segment = ((Loop) child).trigger();
+          startLoop = ((Loop) child).name;
+        } else {
+          segment = (Segment) child;
+          startLoop = null;
+        }
+
+        if (segment.code == code) {
+          candidates.add(new Transition(endLoops, startLoop, states.get(segment),
+              segment.qualifierValues));
+          if (!segment.isQualified()) {
+            return toArray(candidates);
+          }
+        }
+      }
+
+      if (current.isRoot()) {
+        return toArray(candidates);
+      }
+
+      final Segment trigger = current.trigger();
+      if (trigger.code == code) {
+        candidates.add(new Transition(endLoops + 1, current.name, states.get(trigger),
+            trigger.qualifierValues));
+        if (!trigger.isQualified()) {
+          return toArray(candidates);
+        }
+      }
+
+      endLoops++;
+      from = current.indexInParent + 1;
+      current = current.parent;
+    }
+  }
+
+  private static Transition[] toArray(List<Transition> candidates) {
+    return candidates.isEmpty() ? null : candidates.toArray(new Transition[candidates.size()]);
+  }
+
+  /** Reads and compiles a grammar in the text form described in {@link GrammarLoader}. */
+  public static Grammar load(Reader reader) throws IOException, EdiException {
+    return new Grammar(GrammarLoader.load(reader));
+  }
+
+  /**
+   * Returns the built-in grammar for every version of a transaction set, such as {@code "271"},
+   * or {@code null} if there is none. Built-in grammars are loaded once, on first use.
+   */
+  @Nullable
+  public static Grammar forTransactionSet(String transactionSetId) {
+    return builtIn(transactionSetId);
+  }
+
+  /**
+   * Returns the built-in grammar for a version of a transaction set, or else the one for every
+   * version of it, or {@code null} if there is neither.
+   *
+   * @param version the implementation convention, such as {@code "004010X098A1"}, from ST03 or,
+   *        if the transaction set has none, from GS08; {@code null} or empty if unknown
+   */
+  @Nullable
+  public static Grammar forTransactionSet(String transactionSetId, @Nullable String version) {
+    if (version != null && version.length() > 0) {
+      final Grammar grammar = builtIn(transactionSetId + '.' + version);
+      if (grammar != null) {
+        return grammar;
+      }
+    }
+    return builtIn(transactionSetId);
+  }
+
+  @Nullable
+  private static synchronized Grammar builtIn(String name) {
+    if (BUILT_IN.containsKey(name)) {
+      return BUILT_IN.get(name);
+    }
+
+    Grammar grammar = null;
+    final InputStream is = Grammar.class.getResourceAsStream(name + RESOURCE_SUFFIX);
+    if (is != null) {
+      try {
+        grammar = load(new InputStreamReader(is, Charsets.US_ASCII));
+      } catch (final IOException e) {
+        throw new IllegalStateException("Cannot read grammar " + name, e);
+      } catch (final EdiException e) {
+        throw new IllegalStateException("Invalid grammar " + name, e);
+      } finally {
+        Closeables.closeQuietly(is);
+      }
+    }
+    BUILT_IN.put(name, grammar);
+    return grammar;
+  }
+
+  public String getTransactionSetId() {
+    return transactionSetId;
+  }
+
+  /** Returns the number of states; for tests. */
+  int getStateCount() {
+    return transitions.length;
+  }
+
+  /**
+   * Returns the candidate transitions for segment {@code code} in {@code state}, in order of
+   * preference, or {@code null} if the segment is not allowed there.
+   */
+  @Nullable
+  Transition[] transitions(int state, int code) {
+    final int column = Arrays.binarySearch(codes, code);
+    return column < 0 ? null : transitions[state][column];
+  }
+
+  /** Returns the element that qualifies segment {@code code}, or 0. */
+  int qualifierElement(int code) {
+    final int column = Arrays.binarySearch(codes, code);
+    return column < 0 ? 0 : qualifierElements[column];
+  }
+
+  /** Returns the name of the innermost loop in {@code state}. */
+  String loopName(int state) {
+    return loopNames[state];
+  }
+
+  @Override
+  public String toString() {
+    return "Grammar(" + transactionSetId + ")";
+  }
+}
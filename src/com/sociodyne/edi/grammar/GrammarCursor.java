@@ -0,0 +1,103 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.parser.SegmentIdentifiers;
+
+import javax.annotation.Nullable;
+
+/**
+ * A position in a {@link Grammar}, for walking a transaction set one segment at a time. Each
+ * segment is placed with {@link #advance}, after which {@link #getEndLoops()} and
+ * {@link #getStartLoop()} give the loops it closes and opens. A segment whose loop depends on one
+ * of its elements must be placed with that element's value; see {@link #qualifierElement}.
+ */
+public final class GrammarCursor {
+
+  private final Grammar grammar;
+  private int state = Grammar.START;
+  private int endLoops;
+  private String startLoop;
+
+  public GrammarCursor(Grammar grammar) {
+    this.grammar = grammar;
+  }
+
+  public Grammar getGrammar() {
+    return grammar;
+  }
+
+  /**
+   * Returns the element of segment {@code code} whose value decides where it goes, or 0 if the
+   * segment can be placed by its identifier alone.
+   *
+   * @throws EdiException if the segment is not allowed here
+   */
+  public int qualifierElement(int code) throws EdiException {
+    return transitions(code)[0].isQualified() ? grammar.qualifierElement(code) : 0;
+  }
+
+  /**
+   * Places the next segment.
+   *
+   * @param qualifier the value of the segment's {@link #qualifierElement qualifying element}, or
+   *        {@code null} if it has none or the element is missing
+   * @throws EdiException if the segment is not allowed here
+   */
+  public void advance(int code, @Nullable String qualifier) throws EdiException {
+    final Transition transition = transition(code, qualifier);
+    endLoops = transition.endLoops;
+    startLoop = transition.startLoop;
+    state = transition.target;
+  }
+
+  /**
+   * Checks that the next segment is allowed here, as {@link #advance} does, without placing it.
+   *
+   * @throws EdiException if the segment is not allowed here
+   */
+  public void check(int code, @Nullable String qualifier) throws EdiException {
+    transition(code, qualifier);
+  }
+
+  /** Returns the number of loops the last segment closed, innermost first. */
+  public int getEndLoops() {
+    return endLoops;
+  }
+
+  /** Returns the loop the last segment opened, after closing {@link #getEndLoops()}, or null. */
+  @Nullable
+  public String getStartLoop() {
+    return startLoop;
+  }
+
+  /** Returns the name of the innermost loop at the current position. */
+  public String getLoopName() {
+    return grammar.loopName(state);
+  }
+
+  private Transition transition(int code, @Nullable String qualifier) throws EdiException {
+    for (final Transition transition : transitions(code)) {
+      if (transition.accepts(qualifier)) {
+        return transition;
+      }
+    }
+    throw new EdiException("Segment " + identifier(code) + " with qualifier " + qualifier
+        + " is not allowed in loop " + getLoopName() + " of transaction set "
+        + grammar.getTransactionSetId());
+  }
+
+  private Transition[] transitions(int code) throws EdiException {
+    final Transition[] transitions = grammar.transitions(state, code);
+    if (transitions == null) {
+      throw new EdiException("Segment " + identifier(code) + " is not allowed in loop "
+          + getLoopName() + " of transaction set " + grammar.getTransactionSetId());
+    }
+    return transitions;
+  }
+
+  private static String identifier(int code) {
+    return code == SegmentIdentifiers.NONE ? "(invalid identifier)" : SegmentIdentifiers
+        .identifier(code);
+  }
+}
@@ -0,0 +1,221 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.parser.EdiEventBuffer;
+import com.sociodyne.edi.parser.EdiHandler;
+import com.sociodyne.edi.parser.SegmentIdentifiers;
+
+/**
+ * Adds loop events to a flat stream of segments by walking a transaction set's {@link Grammar}.
+ * Each transaction set's grammar is chosen by its ST01 and its version, from ST03 or else the
+ * group's GS08; segments outside transaction sets, and the segments of transaction sets without a
+ * grammar, are passed through without loops.
+ *
+ * <p>
+ * Most segments are forwarded as they arrive. A segment whose loop depends on one of its own
+ * elements (an HL, say, qualified by HL03) is held back until that element has been seen.
+ */
+public class GrammarHandler implements EdiHandler {
+
+  private static final int GS_VERSION_ELEMENT = 8;
+  private static final int ST_TRANSACTION_SET_ELEMENT = 1;
+  private static final int ST_VERSION_ELEMENT = 3;
+
+  private final EdiHandler delegate;
+  private final EdiEventBuffer pending = new EdiEventBuffer();
+
+  /** Position in the current transaction set's grammar, or {@code null}. */
+  private GrammarCursor cursor;
+  private int openLoops;
+
+  private int segmentCode;
+  private int elementIndex;
+  /** Element that places the current segment while it is held back, or 0. */
+  private int qualifierElement;
+  private boolean selectingGrammar;
+  /** ST01 and ST03 of the transaction set whose grammar is being selected. */
+  private String transactionSetId;
+  private String transactionSetVersion;
+  /** GS08 of the current functional group, or {@code null}. */
+  private String groupVersion;
+
+  public GrammarHandler(EdiHandler delegate) {
+    this.delegate = delegate;
+  }
+
+  public void startSegment(String segmentIdentifier) throws EdiException {
+    segmentCode = SegmentIdentifiers.code(segmentIdentifier);
+    elementIndex = 0;
+
+    if (segmentCode == SegmentIdentifiers.ST) {
+      endLoops(openLoops);
+      cursor = null;
+      selectingGrammar = true;
+      transactionSetId = null;
+      transactionSetVersion = null;
+      pending.startSegment(segmentIdentifier);
+      return;
+    }
+    if (segmentCode == SegmentIdentifiers.GS) {
+      groupVersion = null;
+    }
+
+    if (cursor != null) {
+      qualifierElement = cursor.qualifierElement(segmentCode);
+      if (qualifierElement > 0) {
+        pending.startSegment(segmentIdentifier);
+        return;
+      }
+      advance(null);
+    }
+    delegate.startSegment(segmentIdentifier);
+  }
+
+  public void endSegment() throws EdiException {
+    if (selectingGrammar) {
+      selectGrammar();
+    } else if (qualifierElement > 0) {
+      advance(null);
+    }
+
+    if (!pending.isEmpty()) {
+      pending.endSegment();
+      flush();
+    } else {
+      delegate.endSegment();
+    }
+
+    if (segmentCode == SegmentIdentifiers.SE) {
+      endLoops(openLoops);
+      cursor = null;
+    }
+  }
+
+  public void startElement(String contents) throws EdiException {
+    elementIndex++;
+    if (selectingGrammar) {
+      // The ST is held to its end, for its version.
+      pending.startElement(contents);
+      if (elementIndex == ST_TRANSACTION_SET_ELEMENT) {
+        transactionSetId = contents;
+      } else if (elementIndex == ST_VERSION_ELEMENT) {
+        transactionSetVersion = contents;
+      }
+      return;
+    }
+    if (segmentCode == SegmentIdentifiers.GS && elementIndex == GS_VERSION_ELEMENT) {
+      groupVersion = contents;
+    }
+
+    if (qualifierElement > 0) {
+      pending.startElement(contents);
+      if (elementIndex == qualifierElement) {
+        advance(contents);
+        flush();
+      }
+      return;
+    }
+
+    delegate.startElement(contents);
+  }
+
+  public void endElement() throws EdiException {
+    if (!pending.isEmpty()) {
+      pending.endElement();
+    } else {
+      delegate.endElement();
+    }
+  }
+
+  public void subElement(String contents) throws EdiException {
+    if (!pending.isEmpty()) {
+      pending.subElement(contents);
+    } else {
+      delegate.subElement(contents);
+    }
+  }
+
+  /** Loops come from the grammar; loops from upstream are dropped while a grammar applies. */
+  public void startLoop(String segmentIdentifier) throws EdiException {
+    if (cursor == null) {
+      delegate.startLoop(segmentIdentifier);
+    }
+  }
+
+  public void endLoop() throws EdiException {
+    if (cursor == null) {
+      delegate.endLoop();
+    }
+  }
+
+  /**
+   * Throws if the grammar does not allow {@code segment}, the events of one whole segment, at the
+   * current position. The position does not change, so a rejected segment can be dropped and the
+   * next one checked in its place. Must be called between segments.
+   */
+  public void check(EdiEventBuffer segment) throws EdiException {
+    if (cursor == null || segment.isEmpty()) {
+      return;
+    }
+    final int code = segment.getSegmentCode(0);
+    if (code == SegmentIdentifiers.ST) {
+      // Starts a transaction set, and so is always allowed.
+      return;
+    }
+    final int qualifier = cursor.qualifierElement(code);
+    cursor.check(code, qualifier > 0 ? elementText(segment, qualifier) : null);
+  }
+
+  /** Returns the text of element {@code element} of the buffered segment, or {@code null}. */
+  private static String elementText(EdiEventBuffer segment, int element) {
+    int index = 0;
+    for (int i = 0; i < segment.size(); i++) {
+      if (segment.getType(i) == EdiEventBuffer.START_ELEMENT && ++index == element) {
+        return segment.getValue(i);
+      }
+    }
+    return null;
+  }
+
+  /** Ends the loops still open, as when the input ends inside a transaction set. */
+  public void endOpenLoops() throws EdiException {
+    endLoops(openLoops);
+    cursor = null;
+  }
+
+  private void selectGrammar() throws EdiException {
+    selectingGrammar = false;
+    final String version = transactionSetVersion != null && transactionSetVersion.length() > 0
+        ? transactionSetVersion : groupVersion;
+    final Grammar grammar = transactionSetId == null ? null : Grammar.forTransactionSet(
+        transactionSetId, version);
+    if (grammar != null) {
+      cursor = new GrammarCursor(grammar);
+      advance(null);
+    }
+  }
+
+  /** Places the current segment and reports the loops it closes and opens. */
+  private void advance(String qualifier) throws EdiException {
+    qualifierElement = 0;
+    cursor.advance(segmentCode, qualifier);
+    endLoops(cursor.getEndLoops());
+    if (cursor.getStartLoop() != null) {
+      delegate.startLoop(cursor.getStartLoop());
+      openLoops++;
+    }
+  }
+
+  private void endLoops(int count) throws EdiException {
+    for (int i = 0; i < count; i++) {
+      delegate.endLoop();
+    }
+    openLoops -= count;
+  }
+
+  private void flush() throws EdiException {
+    pending.replay(delegate);
+    pending.clear();
+  }
+}
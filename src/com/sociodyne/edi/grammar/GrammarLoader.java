@@ -0,0 +1,262 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.parser.SegmentIdentifiers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Reads the text form of a {@link Grammar}: a tree of loops and segments, nested by indentation.
+ *
+ * <pre>
+ * # Comments run to the end of the line.
+ * transaction 271
+ * ST
+ * BHT
+ * loop 2000A &gt;1
+ *   HL03=20
+ *   loop 2100A
+ *     NM1
+ *     PER 3
+ * use 2110C
+ * SE
+ * </pre>
+ *
+ * <p>
+ * A segment line is a segment identifier, optionally qualified by the value of one of its elements
+ * ({@code NM101=85}, or {@code NM101=IL|QC} for several values), followed by its maximum use:
+ * a number, or {@code >1} for unbounded; the default is 1. A {@code loop} line names a loop and
+ * gives its maximum use; the first line of its body is the loop's trigger segment. A {@code use}
+ * line repeats a loop defined earlier in the file, optionally with a different maximum use.
+ */
+final class GrammarLoader {
+
+  private static final Pattern SEGMENT = Pattern
+      .compile("([A-Z0-9]{2,3})(?:([0-9]{2})=(\\S+))?");
+
+  /** A segment position in a loop. */
+  static final class Segment {
+    final String identifier;
+    final int code;
+    /** Index of the qualifying element, or 0 if the segment is not qualified. */
+    final int qualifierElement;
+    final Set<String> qualifierValues;
+    final int maxUse;
+
+    Segment(String identifier, int qualifierElement, Set<String> qualifierValues, int maxUse) {
+      this.identifier = identifier;
+      this.code = SegmentIdentifiers.code(identifier);
+      this.qualifierElement = qualifierElement;
+      this.qualifierValues = qualifierValues;
+      this.maxUse = maxUse;
+    }
+
+    boolean isQualified() {
+      return qualifierElement > 0;
+    }
+  }
+
+  /** A loop: its first child is its trigger segment. The transaction set is the root loop. */
+  static final class Loop {
+    final String name;
+    final int maxUse;
+    /** {@link Segment Segments} and {@link Loop Loops}, in order. */
+    final List<Object> children = new ArrayList<Object>();
+    Loop parent;
+    int indexInParent;
+
+    Loop(String name, int maxUse) {
+      this.name = name;
+      this.maxUse = maxUse;
+    }
+
+    void add(Object child) {
+      if (child instanceof Loop) {
+        final Loop loop = (Loop) child;
+        loop.parent = this;
+        loop.indexInParent = children.size();
+      }
+      children.add(child);
+    }
+
+    boolean isRoot() {
+      return parent == null;
+    }
+
+    Segment trigger() {
+      return (Segment) children.get(0);
+    }
+
+    /** Returns a deep copy of this loop, so that the copy can have a different parent. */
+    Loop copy(int newMaxUse) {
+      final Loop copy = new Loop(name, newMaxUse);
+      for (final Object child : children) {
+        if (child instanceof Loop) {
+          final Loop loop = (Loop) child;
+          copy.add(loop.copy(loop.maxUse));
+        } else {
+          final Segment segment = (Segment) child;
+          copy.add(new Segment(segment.identifier, segment.qualifierElement,
+              segment.qualifierValues, segment.maxUse));
+        }
+      }
+      return copy;
+    }
+  }
+
+  private final Map<String, Loop> definitions = new HashMap<String, Loop>();
+  private int lineNumber;
+
+  private GrammarLoader() {
+  }
+
+  /** Reads a grammar, returning its root loop, which is named after the transaction set. */
+  static Loop load(Reader reader) throws IOException, EdiException {
+    return new GrammarLoader().read(new BufferedReader(reader));
+  }
+
+  private Loop read(BufferedReader reader) throws IOException, EdiException {
+    Loop root = null;
+    // Open loops, innermost last, with the indentation of their header and of their body.
+    final List<Loop> open = new ArrayList<Loop>();
+    final List<Integer> headerIndents = new ArrayList<Integer>();
+    final List<Integer> bodyIndents = new ArrayList<Integer>();
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      final int comment = line.indexOf('#');
+      if (comment >= 0) {
+        line = line.substring(0, comment);
+      }
+      if (line.trim().length() == 0) {
+        continue;
+      }
+      if (line.indexOf('\t') >= 0) {
+        throw error("Indent with spaces, not tabs");
+      }
+
+      int indent = 0;
+      while (line.charAt(indent) == ' ') {
+        indent++;
+      }
+      final String[] words = line.trim().split(" +");
+
+      if (root == null) {
+        if (!words[0].equals("transaction") || words.length != 2 || indent != 0) {
+          throw error("Expected 'transaction <id>'");
+        }
+        root = new Loop(words[1], 1);
+        open.add(root);
+        headerIndents.add(-1);
+        bodyIndents.add(-1);
+        continue;
+      }
+
+      // Close the loops this line is not inside of.
+      while (indent <= headerIndents.get(open.size() - 1)) {
+        close(open.remove(open.size() - 1));
+        headerIndents.remove(headerIndents.size() - 1);
+        bodyIndents.remove(bodyIndents.size() - 1);
+      }
+      final int last = open.size() - 1;
+      final Loop parent = open.get(last);
+      if (bodyIndents.get(last) < 0) {
+        bodyIndents.set(last, indent);
+      } else if (bodyIndents.get(last) != indent) {
+        throw error("Inconsistent indentation");
+      }
+
+      if (words[0].equals("loop")) {
+        if (words.length < 2 || words.length > 3) {
+          throw error("Expected 'loop <name> [max use]'");
+        }
+        final Loop loop = new Loop(words[1], maxUse(words, 2));
+        parent.add(loop);
+        definitions.put(loop.name, loop);
+        open.add(loop);
+        headerIndents.add(indent);
+        bodyIndents.add(-1);
+      } else if (words[0].equals("use")) {
+        if (words.length < 2 || words.length > 3) {
+          throw error("Expected 'use <name> [max use]'");
+        }
+        final Loop definition = definitions.get(words[1]);
+        if (definition == null) {
+          throw error("Loop " + words[1] + " is not defined above");
+        }
+        parent.add(definition.copy(words.length == 3 ? maxUse(words, 2) : definition.maxUse));
+      } else {
+        if (words.length > 2) {
+          throw error("Expected '<segment> [max use]'");
+        }
+        parent.add(segment(words[0], maxUse(words, 1)));
+      }
+    }
+
+    if (root == null) {
+      throw error("Empty grammar");
+    }
+    while (open.size() > 1) {
+      close(open.remove(open.size() - 1));
+    }
+    return root;
+  }
+
+  private void close(Loop loop) throws EdiException {
+    if (loop.children.isEmpty() || !(loop.children.get(0) instanceof Segment)) {
+      throw error("Loop " + loop.name + " must start with its trigger segment");
+    }
+  }
+
+  private Segment segment(String spec, int maxUse) throws EdiException {
+    final Matcher matcher = SEGMENT.matcher(spec);
+    if (!matcher.matches()) {
+      throw error("Invalid segment '" + spec + "'");
+    }
+
+    if (matcher.group(2) == null) {
+      return new Segment(matcher.group(1), 0, null, maxUse);
+    }
+    final int element = Integer.parseInt(matcher.group(2));
+    if (element == 0) {
+      throw error("Elements are numbered from 1");
+    }
+    return new Segment(matcher.group(1), element, ImmutableSet.copyOf(matcher.group(3)
+        .split("\\|")), maxUse);
+  }
+
+  private int maxUse(String[] words, int index) throws EdiException {
+    if (words.length <= index) {
+      return 1;
+    }
+    if (words[index].equals(">1")) {
+      return Integer.MAX_VALUE;
+    }
+    try {
+      final int maxUse = Integer.parseInt(words[index]);
+      if (maxUse > 0) {
+        return maxUse;
+      }
+    } catch (final NumberFormatException e) {
+      // Reported below
+    }
+    throw error("Invalid maximum use '" + words[index] + "'");
+  }
+
+  private EdiException error(String message) {
+    return new EdiException("Grammar line " + lineNumber + ": " + message);
+  }
+}
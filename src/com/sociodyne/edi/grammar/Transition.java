@@ -0,0 +1,38 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * A precomputed move of a {@link Grammar}'s state machine on one segment: the loops to close and
+ * open before the segment, and the state after it. A qualified transition only applies if the
+ * segment's qualifying element has one of the given values.
+ */
+final class Transition {
+
+  final int endLoops;
+  @Nullable
+  final String startLoop;
+  final int target;
+  @Nullable
+  final Set<String> qualifierValues;
+
+  Transition(int endLoops, @Nullable String startLoop, int target,
+      @Nullable Set<String> qualifierValues) {
+    this.endLoops = endLoops;
+    this.startLoop = startLoop;
+    this.target = target;
+    this.qualifierValues = qualifierValues;
+  }
+
+  boolean isQualified() {
+    return qualifierValues != null;
+  }
+
+  /** Returns whether this transition applies to a segment whose qualifier is {@code value}. */
+  boolean accepts(@Nullable String value) {
+    return qualifierValues == null || (value != null && qualifierValues.contains(value));
+  }
+}
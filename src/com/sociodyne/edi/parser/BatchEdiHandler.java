@@ -0,0 +1,18 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+/**
+ * Receives parse events a block at a time, as filled in by a {@link BatchingEdiHandler}, instead
+ * of one call per event. Use {@link BatchEdiHandlerAdapter} to deliver the blocks to an
+ * {@link EdiHandler}.
+ */
+public interface BatchEdiHandler {
+
+  /**
+   * Handles a block of events, which holds whole segments together with the loop events around
+   * them. The buffer is cleared and refilled once this returns, so it must not be kept.
+   */
+  void handleBatch(EdiEventBuffer batch) throws EdiException;
+}
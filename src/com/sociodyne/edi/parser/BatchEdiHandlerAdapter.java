@@ -0,0 +1,18 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+/** Delivers each block of events to an {@link EdiHandler}, one call per event, in order. */
+public class BatchEdiHandlerAdapter implements BatchEdiHandler {
+
+  private final EdiHandler handler;
+
+  public BatchEdiHandlerAdapter(EdiHandler handler) {
+    this.handler = handler;
+  }
+
+  public void handleBatch(EdiEventBuffer batch) throws EdiException {
+    batch.replay(handler);
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Records the events of a parse into a reusable {@link EdiEventBuffer} and hands them to a
+ * {@link BatchEdiHandler} a fixed number of segments at a time, so the handlers behind it see one
+ * call per block rather than several per element. The pull parsers recognize this handler and
+ * write segment starts, elements and sub-elements straight into its buffer, with the segment's
+ * code; only segment ends and loops come through the {@link EdiHandler} methods.
+ *
+ * <p>
+ * A block is delivered when its last segment ends; {@link #flush()} must be called after the parse
+ * to deliver the events after the last full block, such as a final loop end or a partial block.
+ * An exception from the batch handler is thrown from the call that delivered the block, by which
+ * time the parser is past the segment that caused it; the block does not record locations.
+ */
+public class BatchingEdiHandler implements EdiHandler {
+
+  /** The number of segments per block used by {@link #BatchingEdiHandler(BatchEdiHandler)}. */
+  public static final int DEFAULT_BATCH_SEGMENTS = 64;
+
+  private final BatchEdiHandler handler;
+  private final int batchSegments;
+  private final EdiEventBuffer batch = new EdiEventBuffer(512);
+  private int segments;
+
+  public BatchingEdiHandler(BatchEdiHandler handler) {
+    this(handler, DEFAULT_BATCH_SEGMENTS);
+  }
+
+  /** Creates a handler that delivers a block after every {@code batchSegments} segments. */
+  public BatchingEdiHandler(BatchEdiHandler handler, int batchSegments) {
+    Preconditions.checkArgument(batchSegments > 0, "batchSegments must be positive");
+    this.handler = handler;
+    this.batchSegments = batchSegments;
+  }
+
+  public void startSegment(String segmentIdentifier) throws EdiException {
+    batch.startSegment(segmentIdentifier);
+  }
+
+  public void endSegment() throws EdiException {
+    batch.endSegment();
+    if (++segments == batchSegments) {
+      flush();
+    }
+  }
+
+  public void startElement(String contents) throws EdiException {
+    batch.startElement(contents);
+  }
+
+  public void endElement() throws EdiException {
+    batch.endElement();
+  }
+
+  public void subElement(String contents) throws EdiException {
+    batch.subElement(contents);
+  }
+
+  public void startLoop(String segmentIdentifier) throws EdiException {
+    batch.startLoop(segmentIdentifier);
+  }
+
+  public void endLoop() throws EdiException {
+    batch.endLoop();
+  }
+
+  /** Returns the buffer the current block is recorded in, for parsers to write to directly. */
+  EdiEventBuffer events() {
+    return batch;
+  }
+
+  /** Delivers the events recorded since the last block, if there are any. */
+  public void flush() throws EdiException {
+    segments = 0;
+    if (!batch.isEmpty()) {
+      try {
+        handler.handleBatch(batch);
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+}
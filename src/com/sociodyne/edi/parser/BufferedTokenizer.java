@@ -0,0 +1,181 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A {@link Tokenizer} that reads its input in blocks into a reusable character buffer. Word tokens
+ * are not allocated per call: the same {@link WordToken} is returned each time, holding a view of
+ * the buffer, and a {@code String} is only created if a consumer calls {@link Token#getValue()}.
+ * 
+ * <p>
+ * Because the word token is recycled, a token returned by {@link #nextToken()} is only valid until
+ * the next call. The parsers in this package only ever hold the most recent token, so they run on
+ * this tokenizer unchanged.
+ *
+ * <p>
+ * Newlines are not tracked while scanning. They are counted once per buffer, when characters are
+ * discarded from its front, and within the buffer only when the location is resolved.
+ */
+public class BufferedTokenizer extends Tokenizer {
+
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private final Reader reader;
+  private char[] buffer;
+  /** Index of the next unread character in {@link #buffer}. */
+  private int position;
+  /** Index one past the last valid character in {@link #buffer}. */
+  private int limit;
+
+  /** Offset of {@code buffer[0]} in the input. */
+  private long bufferOffset;
+  /** Number of newlines before {@code buffer[0]}. */
+  private int linesBeforeBuffer;
+  /** Offset of the character after the last newline before {@code buffer[0]}. */
+  private long lineStartBeforeBuffer;
+
+  private final CharArraySlice slice = new CharArraySlice();
+  private final WordToken word = new WordToken(slice);
+
+  public BufferedTokenizer(Reader reader, Configuration config, Location location) {
+    this(reader, config, location, DEFAULT_BUFFER_SIZE);
+  }
+
+  public BufferedTokenizer(Reader reader, Configuration config, Location location, int bufferSize) {
+    super(reader, config, location);
+    this.reader = reader;
+    this.buffer = new char[bufferSize];
+  }
+
+  @Override
+  public IsaHeader readIsaHeader() throws IOException {
+    while (limit - position < IsaHeader.LENGTH) {
+      if (fill(position) < 0) {
+        return null;
+      }
+    }
+
+    final IsaHeader header = IsaHeader.parse(new CharArraySlice(buffer, position,
+        IsaHeader.LENGTH));
+    if (header != null) {
+      position += IsaHeader.LENGTH;
+      location.nextSegment();
+    }
+    return header;
+  }
+
+  @Override
+  public Token nextToken() throws IOException {
+    if (position == limit) {
+      if (fill(position) < 0) {
+        return null;
+      }
+    }
+
+    char ch = buffer[position];
+    final Token delimiter = delimiterToken(ch);
+    if (delimiter != null) {
+      position++;
+      return delimiter;
+    }
+
+    final CompiledConfiguration table = delimiters;
+    int start = position;
+    int scan = position;
+    SCAN:
+    while (true) {
+      while (scan < limit) {
+        ch = buffer[scan];
+        if (table.isWordTerminal(ch)) {
+          break SCAN;
+        }
+        scan++;
+      }
+
+      // The word runs past the end of the buffer; keep it and read more.
+      final int shift = start;
+      final int read = fill(start);
+      scan -= shift;
+      start = 0;
+      if (read < 0) {
+        break;
+      }
+    }
+
+    position = scan;
+    slice.reset(buffer, start, scan - start);
+    word.reset();
+    return word;
+  }
+
+  @Override
+  public boolean skipSegment() throws IOException {
+    final CompiledConfiguration table = delimiters;
+    while (true) {
+      while (position < limit) {
+        if (table.classOf(buffer[position++]) == CompiledConfiguration.SEGMENT) {
+          location.nextSegment();
+          return true;
+        }
+      }
+      if (fill(position) < 0) {
+        return false;
+      }
+    }
+  }
+
+  @Override
+  public long getOffset() {
+    return bufferOffset + position;
+  }
+
+  @Override
+  public void resolve(Location location) {
+    int lines = linesBeforeBuffer;
+    long lineStart = lineStartBeforeBuffer;
+    for (int i = 0; i < position; i++) {
+      if (buffer[i] == '\n') {
+        lines++;
+        lineStart = bufferOffset + i + 1;
+      }
+    }
+    location.setLineAndChar(lines, (int) (getOffset() - lineStart));
+  }
+
+  /**
+   * Moves the characters from {@code keepFrom} to the end of the buffer to the front of the buffer
+   * (growing it if they fill it), then reads more input after them.
+   * 
+   * @return the number of characters read, or -1 at the end of the input
+   */
+  private int fill(int keepFrom) throws IOException {
+    final int kept = limit - keepFrom;
+    for (int i = 0; i < keepFrom; i++) {
+      if (buffer[i] == '\n') {
+        linesBeforeBuffer++;
+        lineStartBeforeBuffer = bufferOffset + i + 1;
+      }
+    }
+    bufferOffset += keepFrom;
+    if (keepFrom > 0) {
+      System.arraycopy(buffer, keepFrom, buffer, 0, kept);
+    } else if (kept == buffer.length) {
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    position -= keepFrom;
+    limit = kept;
+
+    final int read = reader.read(buffer, limit, buffer.length - limit);
+    if (read > 0) {
+      limit += read;
+    }
+    return read;
+  }
+}
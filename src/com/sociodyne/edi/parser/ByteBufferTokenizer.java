@@ -0,0 +1,295 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link Tokenizer} for single-byte (ASCII or ISO-8859-1) input that reads directly from a
+ * {@link ByteBuffer}. Delimiters are compared as bytes, so no charset decoding is done on the hot
+ * path. Like {@link BufferedTokenizer}, word tokens are recycled and only valid until the next
+ * call to {@link #nextToken()}.
+ *
+ * <p>
+ * The input is consumed as a sequence of windows. A tokenizer over a single {@code ByteBuffer}
+ * has exactly one window; a tokenizer over a {@link ReadableByteChannel} refills one heap buffer.
+ * Subclasses supply other windows by overriding {@link #nextWindow()}. Words that straddle two
+ * windows are copied into a carry buffer.
+ *
+ * <p>
+ * Words are found with a {@link DelimiterScanner}, which tests eight bytes per step, so long
+ * free-text elements are skipped in bulk. Both are rebuilt from the {@link CompiledConfiguration}
+ * passed to {@link #setDelimiters}.
+ *
+ * <p>
+ * Newlines are not tracked while scanning. They are counted once per window, when it is
+ * retired, and within the current window only when the location is resolved.
+ */
+public class ByteBufferTokenizer extends Tokenizer {
+
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private final ReadableByteChannel channel;
+  /** The current window; its position is the next unread byte. */
+  protected ByteBuffer window;
+  /** Holds words that straddle windows. */
+  private ByteBuffer carry = ByteBuffer.allocate(256);
+
+  /** Stops at every delimiter that terminates a word. */
+  private DelimiterScanner scanner;
+  /** Stops at the segment terminator. */
+  private DelimiterScanner segmentScanner;
+
+  /** Index in {@link #window} of the first byte not yet retired. */
+  private int windowStart;
+  /** Offset in the input of {@code window[windowStart]}. */
+  private long windowOffset;
+  /** Number of newlines in the retired bytes. */
+  private int linesBeforeWindow;
+  /** Offset of the byte after the last newline in the retired bytes. */
+  private long lineStartBeforeWindow;
+
+  private final ByteSlice slice = new ByteSlice();
+  private final WordToken word = new WordToken(slice);
+
+  /** Tokenizes {@code input} from its position to its limit. */
+  public ByteBufferTokenizer(ByteBuffer input, Configuration config, Location location) {
+    this(null, input, config, location);
+  }
+
+  /**
+   * Tokenizes {@code input} from its position to its limit, where the position is at
+   * {@code startOffset} of some larger input. Offsets are reported relative to the larger input;
+   * lines are counted from {@code startOffset}.
+   */
+  public ByteBufferTokenizer(ByteBuffer input, long startOffset, Configuration config,
+      Location location) {
+    this(null, input, config, location);
+    this.windowOffset = startOffset;
+    this.lineStartBeforeWindow = startOffset;
+  }
+
+  /** Tokenizes the bytes read from {@code channel}. */
+  public ByteBufferTokenizer(ReadableByteChannel channel, Configuration config,
+      Location location) {
+    this(channel, config, location, DEFAULT_BUFFER_SIZE);
+  }
+
+  public ByteBufferTokenizer(ReadableByteChannel channel, Configuration config,
+      Location location, int bufferSize) {
+    this(channel, (ByteBuffer) ByteBuffer.allocate(bufferSize).flip(), config, location);
+  }
+
+  /** Constructor for subclasses that supply their windows through {@link #nextWindow()}. */
+  protected ByteBufferTokenizer(Configuration config, Location location) {
+    this(config, location, 0);
+  }
+
+  /**
+   * Constructor for subclasses that supply their windows through {@link #nextWindow()}, whose
+   * input starts at {@code startOffset} of some larger input. Offsets are reported relative to the
+   * larger input; lines are counted from {@code startOffset}.
+   */
+  protected ByteBufferTokenizer(Configuration config, Location location, long startOffset) {
+    this(null, ByteBuffer.allocate(0), config, location);
+    this.windowOffset = startOffset;
+    this.lineStartBeforeWindow = startOffset;
+  }
+
+  private ByteBufferTokenizer(ReadableByteChannel channel, ByteBuffer window,
+      Configuration config, Location location) {
+    super(config, location);
+    Preconditions.checkArgument(delimiters.getSegmentTerminator() < 0x100
+        && delimiters.getElementSeparator() < 0x100, "Delimiters must be single-byte characters");
+    this.channel = channel;
+    this.window = window;
+    this.windowStart = window.position();
+    this.scanner = DelimiterScanner.forWordTerminals(delimiters);
+    this.segmentScanner = new DelimiterScanner(delimiters.getSegmentTerminator());
+  }
+
+  @Override
+  public void setDelimiters(CompiledConfiguration delimiters) {
+    super.setDelimiters(delimiters);
+    scanner = DelimiterScanner.forWordTerminals(delimiters);
+    segmentScanner = new DelimiterScanner(delimiters.getSegmentTerminator());
+  }
+
+  /**
+   * Makes the next window of input available in {@link #window}. The previous window's contents
+   * are no longer referenced by the tokenizer when this is called.
+   *
+   * @return {@code false} at the end of the input
+   */
+  protected boolean nextWindow() throws IOException {
+    if (channel == null) {
+      return false;
+    }
+
+    window.clear();
+    int read;
+    do {
+      read = channel.read(window);
+    } while (read == 0);
+    window.flip();
+    return read > 0;
+  }
+
+  /** Retires the current window and moves to the next; see {@link #nextWindow()}. */
+  private boolean advanceWindow() throws IOException {
+    retire(window.limit());
+    final boolean more = nextWindow();
+    windowStart = window.position();
+    return more;
+  }
+
+  /** Counts the newlines in the current window before {@code end}, which are then forgotten. */
+  private void retire(int end) {
+    int index = windowStart;
+    while ((index = DelimiterScanner.NEWLINE.indexOf(window, index, end)) < end) {
+      index++;
+      linesBeforeWindow++;
+      lineStartBeforeWindow = windowOffset + index - windowStart;
+    }
+    windowOffset += end - windowStart;
+    windowStart = end;
+  }
+
+  @Override
+  public long getOffset() {
+    return windowOffset + window.position() - windowStart;
+  }
+
+  @Override
+  public void resolve(Location location) {
+    final int end = window.position();
+    int lines = linesBeforeWindow;
+    long lineStart = lineStartBeforeWindow;
+    int index = windowStart;
+    while ((index = DelimiterScanner.NEWLINE.indexOf(window, index, end)) < end) {
+      index++;
+      lines++;
+      lineStart = windowOffset + index - windowStart;
+    }
+    location.setLineAndChar(lines, (int) (getOffset() - lineStart));
+  }
+
+  @Override
+  public IsaHeader readIsaHeader() throws IOException {
+    if (channel != null) {
+      // Read until the window holds a whole header.
+      retire(window.position());
+      window.compact();
+      while (window.position() < IsaHeader.LENGTH && window.hasRemaining()) {
+        if (channel.read(window) < 0) {
+          break;
+        }
+      }
+      window.flip();
+      windowStart = 0;
+    } else if (!window.hasRemaining()) {
+      advanceWindow();
+    }
+
+    if (window.remaining() < IsaHeader.LENGTH) {
+      return null;
+    }
+
+    final int start = window.position();
+    final IsaHeader header = IsaHeader.parse(new ByteSlice(window, start, IsaHeader.LENGTH));
+    if (header != null) {
+      window.position(start + IsaHeader.LENGTH);
+      location.nextSegment();
+    }
+    return header;
+  }
+
+  @Override
+  public Token nextToken() throws IOException {
+    if (!window.hasRemaining() && !advanceWindow()) {
+      return null;
+    }
+
+    int position = window.position();
+    final int b = window.get(position) & 0xff;
+    final Token delimiter = delimiterToken(b);
+    if (delimiter != null) {
+      window.position(position + 1);
+      return delimiter;
+    }
+
+    final int start = position;
+    position = scanWord(position);
+    if (position < window.limit()) {
+      window.position(position);
+      slice.reset(window, start, position - start);
+    } else {
+      readStraddlingWord(start);
+    }
+
+    word.reset();
+    return word;
+  }
+
+  @Override
+  public boolean skipSegment() throws IOException {
+    while (window.hasRemaining() || advanceWindow()) {
+      final int end = segmentScanner.indexOf(window, window.position(), window.limit());
+      if (end < window.limit()) {
+        window.position(end + 1);
+        location.nextSegment();
+        return true;
+      }
+      window.position(window.limit());
+    }
+    return false;
+  }
+
+  /**
+   * Returns the index of the first delimiter in the current window at or after {@code from}, or
+   * the window's limit if there is none.
+   */
+  protected int scanWord(int from) {
+    return scanner.indexOf(window, from, window.limit());
+  }
+
+  /** Accumulates a word that runs past the end of the current window in {@link #carry}. */
+  private void readStraddlingWord(int start) throws IOException {
+    carry.clear();
+    int from = start;
+    int to = window.limit();
+    while (true) {
+      appendToCarry(from, to);
+      window.position(to);
+      if (to < window.limit() || !advanceWindow()) {
+        break;
+      }
+      from = window.position();
+      to = scanWord(from);
+    }
+
+    slice.reset(carry, 0, carry.position());
+  }
+
+  private void appendToCarry(int from, int to) {
+    final int length = to - from;
+    if (carry.remaining() < length) {
+      final ByteBuffer grown = ByteBuffer.allocate(Math.max(carry.capacity() * 2, carry.position()
+          + length));
+      carry.flip();
+      grown.put(carry);
+      carry = grown;
+    }
+
+    final ByteBuffer source = window.duplicate();
+    source.limit(to).position(from);
+    carry.put(source);
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link CharSequence} view of a range of a {@link ByteBuffer} holding single-byte (ASCII or
+ * ISO-8859-1) characters. The bytes are read with absolute gets, so the buffer's position is not
+ * disturbed and direct or memory-mapped buffers are never copied to the heap unless
+ * {@link #toString()} is called.
+ */
+final class ByteSlice implements CharSequence {
+
+  private ByteBuffer bytes;
+  private int offset;
+  private int length;
+
+  ByteSlice() {
+    this(ByteBuffer.allocate(0), 0, 0);
+  }
+
+  ByteSlice(ByteBuffer bytes, int offset, int length) {
+    reset(bytes, offset, length);
+  }
+
+  void reset(ByteBuffer bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public char charAt(int index) {
+    Preconditions.checkElementIndex(index, length);
+    return (char) (bytes.get(offset + index) & 0xff);
+  }
+
+  public CharSequence subSequence(int start, int end) {
+    Preconditions.checkPositionIndexes(start, end, length);
+    return new ByteSlice(bytes, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    if (bytes.hasArray()) {
+      return new String(bytes.array(), bytes.arrayOffset() + offset, length, Charsets.ISO_8859_1);
+    }
+
+    final byte[] copy = new byte[length];
+    for (int i = 0; i < length; i++) {
+      copy[i] = bytes.get(offset + i);
+    }
+    return new String(copy, Charsets.ISO_8859_1);
+  }
+}
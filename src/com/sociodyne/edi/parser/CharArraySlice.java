@@ -0,0 +1,48 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link CharSequence} view of a range of a {@code char[]}. The view is not copied, so it is
+ * only valid until the owner of the array reuses it.
+ */
+final class CharArraySlice implements CharSequence {
+
+  private char[] chars;
+  private int offset;
+  private int length;
+
+  CharArraySlice() {
+    this(new char[0], 0, 0);
+  }
+
+  CharArraySlice(char[] chars, int offset, int length) {
+    reset(chars, offset, length);
+  }
+
+  void reset(char[] chars, int offset, int length) {
+    this.chars = chars;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  public char charAt(int index) {
+    Preconditions.checkElementIndex(index, length);
+    return chars[offset + index];
+  }
+
+  public CharSequence subSequence(int start, int end) {
+    Preconditions.checkPositionIndexes(start, end, length);
+    return new CharArraySlice(chars, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    return new String(chars, offset, length);
+  }
+}
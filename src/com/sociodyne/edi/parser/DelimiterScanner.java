@@ -0,0 +1,109 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the next occurrence of any of up to four stop bytes in a {@link ByteBuffer}, eight bytes
+ * at a time. Each {@code long} read from the buffer is XORed with each stop byte replicated into
+ * every byte lane, which turns a matching byte into a zero byte; the zero bytes are then found
+ * with carry-free arithmetic, so a match in one lane never disturbs its neighbours. Input that is
+ * not a multiple of eight bytes long is finished one byte at a time.
+ *
+ * <p>
+ * Instances are immutable and may be shared.
+ */
+final class DelimiterScanner {
+
+  /** Stops at newlines. */
+  static final DelimiterScanner NEWLINE = new DelimiterScanner('\n');
+
+  private static final long ONES = 0x0101010101010101L;
+  private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+  private final int stop0;
+  private final int stop1;
+  private final int stop2;
+  private final int stop3;
+  private final long pattern0;
+  private final long pattern1;
+  private final long pattern2;
+  private final long pattern3;
+
+  /**
+   * Creates a scanner for the given stop bytes (0-255). At least one stop byte must be given;
+   * negative values are ignored, so an unassigned delimiter may be passed as -1.
+   */
+  DelimiterScanner(int... stops) {
+    final int[] assigned = new int[4];
+    int count = 0;
+    for (final int stop : stops) {
+      if (stop >= 0) {
+        if (stop > 0xff || count == assigned.length) {
+          throw new IllegalArgumentException("Expected up to four single-byte stops");
+        }
+        assigned[count++] = stop;
+      }
+    }
+    if (count == 0) {
+      throw new IllegalArgumentException("Expected at least one stop byte");
+    }
+    // Pad with the first stop so the scan loop never has to branch on the count.
+    for (int i = count; i < assigned.length; i++) {
+      assigned[i] = assigned[0];
+    }
+
+    stop0 = assigned[0];
+    stop1 = assigned[1];
+    stop2 = assigned[2];
+    stop3 = assigned[3];
+    pattern0 = stop0 * ONES;
+    pattern1 = stop1 * ONES;
+    pattern2 = stop2 * ONES;
+    pattern3 = stop3 * ONES;
+  }
+
+  /** Returns a scanner that stops at every delimiter that terminates a word. */
+  static DelimiterScanner forWordTerminals(CompiledConfiguration delimiters) {
+    return new DelimiterScanner(delimiters.getSegmentTerminator(),
+        delimiters.getElementSeparator(), delimiters.getSubElementSeparator());
+  }
+
+  /**
+   * Returns the index of the first stop byte in {@code buffer} in the range [{@code from},
+   * {@code to}), or {@code to} if there is none. The buffer's position is not changed.
+   */
+  int indexOf(ByteBuffer buffer, int from, int to) {
+    final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+    int index = from;
+    while (index + 8 <= to) {
+      final long word = buffer.getLong(index);
+      final long found = zeroBytes(word ^ pattern0) | zeroBytes(word ^ pattern1)
+          | zeroBytes(word ^ pattern2) | zeroBytes(word ^ pattern3);
+      if (found != 0) {
+        final int bit = bigEndian ? Long.numberOfLeadingZeros(found) : Long
+            .numberOfTrailingZeros(found);
+        return index + (bit >>> 3);
+      }
+      index += 8;
+    }
+
+    while (index < to) {
+      final int b = buffer.get(index) & 0xff;
+      if (b == stop0 || b == stop1 || b == stop2 || b == stop3) {
+        return index;
+      }
+      index++;
+    }
+    return to;
+  }
+
+  /** Sets the high bit of each byte of {@code x} that is zero, and clears every other bit. */
+  private static long zeroBytes(long x) {
+    final long t = (x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+    return ~(t | x | LOW_SEVEN_BITS);
+  }
+}
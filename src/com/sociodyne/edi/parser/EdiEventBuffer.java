@@ -0,0 +1,189 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An {@link EdiHandler} that records the events it receives so they can be replayed, in order, to
+ * another handler. Events are stored in parallel arrays of types, values and segment codes that
+ * grow as needed and are kept by {@link #clear()}, so a buffer can be reused without allocating.
+ * The recorded events may also be read in place by index, as a {@link BatchEdiHandler} does.
+ */
+public class EdiEventBuffer implements EdiHandler {
+
+  // Event types, as returned by getType(int).
+  public static final byte START_SEGMENT = 0;
+  public static final byte END_SEGMENT = 1;
+  public static final byte START_ELEMENT = 2;
+  public static final byte END_ELEMENT = 3;
+  public static final byte SUB_ELEMENT = 4;
+  public static final byte START_LOOP = 5;
+  public static final byte END_LOOP = 6;
+
+  private byte[] types;
+  private String[] values;
+  /** The segment code of each start segment or start loop event; NONE for the others. */
+  private int[] codes;
+  private int size;
+
+  public EdiEventBuffer() {
+    this(64);
+  }
+
+  public EdiEventBuffer(int initialCapacity) {
+    types = new byte[initialCapacity];
+    values = new String[initialCapacity];
+    codes = new int[initialCapacity];
+  }
+
+  public void startSegment(String segmentIdentifier) {
+    add(START_SEGMENT, segmentIdentifier, SegmentIdentifiers.code(segmentIdentifier));
+  }
+
+  /** Records the start of a segment whose identifier's code is already known. */
+  public void startSegment(String segmentIdentifier, int segmentCode) {
+    add(START_SEGMENT, segmentIdentifier, segmentCode);
+  }
+
+  public void endSegment() {
+    add(END_SEGMENT, null, SegmentIdentifiers.NONE);
+  }
+
+  public void startElement(String contents) {
+    add(START_ELEMENT, contents, SegmentIdentifiers.NONE);
+  }
+
+  public void endElement() {
+    add(END_ELEMENT, null, SegmentIdentifiers.NONE);
+  }
+
+  public void subElement(String contents) {
+    add(SUB_ELEMENT, contents, SegmentIdentifiers.NONE);
+  }
+
+  public void startLoop(String segmentIdentifier) {
+    add(START_LOOP, segmentIdentifier, SegmentIdentifiers.code(segmentIdentifier));
+  }
+
+  public void endLoop() {
+    add(END_LOOP, null, SegmentIdentifiers.NONE);
+  }
+
+  private void add(byte type, String value, int code) {
+    if (size == types.length) {
+      types = Arrays.copyOf(types, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+      codes = Arrays.copyOf(codes, size * 2);
+    }
+    types[size] = type;
+    values[size] = value;
+    codes[size] = code;
+    size++;
+  }
+
+  /** Returns the number of recorded events. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the type of event {@code index}, one of the event type constants. */
+  public byte getType(int index) {
+    Preconditions.checkElementIndex(index, size);
+    return types[index];
+  }
+
+  /**
+   * Returns the segment identifier or contents of event {@code index}, or {@code null} for an end
+   * event.
+   */
+  public String getValue(int index) {
+    Preconditions.checkElementIndex(index, size);
+    return values[index];
+  }
+
+  /**
+   * Returns the {@link SegmentIdentifiers} code of the segment or loop started by event
+   * {@code index}, or {@link SegmentIdentifiers#NONE} for any other event.
+   */
+  public int getSegmentCode(int index) {
+    Preconditions.checkElementIndex(index, size);
+    return codes[index];
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Discards the recorded events, keeping the storage for reuse. */
+  public void clear() {
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+  /** Sends the recorded events to {@code handler}, in the order they were received. */
+  public void replay(EdiHandler handler) throws EdiException {
+    for (int i = 0; i < size; i++) {
+      final String value = values[i];
+      switch (types[i]) {
+      case START_SEGMENT:
+        handler.startSegment(value);
+        break;
+      case END_SEGMENT:
+        handler.endSegment();
+        break;
+      case START_ELEMENT:
+        handler.startElement(value);
+        break;
+      case END_ELEMENT:
+        handler.endElement();
+        break;
+      case SUB_ELEMENT:
+        handler.subElement(value);
+        break;
+      case START_LOOP:
+        handler.startLoop(value);
+        break;
+      default:
+        handler.endLoop();
+      }
+    }
+  }
+
+  /**
+   * Renders the events compactly, as {@code <LOOP [SEG(element{sub})]>}; intended for tests and
+   * debugging.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      switch (types[i]) {
+      case START_SEGMENT:
+        builder.append('[').append(values[i]);
+        break;
+      case END_SEGMENT:
+        builder.append(']');
+        break;
+      case START_ELEMENT:
+        builder.append('(').append(values[i]);
+        break;
+      case END_ELEMENT:
+        builder.append(')');
+        break;
+      case SUB_ELEMENT:
+        builder.append('{').append(values[i]).append('}');
+        break;
+      case START_LOOP:
+        builder.append('<').append(values[i]).append(' ');
+        break;
+      default:
+        builder.append('>');
+      }
+    }
+    return builder.toString();
+  }
+}
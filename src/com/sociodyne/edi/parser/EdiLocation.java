@@ -3,20 +3,17 @@ package com.sociodyne.edi.parser;
 
 import com.sociodyne.parser.Location;
 
-import javax.annotation.Nullable;
-
 public class EdiLocation extends ImmutableEdiLocation {
-  public EdiLocation(Location location, String segment, int element,
-      @Nullable Integer subElement) {
+  public EdiLocation(Location location, String segment, int element, int subElement) {
     super(location, segment, element, subElement);
   }
 
   public EdiLocation(Location location, String segment, int element) {
-    this(location, segment, element, null);
+    this(location, segment, element, NO_SUB_ELEMENT);
   }
 
   public EdiLocation(String segment, int element) {
-    this(null, segment, element, null);
+    this(null, segment, element, NO_SUB_ELEMENT);
   }
 
   public EdiLocation(String segment, int element, int subElement) {
@@ -66,18 +63,18 @@ public class EdiLocation extends ImmutableEdiLocation {
   }
 
   public boolean hasSubElement() {
-    return subElement != null;
+    return subElement != NO_SUB_ELEMENT;
   }
 
   public void nextSubElement() {
-    if (subElement == null) {
+    if (subElement == NO_SUB_ELEMENT) {
       setSubElement(0);
     }
     subElement++;
   }
 
   public void clearSubElement() {
-    subElement = null;
+    subElement = NO_SUB_ELEMENT;
   }
 
   public static EdiLocation of(String segment, int element) {
@@ -89,7 +86,7 @@ public class EdiLocation extends ImmutableEdiLocation {
   }
 
   public static EdiLocation copyOf(ImmutableEdiLocation location) {
-    if (location.subElement == null) {
+    if (location.subElement == NO_SUB_ELEMENT) {
       return new EdiLocation(location.segment, location.element);
     } else {
       return new EdiLocation(location.segment, location.element, location.subElement);
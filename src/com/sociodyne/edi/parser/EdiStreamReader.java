@@ -0,0 +1,471 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.grammar.Grammar;
+import com.sociodyne.edi.grammar.GrammarCursor;
+import com.sociodyne.parser.Location;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A pull parser for EDI, in the manner of StAX's {@code XMLStreamReader}: the caller asks for
+ * each event with {@link #next()} instead of receiving callbacks, so it can stop early, skip what
+ * it does not need, and keep its state in local variables.
+ *
+ * <pre>
+ * EdiStreamReader reader = EdiStreamReader.create(channel);
+ * while (reader.next() != EdiStreamReader.END_DOCUMENT) {
+ *   if (reader.getEventType() == EdiStreamReader.START_SEGMENT
+ *       &amp;&amp; !reader.getSegmentId().equals("NM1")) {
+ *     reader.skipSegment();
+ *   }
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>
+ * Each element is reported as an {@link #ELEMENT} event with the text of its first component,
+ * followed by a {@link #SUB_ELEMENT} event for each further component. Inside transaction sets
+ * with a built-in {@link Grammar}, segments are grouped into loops by {@link #START_LOOP} and
+ * {@link #END_LOOP} events. Skipped segments are passed over by the tokenizer without being split
+ * into tokens, so {@link #skipSegment()} and {@link #skipLoop()} are much cheaper than reading.
+ *
+ * <p>
+ * Readers are not thread-safe.
+ */
+public class EdiStreamReader {
+
+  /** The start of a segment; {@link #getSegmentId()} is its identifier. */
+  public static final int START_SEGMENT = 1;
+  /** An element, or its first component; {@link #getElementText()} is its text. */
+  public static final int ELEMENT = 2;
+  /** A component of a composite element after the first. */
+  public static final int SUB_ELEMENT = 3;
+  public static final int END_SEGMENT = 4;
+  /** The start of a loop; {@link #getLoopName()} is its name in the implementation guide. */
+  public static final int START_LOOP = 5;
+  public static final int END_LOOP = 6;
+  public static final int END_DOCUMENT = 7;
+
+  private static final int ISA_SUB_ELEMENT_SEPARATOR_ELEMENT = 16;
+  private static final int GS_VERSION_ELEMENT = 8;
+  private static final int ST_TRANSACTION_SET_ELEMENT = 1;
+  private static final int ST_VERSION_ELEMENT = 3;
+
+  private final Tokenizer tokenizer;
+  private final Configuration configuration;
+  private final Location fileLocation;
+
+  private int eventType;
+  private String segmentId;
+  private int segmentCode;
+  private String text;
+  private int elementIndex;
+  /** Index of the current component in its element, from 1; 0 outside composites. */
+  private int subElementIndex;
+
+  private boolean started;
+  private boolean inSegment;
+  /** Whether the separators have been taken from the first ISA segment. */
+  private boolean delimitersFixed;
+  /** Whether the ISA segment is being tokenized with the default separators. */
+  private boolean tokenizingIsa;
+  /** A delimiter read after an element's text, to be handled by the next read. */
+  private Token pendingDelimiter;
+  private boolean segmentStartPending;
+
+  // Events read ahead to place a segment in its loop, reported before reading on.
+  private int[] heldTypes = new int[8];
+  private String[] heldTexts = new String[8];
+  private int[] heldElements = new int[8];
+  private int[] heldSubElements = new int[8];
+  private int heldCount;
+  private int heldNext;
+
+  /** Position in the current transaction set's grammar, or {@code null}. */
+  private GrammarCursor cursor;
+  /** GS08 of the current functional group, or {@code null}. */
+  private String groupVersion;
+  private String[] openLoops = new String[8];
+  private int openLoopCount;
+  private int pendingEndLoops;
+  private String pendingStartLoop;
+  private String loopName;
+
+  /**
+   * Creates a reader over {@code tokenizer}. {@code configuration} is the tokenizer's
+   * configuration; unless the input starts with a fixed-width ISA, its sub-element separator is
+   * assigned from ISA16.
+   */
+  public EdiStreamReader(Tokenizer tokenizer, Configuration configuration,
+      Location fileLocation) {
+    this.tokenizer = tokenizer;
+    this.configuration = configuration;
+    this.fileLocation = fileLocation;
+  }
+
+  /** Creates a reader over characters, buffered by a {@link BufferedTokenizer}. */
+  public static EdiStreamReader create(Reader reader) {
+    final Configuration configuration = newConfiguration();
+    final Location fileLocation = new Location();
+    return new EdiStreamReader(new BufferedTokenizer(reader, configuration, fileLocation),
+        configuration, fileLocation);
+  }
+
+  /** Creates a reader over single-byte input, which is tokenized without being decoded. */
+  public static EdiStreamReader create(ReadableByteChannel channel) {
+    final Configuration configuration = newConfiguration();
+    final Location fileLocation = new Location();
+    return new EdiStreamReader(new ByteBufferTokenizer(channel, configuration, fileLocation),
+        configuration, fileLocation);
+  }
+
+  private static Configuration newConfiguration() {
+    return new Configuration.Builder().setSegmentTerminator('~').setElementSeparator('*')
+        .build();
+  }
+
+  public boolean hasNext() {
+    return eventType != END_DOCUMENT;
+  }
+
+  /**
+   * Advances to the next event and returns its type.
+   *
+   * @throws IllegalStateException after {@link #END_DOCUMENT}
+   */
+  public int next() throws EdiException, IOException {
+    Preconditions.checkState(eventType != END_DOCUMENT, "No events after END_DOCUMENT");
+    if (!started) {
+      started = true;
+      readIsaHeader();
+    }
+    eventType = nextEvent();
+    return eventType;
+  }
+
+  public int getEventType() {
+    return eventType;
+  }
+
+  /** Returns the identifier of the current segment. */
+  public String getSegmentId() {
+    return segmentId;
+  }
+
+  /** Returns the text of the current {@link #ELEMENT} or {@link #SUB_ELEMENT}. */
+  public String getElementText() {
+    Preconditions.checkState(eventType == ELEMENT || eventType == SUB_ELEMENT,
+        "Not at an element");
+    return text;
+  }
+
+  /** Returns the index of the current element in its segment, from 1. */
+  public int getElementIndex() {
+    return elementIndex;
+  }
+
+  /** Returns the name of the loop started or ended by the current event. */
+  public String getLoopName() {
+    Preconditions.checkState(eventType == START_LOOP || eventType == END_LOOP, "Not at a loop");
+    return loopName;
+  }
+
+  /**
+   * Returns the location of the current event. Line and character are those of the tokenizer,
+   * which may have read a few elements ahead to place a segment in its loop.
+   */
+  public ImmutableEdiLocation getLocation() {
+    return new ImmutableEdiLocation(Location.copyOf(fileLocation), segmentId, elementIndex,
+        subElementIndex == 0 ? ImmutableEdiLocation.NO_SUB_ELEMENT : subElementIndex);
+  }
+
+  /**
+   * Skips the rest of the current segment, leaving the reader at its {@link #END_SEGMENT}. Allowed
+   * at {@link #START_SEGMENT}, {@link #ELEMENT} and {@link #SUB_ELEMENT}.
+   */
+  public void skipSegment() throws EdiException, IOException {
+    Preconditions.checkState(eventType == START_SEGMENT || eventType == ELEMENT
+        || eventType == SUB_ELEMENT, "Not in a segment");
+    eventType = END_SEGMENT;
+    for (int i = heldNext; i < heldCount; i++) {
+      if (heldTypes[i] == END_SEGMENT) {
+        // The whole segment was read ahead.
+        clearHeld();
+        return;
+      }
+    }
+    clearHeld();
+
+    if (tokenizingIsa) {
+      // ISA16 is still needed.
+      while (scan() != END_SEGMENT) {
+        continue;
+      }
+      return;
+    }
+
+    final Token delimiter = pendingDelimiter;
+    pendingDelimiter = null;
+    if (delimiter != Token.SEGMENT_TERMINATOR && !tokenizer.skipSegment()) {
+      throw new EdiException(new EOFException());
+    }
+    endSegment();
+  }
+
+  /**
+   * Skips the rest of the loop just started, leaving the reader at its {@link #END_LOOP}. Allowed
+   * only at {@link #START_LOOP}. Segments in the loop are skipped as by {@link #skipSegment()},
+   * except that segments placed by a qualifier are read up to the qualifier.
+   */
+  public void skipLoop() throws EdiException, IOException {
+    Preconditions.checkState(eventType == START_LOOP, "Not at the start of a loop");
+    final int depth = openLoopCount;
+    do {
+      eventType = nextEvent();
+      if (eventType == START_SEGMENT) {
+        skipSegment();
+      }
+    } while (eventType != END_LOOP || openLoopCount >= depth);
+  }
+
+  private int nextEvent() throws EdiException, IOException {
+    if (pendingEndLoops > 0) {
+      pendingEndLoops--;
+      loopName = openLoops[--openLoopCount];
+      openLoops[openLoopCount] = null;
+      return END_LOOP;
+    }
+    if (pendingStartLoop != null) {
+      loopName = pendingStartLoop;
+      pendingStartLoop = null;
+      if (openLoopCount == openLoops.length) {
+        openLoops = Arrays.copyOf(openLoops, openLoopCount * 2);
+      }
+      openLoops[openLoopCount++] = loopName;
+      return START_LOOP;
+    }
+    if (segmentStartPending) {
+      segmentStartPending = false;
+      elementIndex = 0;
+      subElementIndex = 0;
+      text = null;
+      return START_SEGMENT;
+    }
+    if (heldNext < heldCount) {
+      final int type = heldTypes[heldNext];
+      text = heldTexts[heldNext];
+      elementIndex = heldElements[heldNext];
+      subElementIndex = heldSubElements[heldNext];
+      heldNext++;
+      if (heldNext == heldCount) {
+        clearHeld();
+      }
+      return type;
+    }
+    if (inSegment) {
+      return scan();
+    }
+    return startSegment();
+  }
+
+  /** Reads a fixed-width ISA at the start of the input and holds its events. */
+  private void readIsaHeader() throws IOException {
+    final IsaHeader header = tokenizer.readIsaHeader();
+    if (header == null) {
+      return;
+    }
+
+    tokenizer.setDelimiters(header.toConfiguration().compile());
+    delimitersFixed = true;
+    segmentId = IsaHeader.SEGMENT_IDENTIFIER;
+    segmentCode = SegmentIdentifiers.ISA;
+    subElementIndex = 0;
+    for (elementIndex = 1; elementIndex <= ISA_SUB_ELEMENT_SEPARATOR_ELEMENT; elementIndex++) {
+      text = header.getElement(elementIndex);
+      hold(ELEMENT);
+    }
+    elementIndex = ISA_SUB_ELEMENT_SEPARATOR_ELEMENT;
+    hold(END_SEGMENT);
+    segmentStartPending = true;
+  }
+
+  private int startSegment() throws EdiException, IOException {
+    final Token token = tokenizer.nextToken();
+    if (token == null) {
+      if (openLoopCount > 0) {
+        // Input ended inside a transaction set.
+        cursor = null;
+        pendingEndLoops = openLoopCount;
+        return nextEvent();
+      }
+      return END_DOCUMENT;
+    }
+    if (token.getType() != Token.Type.WORD) {
+      throw new UnexpectedTokenException(token, Token.Type.WORD);
+    }
+
+    segmentId = token.getValue();
+    segmentCode = token.getSegmentCode();
+    inSegment = true;
+    elementIndex = 0;
+    subElementIndex = 0;
+    tokenizingIsa = segmentCode == SegmentIdentifiers.ISA && !delimitersFixed;
+
+    if (segmentCode == SegmentIdentifiers.ST) {
+      // A new transaction set; close anything left open by the last one.
+      cursor = null;
+      pendingEndLoops = openLoopCount;
+      final String transactionSetId = readAhead(ST_TRANSACTION_SET_ELEMENT);
+      if (transactionSetId != null) {
+        final String version = readAhead(ST_VERSION_ELEMENT);
+        final Grammar grammar = Grammar.forTransactionSet(transactionSetId, version != null
+            && version.length() > 0 ? version : groupVersion);
+        if (grammar != null) {
+          cursor = new GrammarCursor(grammar);
+          place(null);
+        }
+      }
+    } else if (segmentCode == SegmentIdentifiers.GS) {
+      groupVersion = readAhead(GS_VERSION_ELEMENT);
+    } else if (cursor != null) {
+      final int qualifierElement = cursor.qualifierElement(segmentCode);
+      place(qualifierElement > 0 ? readAhead(qualifierElement) : null);
+    }
+
+    segmentStartPending = true;
+    return nextEvent();
+  }
+
+  /** Places the current segment in the grammar and queues the loop events it causes. */
+  private void place(String qualifier) throws EdiException {
+    cursor.advance(segmentCode, qualifier);
+    pendingEndLoops += cursor.getEndLoops();
+    pendingStartLoop = cursor.getStartLoop();
+  }
+
+  /**
+   * Reads and holds the events of the current segment through element {@code element}.
+   *
+   * @return the element's text, or {@code null} if the segment ended first
+   */
+  private String readAhead(int element) throws EdiException, IOException {
+    while (true) {
+      final int type = scan();
+      hold(type);
+      if (type == END_SEGMENT) {
+        return null;
+      }
+      if (type == ELEMENT && elementIndex == element) {
+        return text;
+      }
+    }
+  }
+
+  /** Reads the next element, component or segment end of the current segment. */
+  private int scan() throws EdiException, IOException {
+    Token token = pendingDelimiter;
+    pendingDelimiter = null;
+    if (token == null) {
+      token = tokenizer.nextToken();
+      if (token == null) {
+        throw new EdiException(new EOFException());
+      }
+    }
+
+    switch (token.getType()) {
+    case SEGMENT_TERMINATOR:
+      endSegment();
+      return END_SEGMENT;
+    case ELEMENT_SEPARATOR:
+      subElementIndex = 0;
+      readText();
+      if (pendingDelimiter == Token.SEGMENT_TERMINATOR && text.length() == 0) {
+        // A trailing separator does not start an element.
+        pendingDelimiter = null;
+        endSegment();
+        return END_SEGMENT;
+      }
+      elementIndex++;
+      if (tokenizingIsa && elementIndex == ISA_SUB_ELEMENT_SEPARATOR_ELEMENT
+          && text.length() == 1) {
+        configuration.setSubElementSeparator(text.charAt(0));
+      }
+      if (pendingDelimiter == Token.SUB_ELEMENT_SEPARATOR) {
+        subElementIndex = 1;
+      }
+      return ELEMENT;
+    case SUB_ELEMENT_SEPARATOR:
+      if (elementIndex == 0) {
+        throw new UnexpectedTokenException(token, Token.Type.ELEMENT_SEPARATOR);
+      }
+      subElementIndex++;
+      readText();
+      return SUB_ELEMENT;
+    default:
+      throw new UnexpectedTokenException(token, Token.Type.ELEMENT_SEPARATOR,
+          Token.Type.SEGMENT_TERMINATOR);
+    }
+  }
+
+  /** Reads the text after a separator; an empty element leaves its delimiter pending. */
+  private void readText() throws EdiException, IOException {
+    final Token token = tokenizer.nextToken();
+    if (token == null) {
+      throw new EdiException(new EOFException());
+    }
+    if (token.getType() == Token.Type.WORD) {
+      text = token.getValue();
+      pendingDelimiter = tokenizer.nextToken();
+      if (pendingDelimiter == null) {
+        throw new EdiException(new EOFException());
+      }
+    } else {
+      text = "";
+      pendingDelimiter = token;
+    }
+  }
+
+  private void endSegment() {
+    inSegment = false;
+    if (tokenizingIsa) {
+      // The ISA has assigned the sub-element separator.
+      tokenizingIsa = false;
+      delimitersFixed = true;
+      tokenizer.setDelimiters(configuration.compile());
+    }
+    if (segmentCode == SegmentIdentifiers.SE && cursor != null) {
+      cursor = null;
+      pendingEndLoops = openLoopCount;
+    }
+  }
+
+  private void hold(int type) {
+    if (heldCount == heldTypes.length) {
+      final int capacity = heldCount * 2;
+      heldTypes = Arrays.copyOf(heldTypes, capacity);
+      heldTexts = Arrays.copyOf(heldTexts, capacity);
+      heldElements = Arrays.copyOf(heldElements, capacity);
+      heldSubElements = Arrays.copyOf(heldSubElements, capacity);
+    }
+    heldTypes[heldCount] = type;
+    heldTexts[heldCount] = text;
+    heldElements[heldCount] = elementIndex;
+    heldSubElements[heldCount] = subElementIndex;
+    heldCount++;
+  }
+
+  private void clearHeld() {
+    Arrays.fill(heldTexts, 0, heldCount, null);
+    heldCount = 0;
+    heldNext = 0;
+  }
+}
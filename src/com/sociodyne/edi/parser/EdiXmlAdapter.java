@@ -66,6 +66,7 @@ public class EdiXmlAdapter implements EdiHandler {
 
   public void subElement(String contents) throws EdiException {
     start(SUBELEMENT_ELEMENT, contents);
+    end(SUBELEMENT_ELEMENT);
   }
 
   public void startLoop(String segmentIdentifier) throws EdiException {
@@ -4,13 +4,25 @@ package com.sociodyne.edi.parser;
 import com.sociodyne.common.Exceptions;
 import com.sociodyne.edi.Configuration;
 import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.grammar.Grammar;
+import com.sociodyne.edi.grammar.GrammarHandler;
 import com.sociodyne.parser.Location;
 
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import javax.annotation.Nullable;
 
 import org.xml.sax.ContentHandler;
 import org.xml.sax.DTDHandler;
@@ -20,18 +32,95 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXNotRecognizedException;
 import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.inject.Guice;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
 import com.google.inject.Inject;
-import com.google.inject.Injector;
 
 public class EdiXmlReader implements XMLReader {
 
   /** Feature URI for wrapping exceptions with location information. */
   public static final String WRAP_EXCEPTIONS_FEATURE = "http://www.sociodyne.com/xmlns/xml/wrapExceptions";
 
+  /**
+   * Feature URI for tokenizing with a reusable buffer ({@link BufferedTokenizer}) instead of
+   * reading the input one character at a time.
+   */
+  public static final String BUFFERED_TOKENIZER_FEATURE = "http://www.sociodyne.com/xmlns/edi/bufferedTokenizer";
+
+  /**
+   * Feature URI declaring that byte input is in a single-byte encoding (ASCII or ISO-8859-1). Byte
+   * streams are then tokenized by a {@link ByteBufferTokenizer} without being decoded. Inputs
+   * whose declared encoding is single-byte are tokenized this way regardless of the feature.
+   */
+  public static final String SINGLE_BYTE_INPUT_FEATURE = "http://www.sociodyne.com/xmlns/edi/singleByteInput";
+
+  /**
+   * Feature URI for taking loops from the transaction set's {@link Grammar} instead of the
+   * built-in HL and LS loop parsers. Segments are parsed flat and a {@link GrammarHandler} opens
+   * and closes the loops; transaction sets without a grammar are reported without loops.
+   */
+  public static final String GRAMMAR_FEATURE = "http://www.sociodyne.com/xmlns/edi/grammar";
+
+  /**
+   * Feature URI for nesting HL loops by their parent pointers (HL02) instead of reporting each HL
+   * as a loop of its own. Segments are parsed flat and an {@link HlHierarchyHandler} opens and
+   * closes the loops. With {@link #GRAMMAR_FEATURE}, the grammar's loops take precedence in the
+   * transaction sets it covers.
+   */
+  public static final String HL_HIERARCHY_FEATURE = "http://www.sociodyne.com/xmlns/edi/hlHierarchy";
+
+  /**
+   * Feature URI for parsing files in two passes: the first builds a {@link StructuralIndex} of the
+   * delimiter positions, and the second tokenizes from the index with an
+   * {@link IndexedTokenizer}. The whole file is mapped at once, so it must be under 2 GB.
+   */
+  public static final String STRUCTURAL_INDEX_FEATURE = "http://www.sociodyne.com/xmlns/edi/structuralIndex";
+
+  /**
+   * Feature URI for recovering from malformed segments. A segment that cannot be parsed, or that
+   * the transaction set's grammar does not allow where it appears, is dropped, recorded as a
+   * {@link ParseError} and reported to the {@link ErrorHandler}, if there is one, and parsing
+   * resumes after its terminator. Segments are parsed flat, as with {@link #GRAMMAR_FEATURE}, so
+   * that no loop is left open by a dropped segment. An error in the ISA, which gives the
+   * delimiters, still ends the parse.
+   */
+  public static final String RECOVER_FEATURE = "http://www.sociodyne.com/xmlns/edi/recover";
+
+  /**
+   * Feature URI for checking envelope counts and control numbers as the input is parsed, with an
+   * {@link EnvelopeValidatingHandler}. Violations do not stop the parse; they are added to
+   * {@link #getParseErrors()} and reported to the {@link ErrorHandler}, if there is one, at the end
+   * of the input.
+   */
+  public static final String ENVELOPE_VALIDATION_FEATURE = "http://www.sociodyne.com/xmlns/edi/validateEnvelopes";
+
+  /**
+   * Feature URI for counting the parse events by segment type, as by an
+   * {@link InstrumentingEdiHandler}. The counts of the last parse are returned by
+   * {@link #getInstrumentation()}.
+   */
+  public static final String INSTRUMENT_FEATURE = "http://www.sociodyne.com/xmlns/edi/instrument";
+
+  /**
+   * Feature URI for having the parsers record events a block of segments at a time, through a
+   * {@link BatchingEdiHandler}, before they are delivered to the content handler.
+   *
+   * <p>
+   * The handlers behind the batcher see each segment up to a block after the parser has moved
+   * past it, so an error they raise, such as one from the content handler, is reported at the
+   * parser's position when the block is delivered rather than at the segment. For that reason
+   * this feature cannot be combined with {@link #GRAMMAR_FEATURE}, {@link #HL_HIERARCHY_FEATURE},
+   * {@link #ENVELOPE_VALIDATION_FEATURE} or {@link #RECOVER_FEATURE}, whose handlers report
+   * errors by location; a parse with any of them set throws {@link SAXNotSupportedException}.
+   */
+  public static final String BATCH_FEATURE = "http://www.sociodyne.com/xmlns/edi/batch";
+
   /** Property URI for setting the default segment terminator. */
   public static final String SEGMENT_TERMINATOR_PROPERTY = "http://www.sociodyne.com/xmlns/edi/segmentTerminator";
 
@@ -63,6 +152,39 @@ public class EdiXmlReader implements XMLReader {
   /** Value of the {@link #WRAP_EXCEPTIONS_FEATURE} feature. */
   private boolean defaultWrapExceptions = true;
 
+  /** Value of the {@link #BUFFERED_TOKENIZER_FEATURE} feature. */
+  private boolean useBufferedTokenizer = false;
+
+  /** Value of the {@link #SINGLE_BYTE_INPUT_FEATURE} feature. */
+  private boolean singleByteInput = false;
+
+  /** Value of the {@link #GRAMMAR_FEATURE} feature. */
+  private boolean useGrammar = false;
+
+  /** Value of the {@link #HL_HIERARCHY_FEATURE} feature. */
+  private boolean useHlHierarchy = false;
+
+  /** Value of the {@link #STRUCTURAL_INDEX_FEATURE} feature. */
+  private boolean useStructuralIndex = false;
+
+  /** Value of the {@link #RECOVER_FEATURE} feature. */
+  private boolean recover = false;
+
+  /** Value of the {@link #ENVELOPE_VALIDATION_FEATURE} feature. */
+  private boolean validateEnvelopes = false;
+
+  /** Value of the {@link #INSTRUMENT_FEATURE} feature. */
+  private boolean instrument = false;
+
+  /** Value of the {@link #BATCH_FEATURE} feature. */
+  private boolean batch = false;
+
+  /** Event counts of the last parse, if {@link #INSTRUMENT_FEATURE} was set. */
+  private InstrumentingEdiHandler instrumentation;
+
+  /** Errors recovered from and envelope violations found in the last parse. */
+  private List<ParseError> parseErrors = ImmutableList.of();
+
   /** Value of the {@link #NAMESPACE_FEATURE} feature. */
   private boolean defaultUseNamespaces = true;
 
@@ -114,6 +236,33 @@ public class EdiXmlReader implements XMLReader {
     if (feature.equals(WRAP_EXCEPTIONS_FEATURE)) {
       return defaultWrapExceptions;
     }
+    if (feature.equals(BUFFERED_TOKENIZER_FEATURE)) {
+      return useBufferedTokenizer;
+    }
+    if (feature.equals(SINGLE_BYTE_INPUT_FEATURE)) {
+      return singleByteInput;
+    }
+    if (feature.equals(GRAMMAR_FEATURE)) {
+      return useGrammar;
+    }
+    if (feature.equals(HL_HIERARCHY_FEATURE)) {
+      return useHlHierarchy;
+    }
+    if (feature.equals(STRUCTURAL_INDEX_FEATURE)) {
+      return useStructuralIndex;
+    }
+    if (feature.equals(RECOVER_FEATURE)) {
+      return recover;
+    }
+    if (feature.equals(ENVELOPE_VALIDATION_FEATURE)) {
+      return validateEnvelopes;
+    }
+    if (feature.equals(INSTRUMENT_FEATURE)) {
+      return instrument;
+    }
+    if (feature.equals(BATCH_FEATURE)) {
+      return batch;
+    }
     if (feature.startsWith("http://xml.org/sax/")) {
       throw new SAXNotSupportedException(feature);
     } else {
@@ -121,6 +270,24 @@ public class EdiXmlReader implements XMLReader {
     }
   }
 
+  /**
+   * Returns the errors recovered from in the last parse, in order, followed by the envelope
+   * violations found. The list is empty unless {@link #RECOVER_FEATURE} or
+   * {@link #ENVELOPE_VALIDATION_FEATURE} is set.
+   */
+  public List<ParseError> getParseErrors() {
+    return parseErrors;
+  }
+
+  /**
+   * Returns the event counts of the last parse, or {@code null} unless {@link #INSTRUMENT_FEATURE}
+   * was set for it.
+   */
+  @Nullable
+  public InstrumentingEdiHandler getInstrumentation() {
+    return instrumentation;
+  }
+
   public Object getProperty(String property) throws SAXNotRecognizedException,
       SAXNotSupportedException {
     // TODO(jkinner): Decide what properties to expose
@@ -132,84 +299,186 @@ public class EdiXmlReader implements XMLReader {
     if (characterStream != null) {
       parseReader(characterStream);
     } else if (inputSource.getByteStream() != null) {
-      parseReader(new InputStreamReader(inputSource.getByteStream()));
+      final InputStream byteStream = inputSource.getByteStream();
+      if (singleByteInput || isSingleByteEncoding(inputSource.getEncoding())) {
+        parseBytes(Channels.newChannel(byteStream));
+      } else if (inputSource.getEncoding() != null) {
+        parseReader(new InputStreamReader(byteStream, inputSource.getEncoding()));
+      } else {
+        parseReader(new InputStreamReader(byteStream));
+      }
     }
   }
 
   public void parse(String url) throws IOException, SAXException {
     final InputStream is = new URL(url).openStream();
-    final Reader r = new InputStreamReader(is, "UTF-8");
-    parseReader(r);
+    if (singleByteInput) {
+      parseBytes(Channels.newChannel(is));
+    } else {
+      final Reader r = new InputStreamReader(is, "UTF-8");
+      parseReader(r);
+    }
+  }
+
+  /**
+   * Parses a file by memory-mapping it. The file must be in a single-byte encoding (ASCII or
+   * ISO-8859-1); it is tokenized in place, without being decoded or copied onto the heap.
+   */
+  public void parse(File file) throws IOException, SAXException {
+    final FileInputStream is = new FileInputStream(file);
+    try {
+      final FileChannel channel = is.getChannel();
+      final Configuration configuration = newConfiguration();
+      final Location fileLocation = new Location();
+      final Tokenizer tokenizer;
+      if (useStructuralIndex) {
+        tokenizer = new IndexedTokenizer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+            .size()), configuration, fileLocation);
+      } else {
+        tokenizer = new MappedFileTokenizer(channel, configuration, fileLocation);
+      }
+      parseTokens(tokenizer, configuration, fileLocation);
+    } finally {
+      Closeables.closeQuietly(is);
+    }
   }
 
   protected void parseReader(Reader reader) throws IOException, SAXException {
-    final Configuration configuration = new Configuration.Builder()
-        .setSegmentTerminator(segmentTerminator).setElementSeparator(elementSeparator).build();
+    final Configuration configuration = newConfiguration();
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = useBufferedTokenizer ? new BufferedTokenizer(reader,
+        configuration, fileLocation) : new Tokenizer(reader, configuration, fileLocation);
+    parseTokens(tokenizer, configuration, fileLocation);
+  }
 
+  /** Parses single-byte input without decoding it. */
+  protected void parseBytes(ReadableByteChannel channel) throws IOException, SAXException {
+    final Configuration configuration = newConfiguration();
     final Location fileLocation = new Location();
+    parseTokens(new ByteBufferTokenizer(channel, configuration, fileLocation), configuration,
+        fileLocation);
+  }
+
+  private Configuration newConfiguration() {
+    return new Configuration.Builder().setSegmentTerminator(segmentTerminator)
+        .setElementSeparator(elementSeparator).build();
+  }
+
+  private static boolean isSingleByteEncoding(String encoding) {
+    if (encoding == null || !Charset.isSupported(encoding)) {
+      return false;
+    }
+
+    final Charset charset = Charset.forName(encoding);
+    return charset.equals(Charsets.US_ASCII) || charset.equals(Charsets.ISO_8859_1);
+  }
+
+  /**
+   * Parses the tokens produced by {@code tokenizer}. {@code configuration} is the tokenizer's
+   * configuration; its sub-element separator is assigned from the ISA segment.
+   */
+  protected void parseTokens(Tokenizer tokenizer, Configuration configuration,
+      Location fileLocation) throws IOException, SAXException {
+    if (batch && (useGrammar || useHlHierarchy || validateEnvelopes || recover)) {
+      throw new SAXNotSupportedException("The batch feature cannot be combined with the grammar,"
+          + " hlHierarchy, validateEnvelopes or recover features");
+    }
     final EdiLocation location = new EdiLocation(fileLocation, "ISA", 0);
-    
-    final Tokenizer tokenizer = new Tokenizer(reader, configuration, fileLocation);
+    parseErrors = ImmutableList.of();
 
     contentHandler.startDocument();
     contentHandler.startElement(EdiXmlAdapter.NAMESPACE_URI, EdiXmlAdapter.EDI_ELEMENT,
         EdiXmlAdapter.EDI_ELEMENT, EdiXmlAdapter.Attributes.of());
 
-    final EdiHandler handler = new EdiXmlAdapter(contentHandler);
-// handler = (EdiHandler) Proxy.newProxyInstance(getClass().getClassLoader(),
-// new Class<?>[] { EdiHandler.class },
-// new LoggingInvocationHandler(handler, System.err));
-    final EdiHandler isaFilterHandler = new IsaEdiHandler(configuration, handler);
-    final SegmentParser isaSegmentParser = segmentParserFactory.create(location, tokenizer,
-        isaFilterHandler);
+    EdiHandler handler = new EdiXmlAdapter(contentHandler);
+    GrammarHandler grammarHandler = null;
+    if (useGrammar || recover) {
+      grammarHandler = new GrammarHandler(handler);
+      handler = grammarHandler;
+    }
+    HlHierarchyHandler hlHierarchyHandler = null;
+    if (useHlHierarchy) {
+      hlHierarchyHandler = new HlHierarchyHandler(handler);
+      handler = hlHierarchyHandler;
+    }
+    EnvelopeValidatingHandler envelopeValidator = null;
+    if (validateEnvelopes) {
+      envelopeValidator = new EnvelopeValidatingHandler(handler, fileLocation);
+      handler = envelopeValidator;
+    }
+    instrumentation = null;
+    if (instrument) {
+      instrumentation = new InstrumentingEdiHandler(handler);
+      handler = instrumentation;
+    }
+    BatchingEdiHandler batching = null;
+    if (batch) {
+      batching = new BatchingEdiHandler(new BatchEdiHandlerAdapter(handler));
+      handler = batching;
+    }
     try {
-      Token isaToken = tokenizer.nextToken();
-      if (isaToken == null) {
+      final boolean hasIsa = parseIsa(tokenizer, configuration, location, handler,
+          segmentParserFactory);
+      if (batching != null) {
+        batching.flush();
+      }
+      if (!hasIsa) {
         // No content. Produce a valid, empty document.
         contentHandler.endElement(EdiXmlAdapter.NAMESPACE_URI, EdiXmlAdapter.EDI_ELEMENT,
             EdiXmlAdapter.EDI_ELEMENT);
         contentHandler.endDocument();
         return;
       }
-      if (!isaToken.equals(Token.word("ISA"))) {
-        throw new UnexpectedTokenException(isaToken, Token.word("ISA"));
-      }
-
-      // Parse the ISA segment with a special EdiHandler to pull the sub-element
-      isaToken = isaSegmentParser.parse(isaToken);
-
-      if (!(isaToken == Token.SEGMENT_TERMINATOR)) {
-        throw new UnexpectedTokenException(isaToken, Token.SEGMENT_TERMINATOR);
-      }
-    } catch (EdiException e) {
-      if (defaultWrapExceptions) {
-        e = Exceptions.wrap(e, location.toString());
-      }
-      throw new SAXException(e);
+    } catch (final EdiException e) {
+      throw new SAXException(locate(e, ImmutableEdiLocation.copyOf(location)));
     }
 
-    // separator out of the segment.
-    final SegmentListParser segmentListParser = segmentListParserFactory.create(location,
-        tokenizer, handler);
     final Token token = tokenizer.nextToken();
     if (token != null) {
       try {
-        segmentListParser.parse(token);
-      } catch (EdiException e) {
+        if (recover || useGrammar || useHlHierarchy) {
+          if (recover) {
+            parseRecovering(tokenizer, location, handler, grammarHandler, token);
+          } else {
+            parseFlat(tokenizer, location, handler, token);
+          }
+          // A transaction set without an SE may have left loops open.
+          if (hlHierarchyHandler != null) {
+            hlHierarchyHandler.endOpenLoops();
+          }
+          if (grammarHandler != null) {
+            grammarHandler.endOpenLoops();
+          }
+        } else {
+          segmentListParserFactory.create(location, tokenizer, handler).parse(token);
+          if (batching != null) {
+            batching.flush();
+          }
+        }
+      } catch (final EdiException e) {
+        // Line and character are only counted now, for the snapshot.
+        final ImmutableEdiLocation errorLocation = ImmutableEdiLocation.copyOf(location);
         if (e.getCause() instanceof IOException) {
           // Throw IOExceptions directly.
           IOException ioe = (IOException) e.getCause();
           if (defaultWrapExceptions) {
-            ioe = Exceptions.wrap(ioe, location.toString());
+            ioe = Exceptions.wrap(ioe, errorLocation.toString());
           }
 
           throw ioe;
         }
 
-        if (defaultWrapExceptions) {
-          e = Exceptions.wrap(e, location.toString());
-        }
-        throw new SAXException(e);
+        throw new SAXException(locate(e, errorLocation));
+      }
+    }
+
+    if (envelopeValidator != null) {
+      envelopeValidator.finish();
+      final List<ParseError> violations = envelopeValidator.getViolations();
+      parseErrors = ImmutableList.<ParseError> builder().addAll(parseErrors).addAll(violations)
+          .build();
+      for (final ParseError violation : violations) {
+        report(violation, null);
       }
     }
 
@@ -219,6 +488,180 @@ public class EdiXmlReader implements XMLReader {
     // TODO(jkinner): Warn if no other headers?
   }
 
+  /**
+   * Parses the remaining segments one after another, with a single {@link SegmentParser} and no
+   * loop parsers; loops are left to the {@link GrammarHandler}.
+   */
+  private void parseFlat(Tokenizer tokenizer, EdiLocation location, EdiHandler handler,
+      Token startToken) throws EdiException, IOException {
+    final SegmentParser segmentParser = segmentParserFactory.create(location, tokenizer,
+        handler);
+    Token token = startToken;
+    do {
+      if (token.getType() != Token.Type.WORD) {
+        throw new UnexpectedTokenException(token, Token.Type.WORD);
+      }
+      token = segmentParser.parse(token);
+      if (token != Token.SEGMENT_TERMINATOR) {
+        throw new UnexpectedTokenException(token, Token.SEGMENT_TERMINATOR);
+      }
+      token = tokenizer.nextToken();
+    } while (token != null);
+  }
+
+  /**
+   * Parses the remaining segments flat, like {@link #parseFlat}, but drops each malformed segment
+   * and carries on after its terminator. A segment's events are buffered until it has parsed and
+   * {@code grammarHandler} has accepted it, so the handlers never see part of a segment, and a
+   * segment the grammar does not allow is dropped like a malformed one.
+   */
+  private void parseRecovering(Tokenizer tokenizer, EdiLocation location, EdiHandler handler,
+      GrammarHandler grammarHandler, Token startToken) throws EdiException, IOException,
+      SAXException {
+    final Location fileLocation = location.getLocation();
+    final EdiEventBuffer segment = new EdiEventBuffer();
+    final SegmentParser segmentParser = segmentParserFactory.create(location, tokenizer,
+        segment);
+    final List<ParseError> errors = Lists.newArrayList();
+    try {
+      Token token = startToken;
+      while (token != null) {
+        // The tokenizer counts terminated segments from 0, and the ISA is already behind it.
+        final int segmentOrdinal = fileLocation.getSegment() + 1;
+        boolean terminated = false;
+        try {
+          if (token.getType() != Token.Type.WORD) {
+            throw new UnexpectedTokenException(token, Token.Type.WORD);
+          }
+          token = segmentParser.parse(token);
+          if (token != Token.SEGMENT_TERMINATOR) {
+            throw new UnexpectedTokenException(token, Token.SEGMENT_TERMINATOR);
+          }
+          terminated = true;
+          grammarHandler.check(segment);
+        } catch (final EOFException e) {
+          recover(new EdiException("Unexpected end of input", e), location, segmentOrdinal,
+              errors);
+          break;
+        } catch (final EdiException e) {
+          if (e.getCause() instanceof EOFException) {
+            recover(e, location, segmentOrdinal, errors);
+            break;
+          } else if (e.getCause() instanceof IOException) {
+            throw e;
+          }
+          recover(e, location, segmentOrdinal, errors);
+          // Resynchronize after the segment's terminator, unless it has been read.
+          if (!terminated && !(e instanceof UnexpectedTokenException
+              && ((UnexpectedTokenException) e).getActual() == Token.SEGMENT_TERMINATOR)
+              && !tokenizer.skipSegment()) {
+            break;
+          }
+          segment.clear();
+          token = tokenizer.nextToken();
+          continue;
+        }
+
+        segment.replay(handler);
+        segment.clear();
+        token = tokenizer.nextToken();
+      }
+    } finally {
+      parseErrors = ImmutableList.copyOf(errors);
+    }
+  }
+
+  /**
+   * Adds a recovered error to {@code errors}, and reports it to the {@link ErrorHandler} if there
+   * is one. The handler may end the parse by throwing.
+   */
+  private void recover(EdiException e, EdiLocation location, int segmentOrdinal,
+      List<ParseError> errors) throws SAXException {
+    final ImmutableEdiLocation errorLocation = ImmutableEdiLocation.copyOf(location);
+    String expected = null;
+    String found = null;
+    if (e instanceof UnexpectedTokenException) {
+      final UnexpectedTokenException unexpected = (UnexpectedTokenException) e;
+      expected = unexpected.getExpected();
+      found = unexpected.getActual() == null ? null : unexpected.getActual().toString();
+    } else if (e.getCause() instanceof EOFException) {
+      found = "EOF";
+    }
+    final ParseError error = new ParseError(errorLocation, segmentOrdinal, expected, found, e
+        .getMessage());
+    errors.add(error);
+    if (errorHandler != null) {
+      report(error, locate(e, errorLocation));
+    }
+  }
+
+  /** Reports {@code error} to the {@link ErrorHandler}, if there is one. */
+  private void report(ParseError error, @Nullable Exception cause) throws SAXException {
+    if (errorHandler != null) {
+      final Location position = error.getLocation().getLocation();
+      // SAX counts lines and columns from 1.
+      errorHandler.error(new SAXParseException(error.toString(), null, null,
+          position.getLine() + 1, position.getChar() + 1, cause));
+    }
+  }
+
+  /**
+   * Attaches {@code errorLocation} to {@code e}, wrapping it with the location if
+   * {@link #WRAP_EXCEPTIONS_FEATURE} is set.
+   */
+  private EdiException locate(EdiException e, ImmutableEdiLocation errorLocation) {
+    if (defaultWrapExceptions) {
+      e = Exceptions.wrap(e, errorLocation.toString());
+    }
+    if (e instanceof UnexpectedTokenException) {
+      ((UnexpectedTokenException) e).setLocation(errorLocation);
+    }
+    return e;
+  }
+
+  /**
+   * Parses the ISA segment and installs the interchange's separators in {@code tokenizer}. A
+   * fixed-width ISA is parsed by offset, with its separators read directly from the header;
+   * otherwise the ISA is tokenized with the default separators and the sub-element separator is
+   * pulled out of ISA16 as it is parsed.
+   *
+   * @return {@code false} if the input is empty
+   */
+  static boolean parseIsa(Tokenizer tokenizer, Configuration configuration,
+      EdiLocation location, EdiHandler handler, ParserFactory<SegmentParser> segmentParserFactory)
+      throws EdiException, IOException {
+    final IsaHeader isaHeader = tokenizer.readIsaHeader();
+    if (isaHeader != null) {
+      tokenizer.setDelimiters(isaHeader.toConfiguration().compile());
+      isaHeader.emit(location, handler);
+      return true;
+    }
+
+    final EdiHandler isaFilterHandler = new IsaEdiHandler(configuration, handler);
+    final SegmentParser isaSegmentParser = segmentParserFactory.create(location, tokenizer,
+        isaFilterHandler);
+    Token isaToken = tokenizer.nextToken();
+    if (isaToken == null) {
+      return false;
+    }
+    if (!isaToken.equals(Token.word("ISA"))) {
+      throw new UnexpectedTokenException(isaToken, Token.word("ISA"));
+    }
+
+    // Parse the ISA segment with a special EdiHandler to pull the sub-element
+    // separator out of the segment.
+    isaToken = isaSegmentParser.parse(isaToken);
+
+    if (!(isaToken == Token.SEGMENT_TERMINATOR)) {
+      throw new UnexpectedTokenException(isaToken, Token.SEGMENT_TERMINATOR);
+    }
+
+    // The ISA has assigned the sub-element separator; the separators are now fixed for the
+    // rest of the interchange.
+    tokenizer.setDelimiters(configuration.compile());
+    return true;
+  }
+
   public void setContentHandler(ContentHandler contentHandler) {
     this.contentHandler = contentHandler;
   }
@@ -239,12 +682,50 @@ public class EdiXmlReader implements XMLReader {
       SAXNotSupportedException {
     if (feature.equals(NAMESPACES_FEATURE)) {
       defaultUseNamespaces = enabled;
+      return;
     }
     if (feature.equals(NAMESPACE_PREFIXES_FEATURE)) {
       throw new SAXNotSupportedException(feature);
     }
     if (feature.equals(WRAP_EXCEPTIONS_FEATURE)) {
       defaultWrapExceptions = enabled;
+      return;
+    }
+    if (feature.equals(BUFFERED_TOKENIZER_FEATURE)) {
+      useBufferedTokenizer = enabled;
+      return;
+    }
+    if (feature.equals(SINGLE_BYTE_INPUT_FEATURE)) {
+      singleByteInput = enabled;
+      return;
+    }
+    if (feature.equals(GRAMMAR_FEATURE)) {
+      useGrammar = enabled;
+      return;
+    }
+    if (feature.equals(HL_HIERARCHY_FEATURE)) {
+      useHlHierarchy = enabled;
+      return;
+    }
+    if (feature.equals(STRUCTURAL_INDEX_FEATURE)) {
+      useStructuralIndex = enabled;
+      return;
+    }
+    if (feature.equals(RECOVER_FEATURE)) {
+      recover = enabled;
+      return;
+    }
+    if (feature.equals(ENVELOPE_VALIDATION_FEATURE)) {
+      validateEnvelopes = enabled;
+      return;
+    }
+    if (feature.equals(INSTRUMENT_FEATURE)) {
+      instrument = enabled;
+      return;
+    }
+    if (feature.equals(BATCH_FEATURE)) {
+      batch = enabled;
+      return;
     }
 
     if (feature.startsWith("http://xml.org/sax/")) {
@@ -286,12 +767,15 @@ public class EdiXmlReader implements XMLReader {
     throw new IllegalArgumentException("Expected a String or char");
   }
 
+  /**
+   * Creates readers wired with the plain-Java {@link ParserFactories}. {@link ParserModule} can
+   * inject an equivalent reader.
+   */
   public static class Factory {
 
-    private static Injector ediXmlReaderInjector = Guice.createInjector(new ParserModule());
-
     public static EdiXmlReader create() {
-      return ediXmlReaderInjector.getInstance(EdiXmlReader.class);
+      return new EdiXmlReader(ParserFactories.segmentListParsers(),
+          ParserFactories.segmentParsers());
     }
   }
 
@@ -5,6 +5,9 @@ import com.sociodyne.edi.EdiException;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.BitSet;
+
+import javax.annotation.Nullable;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
@@ -15,6 +18,9 @@ public class ElementListParser implements Parser {
   private final ParserFactory<SubElementListParser> subElementListParserFactory;
   private final EdiLocation location;
   private final EdiHandler handler;
+  /** The buffer of a {@link BatchingEdiHandler}, written directly, or {@code null}. */
+  private final EdiEventBuffer events;
+  private SubElementListParser subElementListParser;
 
   @Inject
   public ElementListParser(@Assisted Tokenizer tokenizer, @Assisted EdiLocation location,
@@ -23,6 +29,7 @@ public class ElementListParser implements Parser {
     this.subElementListParserFactory = subElementListParserFactory;
     this.location = location;
     this.handler = handler;
+    this.events = SegmentParser.batchEvents(handler);
   }
 
   public boolean matches(Token token) {
@@ -30,22 +37,54 @@ public class ElementListParser implements Parser {
   }
 
   public Token parse(Token token) throws EdiException, IOException {
+    return parse(token, null);
+  }
+
+  /**
+   * Parses the elements of a segment, reporting only those whose indexes, counting from 1, are in
+   * {@code elements}, or all of them if it is {@code null}. Other elements are passed over without
+   * reading their values, and the segment is skipped to its terminator after the last wanted one.
+   */
+  public Token parse(Token token, @Nullable BitSet elements) throws EdiException, IOException {
     if (!matches(token)) {
       throw new EdiException("Expected ELEMENT_SEPARATOR, found " + token);
     }
 
+    int element = 0;
     while (true) {
+      if (elements != null && elements.nextSetBit(element + 1) < 0) {
+        if (!tokenizer.skipSegment()) {
+          throw new EOFException();
+        }
+        return Token.SEGMENT_TERMINATOR;
+      }
+
       token = tokenizer.nextToken();
       if (token == null) {
         throw new EOFException();
       }
+      element++;
+
+      if (elements != null && !elements.get(element)) {
+        if (token.getType() == Token.Type.WORD
+            || token.getType() == Token.Type.SUB_ELEMENT_SEPARATOR) {
+          location.nextElement();
+          token = skipElement();
+        }
+        if (token.getType() == Token.Type.SEGMENT_TERMINATOR) {
+          return token;
+        } else if (token.getType() != Token.Type.ELEMENT_SEPARATOR) {
+          throw new UnexpectedTokenException(token, Token.ELEMENT_SEPARATOR);
+        }
+        continue;
+      }
 
       ELEMENT_TOKEN_TYPE:
       switch (token.getType()) {
       case WORD:
         // Good
         location.nextElement();
-        handler.startElement(token.getValue());
+        startElement(token.getValue());
         token = tokenizer.nextToken();
         if (token == null) {
           throw new EOFException();
@@ -53,38 +92,31 @@ public class ElementListParser implements Parser {
 
         switch (token.getType()) {
         case SUB_ELEMENT_SEPARATOR:
-          // Descend
-          final SubElementListParser subParser = subElementListParserFactory.create(location,
-              tokenizer, handler);
-          // Cause this token to become part of this parse.
-          final Token subToken = subParser.parse(token);
-          // Check terminal
-          switch (subToken.getType()) {
-          case ELEMENT_SEPARATOR:
-            // Good. Continue.
-            handler.endElement();
-            break;
-          case SEGMENT_TERMINATOR:
-            handler.endElement();
-            return subToken;
-          default:
-            throw new EdiException("Expected ELEMENT_SEPARATOR or SEGMENT_TERMINATOR, got "
-                + subToken);
+          if (parseSubElements(token) == Token.Type.SEGMENT_TERMINATOR) {
+            return Token.SEGMENT_TERMINATOR;
           }
           break ELEMENT_TOKEN_TYPE;
         case ELEMENT_SEPARATOR:
           // Good
-          handler.endElement();
+          endElement();
           break ELEMENT_TOKEN_TYPE;
         case SEGMENT_TERMINATOR:
-          handler.endElement();
+          endElement();
           return token;
         default:
           throw new EdiException("Expected WORD or ELEMENT_SEPARATOR, found " + token);
         }
       case ELEMENT_SEPARATOR:
-        handler.startElement("");
-        handler.endElement();
+        startElement("");
+        endElement();
+        break;
+      case SUB_ELEMENT_SEPARATOR:
+        // A composite whose first component is empty
+        location.nextElement();
+        startElement("");
+        if (parseSubElements(token) == Token.Type.SEGMENT_TERMINATOR) {
+          return Token.SEGMENT_TERMINATOR;
+        }
         break;
       case SEGMENT_TERMINATOR:
         break;
@@ -93,4 +125,55 @@ public class ElementListParser implements Parser {
       }
     }
   }
+
+  /**
+   * Parses the components of a composite after its first, ends the element, and returns the type
+   * of the token that ends it.
+   */
+  private Token.Type parseSubElements(Token token) throws EdiException, IOException {
+    if (subElementListParser == null) {
+      subElementListParser = subElementListParserFactory.create(location, tokenizer, handler);
+    }
+    final Token subToken = subElementListParser.parse(token);
+    switch (subToken.getType()) {
+    case ELEMENT_SEPARATOR:
+    case SEGMENT_TERMINATOR:
+      endElement();
+      return subToken.getType();
+    default:
+      throw new EdiException("Expected ELEMENT_SEPARATOR or SEGMENT_TERMINATOR, got " + subToken);
+    }
+  }
+
+  private void startElement(String contents) throws EdiException {
+    if (events != null) {
+      events.startElement(contents);
+    } else {
+      handler.startElement(contents);
+    }
+  }
+
+  private void endElement() throws EdiException {
+    if (events != null) {
+      events.endElement();
+    } else {
+      handler.endElement();
+    }
+  }
+
+  /** Passes over the rest of an unwanted element and returns the token that ends it. */
+  private Token skipElement() throws EdiException, IOException {
+    Token token;
+    while ((token = tokenizer.nextToken()) != null) {
+      switch (token.getType()) {
+      case ELEMENT_SEPARATOR:
+      case SEGMENT_TERMINATOR:
+        return token;
+      default:
+        // A sub-element or its separator
+        break;
+      }
+    }
+    throw new EOFException();
+  }
 }
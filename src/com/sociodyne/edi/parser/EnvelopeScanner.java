@@ -0,0 +1,242 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Reads only the envelopes of an input: the ISA, GS, ST, SE, GE and IEA segments. The ISA is read
+ * at its fixed width when it can be, GS and ST are tokenized only as far as the elements the
+ * {@link EnvelopeSummary} reports, and every other segment is skipped to its terminator with
+ * {@link Tokenizer#skipSegment()}, so no element of a transaction set is ever split or copied.
+ * This is enough to route or triage a file at close to the speed it can be read.
+ */
+public final class EnvelopeScanner {
+
+  private static final int ISA_SENDER_ID_ELEMENT = 6;
+  private static final int ISA_RECEIVER_ID_ELEMENT = 8;
+  private static final int ISA_CONTROL_NUMBER_ELEMENT = 13;
+  private static final int ISA_SUB_ELEMENT_SEPARATOR_ELEMENT = 16;
+  private static final int GS_FUNCTIONAL_IDENTIFIER_ELEMENT = 1;
+  private static final int GS_CONTROL_NUMBER_ELEMENT = 6;
+  private static final int ST_TRANSACTION_SET_ELEMENT = 1;
+  private static final int ST_CONTROL_NUMBER_ELEMENT = 2;
+
+  private final Tokenizer tokenizer;
+  private final Configuration defaults;
+  private final Location fileLocation;
+  private final List<EnvelopeSummary.Interchange> interchanges =
+      new ArrayList<EnvelopeSummary.Interchange>();
+
+  private String[] isa;
+  private long isaStart;
+  private List<EnvelopeSummary.FunctionalGroup> groups;
+
+  private String[] gs;
+  private long gsStart;
+  private List<EnvelopeSummary.TransactionSet> transactionSets;
+
+  private String[] st;
+  private long stStart;
+  private int segmentCount;
+
+  /**
+   * Creates a scanner over the tokens of {@code tokenizer}, which must report offsets through
+   * {@code fileLocation}. {@code defaults} gives the delimiters of an ISA that is not padded to its
+   * fixed width; it is not modified.
+   */
+  EnvelopeScanner(Tokenizer tokenizer, Configuration defaults, Location fileLocation) {
+    this.tokenizer = tokenizer;
+    this.defaults = defaults;
+    this.fileLocation = fileLocation;
+  }
+
+  /** Scans {@code input} from its position to its limit; offsets are relative to its position. */
+  public static EnvelopeSummary scan(ByteBuffer input) throws EdiException, IOException {
+    final Location location = new Location();
+    return new EnvelopeScanner(new ByteBufferTokenizer(input.slice(), newConfiguration(),
+        location), newConfiguration(), location).scan();
+  }
+
+  /** Scans a file, memory-mapping it a window at a time. */
+  public static EnvelopeSummary scan(File file) throws EdiException, IOException {
+    final FileInputStream is = new FileInputStream(file);
+    try {
+      final Location location = new Location();
+      return new EnvelopeScanner(new MappedFileTokenizer(is.getChannel(), newConfiguration(),
+          location), newConfiguration(), location).scan();
+    } finally {
+      Closeables.closeQuietly(is);
+    }
+  }
+
+  /** Scans the whole input. */
+  EnvelopeSummary scan() throws EdiException, IOException {
+    while (true) {
+      final long segmentStart = fileLocation.getOffset();
+      if (isa == null) {
+        if (!readIsa(segmentStart)) {
+          break;
+        }
+        continue;
+      }
+
+      final Token token = tokenizer.nextToken();
+      if (token == null) {
+        throw new EOFException("Interchange " + isa[ISA_CONTROL_NUMBER_ELEMENT]
+            + " has no IEA");
+      }
+      if (token == Token.SEGMENT_TERMINATOR) {
+        // An empty segment
+        continue;
+      }
+
+      final int code = EnvelopeSplitter.segmentCode(token);
+      if (st != null) {
+        segmentCount++;
+      }
+      if (code == SegmentIdentifiers.GS) {
+        check(gs == null, "GS inside a functional group", segmentStart);
+        gs = readElements(GS_CONTROL_NUMBER_ELEMENT);
+        gsStart = segmentStart;
+        transactionSets = new ArrayList<EnvelopeSummary.TransactionSet>();
+        continue;
+      } else if (code == SegmentIdentifiers.ST) {
+        check(gs != null, "ST outside a functional group", segmentStart);
+        check(st == null, "ST inside a transaction set", segmentStart);
+        st = readElements(ST_CONTROL_NUMBER_ELEMENT);
+        stStart = segmentStart;
+        segmentCount = 1;
+        continue;
+      }
+
+      if (!tokenizer.skipSegment()) {
+        throw new EOFException();
+      }
+      final long end = fileLocation.getOffset();
+      if (code == SegmentIdentifiers.SE) {
+        check(st != null, "SE outside a transaction set", segmentStart);
+        transactionSets.add(new EnvelopeSummary.TransactionSet(st[ST_TRANSACTION_SET_ELEMENT],
+            st[ST_CONTROL_NUMBER_ELEMENT], segmentCount, stStart, end));
+        st = null;
+      } else if (code == SegmentIdentifiers.GE) {
+        check(gs != null && st == null, "GE outside a functional group", segmentStart);
+        groups.add(new EnvelopeSummary.FunctionalGroup(gs[GS_FUNCTIONAL_IDENTIFIER_ELEMENT],
+            gs[GS_CONTROL_NUMBER_ELEMENT], gsStart, end, transactionSets));
+        gs = null;
+      } else if (code == SegmentIdentifiers.IEA) {
+        check(gs == null, "IEA inside a functional group", segmentStart);
+        interchanges.add(new EnvelopeSummary.Interchange(isa[ISA_SENDER_ID_ELEMENT],
+            isa[ISA_RECEIVER_ID_ELEMENT], isa[ISA_CONTROL_NUMBER_ELEMENT], isaStart, end, groups));
+        isa = null;
+      }
+    }
+    return new EnvelopeSummary(interchanges);
+  }
+
+  /**
+   * Reads an interchange's ISA and installs its delimiters.
+   *
+   * @return {@code false} at the end of the input
+   */
+  private boolean readIsa(long segmentStart) throws EdiException, IOException {
+    final IsaHeader header = tokenizer.readIsaHeader();
+    if (header != null) {
+      isa = new String[ISA_CONTROL_NUMBER_ELEMENT + 1];
+      for (final int element : new int[] { ISA_SENDER_ID_ELEMENT, ISA_RECEIVER_ID_ELEMENT,
+          ISA_CONTROL_NUMBER_ELEMENT }) {
+        isa[element] = header.getElement(element);
+      }
+      startInterchange(segmentStart, header.toConfiguration());
+      return true;
+    }
+
+    final Token token = tokenizer.nextToken();
+    if (token == null || EnvelopeSplitter.isLineBreaks(token)) {
+      return false;
+    }
+    if (EnvelopeSplitter.segmentCode(token) != SegmentIdentifiers.ISA) {
+      throw new UnexpectedTokenException(token, Token.word(IsaHeader.SEGMENT_IDENTIFIER));
+    }
+
+    // Tokenized with the default delimiters; ISA16 gives the sub-element separator.
+    final Configuration configuration = new Configuration.Builder()
+        .setSegmentTerminator(defaults.getSegmentTerminator())
+        .setElementSeparator(defaults.getElementSeparator()).build();
+    tokenizer.setDelimiters(configuration.compile());
+    isa = readElements(ISA_SUB_ELEMENT_SEPARATOR_ELEMENT);
+    final String subElementSeparator = isa[ISA_SUB_ELEMENT_SEPARATOR_ELEMENT];
+    if (subElementSeparator != null && subElementSeparator.length() == 1) {
+      configuration.setSubElementSeparator(subElementSeparator.charAt(0));
+    }
+    startInterchange(segmentStart, configuration);
+    return true;
+  }
+
+  private void startInterchange(long segmentStart, Configuration configuration) {
+    isa[ISA_SENDER_ID_ELEMENT] = trim(isa[ISA_SENDER_ID_ELEMENT]);
+    isa[ISA_RECEIVER_ID_ELEMENT] = trim(isa[ISA_RECEIVER_ID_ELEMENT]);
+    isaStart = segmentStart;
+    groups = new ArrayList<EnvelopeSummary.FunctionalGroup>();
+    tokenizer.setDelimiters(configuration.compile());
+  }
+
+  /**
+   * Reads the elements of the current segment up to element {@code last}, and skips the rest of
+   * the segment. Element {@code i} is at index {@code i}; missing elements are {@code null}.
+   */
+  private String[] readElements(int last) throws EdiException, IOException {
+    final String[] elements = new String[last + 1];
+    int element = 0;
+    Token token;
+    while ((token = tokenizer.nextToken()) != null) {
+      switch (token.getType()) {
+      case SEGMENT_TERMINATOR:
+        return elements;
+      case ELEMENT_SEPARATOR:
+        if (++element > last) {
+          if (!tokenizer.skipSegment()) {
+            throw new EOFException();
+          }
+          return elements;
+        }
+        break;
+      case WORD:
+        if (element > 0 && elements[element] == null) {
+          elements[element] = token.getValue();
+        }
+        break;
+      default:
+        // The separator of a composite element; only its first part is kept.
+        break;
+      }
+    }
+    throw new EOFException();
+  }
+
+  private static void check(boolean condition, String message, long offset) throws EdiException {
+    if (!condition) {
+      throw new EdiException(message + " at offset " + offset);
+    }
+  }
+
+  private static String trim(String element) {
+    return element == null ? null : element.trim();
+  }
+
+  private static Configuration newConfiguration() {
+    return new Configuration.Builder().setSegmentTerminator('~').setElementSeparator('*')
+        .build();
+  }
+}
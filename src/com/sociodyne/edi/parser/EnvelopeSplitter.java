@@ -0,0 +1,205 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an input into its transaction sets and the envelope segments between them. Only the
+ * identifier of each segment is tokenized; the rest is passed over with
+ * {@link Tokenizer#skipSegment()}. The delimiters of each interchange are taken from its ISA, so
+ * an input may hold interchanges with different delimiters.
+ */
+final class EnvelopeSplitter {
+
+  private static final int ISA_SUB_ELEMENT_SEPARATOR_ELEMENT = 16;
+
+  /** A byte range of the input that can be parsed on its own. */
+  static final class Part {
+
+    final long start;
+    final long end;
+    /** Whether the part is one ST through SE transaction set. */
+    final boolean transactionSet;
+    /**
+     * The delimiters of the part's interchange, or {@code null} if the part starts with an ISA
+     * and so must be parsed from the default delimiters.
+     */
+    final Configuration configuration;
+
+    Part(long start, long end, boolean transactionSet, Configuration configuration) {
+      this.start = start;
+      this.end = end;
+      this.transactionSet = transactionSet;
+      this.configuration = configuration;
+    }
+
+    boolean startsInterchange() {
+      return configuration == null;
+    }
+
+    @Override
+    public String toString() {
+      return (transactionSet ? "ST" : "envelope") + "[" + start + ", " + end + ")";
+    }
+  }
+
+  private final Tokenizer tokenizer;
+  private final Configuration defaults;
+  private final Location fileLocation;
+  private final List<Part> parts = new ArrayList<Part>();
+
+  /** Delimiters of the current interchange, or {@code null} before its ISA. */
+  private Configuration interchange;
+  private long partStart;
+  private Configuration partConfiguration;
+  private boolean inTransactionSet;
+
+  /**
+   * Creates a splitter over the tokens of {@code tokenizer}, which must report offsets through
+   * {@code fileLocation}. {@code defaults} gives the delimiters of an ISA that is not padded to its
+   * fixed width; it is not modified.
+   */
+  EnvelopeSplitter(Tokenizer tokenizer, Configuration defaults, Location fileLocation) {
+    this.tokenizer = tokenizer;
+    this.defaults = defaults;
+    this.fileLocation = fileLocation;
+  }
+
+  /** Scans the whole input and returns its parts, in order. */
+  List<Part> split() throws EdiException, IOException {
+    partStart = fileLocation.getOffset();
+    while (true) {
+      final long segmentStart = fileLocation.getOffset();
+      if (interchange == null) {
+        if (!readIsa(segmentStart)) {
+          break;
+        }
+        continue;
+      }
+
+      final Token token = tokenizer.nextToken();
+      if (token == null) {
+        break;
+      }
+      if (token == Token.SEGMENT_TERMINATOR) {
+        // An empty segment, left for the parser to reject in order.
+        continue;
+      }
+
+      final int code = segmentCode(token);
+      if (code == SegmentIdentifiers.ST && !inTransactionSet) {
+        endPart(segmentStart, false);
+        inTransactionSet = true;
+      }
+      if (!tokenizer.skipSegment()) {
+        break;
+      }
+      if (code == SegmentIdentifiers.SE && inTransactionSet) {
+        endPart(fileLocation.getOffset(), true);
+        inTransactionSet = false;
+      } else if (code == SegmentIdentifiers.IEA) {
+        interchange = null;
+      }
+    }
+
+    // An unterminated transaction set is left to be parsed, and fail, in order.
+    endPart(fileLocation.getOffset(), false);
+    return parts;
+  }
+
+  /**
+   * Reads an interchange's ISA and installs its delimiters.
+   *
+   * @return {@code false} at the end of the input
+   */
+  private boolean readIsa(long segmentStart) throws EdiException, IOException {
+    final IsaHeader header = tokenizer.readIsaHeader();
+    if (header != null) {
+      startInterchange(segmentStart, header.toConfiguration());
+      return true;
+    }
+
+    final Token token = tokenizer.nextToken();
+    if (token == null) {
+      return false;
+    }
+    if (isLineBreaks(token)) {
+      // Trailing line breaks after the last interchange.
+      return false;
+    }
+    if (segmentCode(token) != SegmentIdentifiers.ISA) {
+      throw new UnexpectedTokenException(token, Token.word(IsaHeader.SEGMENT_IDENTIFIER));
+    }
+
+    // Tokenized with the default delimiters; ISA16 gives the sub-element separator.
+    final Configuration configuration = new Configuration.Builder()
+        .setSegmentTerminator(defaults.getSegmentTerminator())
+        .setElementSeparator(defaults.getElementSeparator()).build();
+    tokenizer.setDelimiters(configuration.compile());
+    int element = 0;
+    Token next;
+    while ((next = tokenizer.nextToken()) != Token.SEGMENT_TERMINATOR) {
+      if (next == null) {
+        return false;
+      }
+      if (next == Token.ELEMENT_SEPARATOR) {
+        element++;
+      } else if (element == ISA_SUB_ELEMENT_SEPARATOR_ELEMENT
+          && next.getContents().length() == 1) {
+        configuration.setSubElementSeparator(next.getContents().charAt(0));
+      }
+    }
+    startInterchange(segmentStart, configuration);
+    return true;
+  }
+
+  private void startInterchange(long segmentStart, Configuration configuration) {
+    endPart(segmentStart, false);
+    partConfiguration = null;
+    inTransactionSet = false;
+    interchange = configuration;
+    tokenizer.setDelimiters(configuration.compile());
+  }
+
+  /** Ends the current part at {@code end}; the next part starts there. */
+  private void endPart(long end, boolean transactionSet) {
+    if (end > partStart) {
+      parts.add(new Part(partStart, end, transactionSet, partConfiguration));
+    }
+    partStart = end;
+    partConfiguration = interchange;
+  }
+
+  /** Returns the code of a segment identifier, ignoring line breaks before it. */
+  static int segmentCode(Token token) {
+    final int code = token.getSegmentCode();
+    if (code != SegmentIdentifiers.NONE || token.getType() != Token.Type.WORD) {
+      return code;
+    }
+    final CharSequence contents = token.getContents();
+    final int start = lineBreaks(contents);
+    return start == 0 ? code : SegmentIdentifiers.code(contents.subSequence(start,
+        contents.length()));
+  }
+
+  static boolean isLineBreaks(Token token) {
+    return token.getType() == Token.Type.WORD
+        && lineBreaks(token.getContents()) == token.getContents().length();
+  }
+
+  /** Returns the number of line breaks at the start of {@code contents}. */
+  private static int lineBreaks(CharSequence contents) {
+    int count = 0;
+    while (count < contents.length()
+        && (contents.charAt(count) == '\r' || contents.charAt(count) == '\n')) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * The envelopes of an input, as found by an {@link EnvelopeScanner}: its interchanges, their
+ * functional groups and the transaction sets in each, with their control numbers and byte ranges.
+ * Ranges are half-open, from the first byte of the opening segment to just after the terminator
+ * of the closing one.
+ */
+public final class EnvelopeSummary {
+
+  /** An ISA through IEA interchange. */
+  public static final class Interchange {
+
+    private final String senderId;
+    private final String receiverId;
+    private final String controlNumber;
+    private final long start;
+    private final long end;
+    private final List<FunctionalGroup> groups;
+
+    Interchange(String senderId, String receiverId, String controlNumber, long start, long end,
+        List<FunctionalGroup> groups) {
+      this.senderId = senderId;
+      this.receiverId = receiverId;
+      this.controlNumber = controlNumber;
+      this.start = start;
+      this.end = end;
+      this.groups = ImmutableList.copyOf(groups);
+    }
+
+    /** Returns ISA06, without its padding. */
+    public String getSenderId() {
+      return senderId;
+    }
+
+    /** Returns ISA08, without its padding. */
+    public String getReceiverId() {
+      return receiverId;
+    }
+
+    /** Returns ISA13. */
+    public String getControlNumber() {
+      return controlNumber;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public List<FunctionalGroup> getFunctionalGroups() {
+      return groups;
+    }
+
+    @Override
+    public String toString() {
+      return "ISA(" + senderId + ", " + receiverId + ", " + controlNumber + ")[" + start + ", "
+          + end + ")" + groups;
+    }
+  }
+
+  /** A GS through GE functional group. */
+  public static final class FunctionalGroup {
+
+    private final String functionalIdentifier;
+    private final String controlNumber;
+    private final long start;
+    private final long end;
+    private final List<TransactionSet> transactionSets;
+
+    FunctionalGroup(String functionalIdentifier, String controlNumber, long start, long end,
+        List<TransactionSet> transactionSets) {
+      this.functionalIdentifier = functionalIdentifier;
+      this.controlNumber = controlNumber;
+      this.start = start;
+      this.end = end;
+      this.transactionSets = ImmutableList.copyOf(transactionSets);
+    }
+
+    /** Returns GS01, the functional identifier code, such as {@code HB}. */
+    public String getFunctionalIdentifier() {
+      return functionalIdentifier;
+    }
+
+    /** Returns GS06. */
+    public String getControlNumber() {
+      return controlNumber;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public List<TransactionSet> getTransactionSets() {
+      return transactionSets;
+    }
+
+    @Override
+    public String toString() {
+      return "GS(" + functionalIdentifier + ", " + controlNumber + ")[" + start + ", " + end + ")"
+          + transactionSets;
+    }
+  }
+
+  /** An ST through SE transaction set. */
+  public static final class TransactionSet {
+
+    private final String type;
+    private final String controlNumber;
+    private final int segmentCount;
+    private final long start;
+    private final long end;
+
+    TransactionSet(String type, String controlNumber, int segmentCount, long start, long end) {
+      this.type = type;
+      this.controlNumber = controlNumber;
+      this.segmentCount = segmentCount;
+      this.start = start;
+      this.end = end;
+    }
+
+    /** Returns ST01, the transaction set identifier code, such as {@code 271}. */
+    public String getType() {
+      return type;
+    }
+
+    /** Returns ST02. */
+    public String getControlNumber() {
+      return controlNumber;
+    }
+
+    /** Returns the number of segments from the ST through the SE, as SE01 should give it. */
+    public int getSegmentCount() {
+      return segmentCount;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    @Override
+    public String toString() {
+      return "ST(" + type + ", " + controlNumber + ", " + segmentCount + ")[" + start + ", " + end
+          + ")";
+    }
+  }
+
+  private final List<Interchange> interchanges;
+
+  EnvelopeSummary(List<Interchange> interchanges) {
+    this.interchanges = ImmutableList.copyOf(interchanges);
+  }
+
+  public List<Interchange> getInterchanges() {
+    return interchanges;
+  }
+
+  /** Returns the number of transaction sets in all of the interchanges. */
+  public int getTransactionSetCount() {
+    int count = 0;
+    for (final Interchange interchange : interchanges) {
+      for (final FunctionalGroup group : interchange.getFunctionalGroups()) {
+        count += group.getTransactionSets().size();
+      }
+    }
+    return count;
+  }
+
+  /** Returns the number of transaction sets of each type, in the order the types first appear. */
+  public Map<String, Integer> getTransactionSetCounts() {
+    final Map<String, Integer> counts = Maps.newLinkedHashMap();
+    for (final Interchange interchange : interchanges) {
+      for (final FunctionalGroup group : interchange.getFunctionalGroups()) {
+        for (final TransactionSet transactionSet : group.getTransactionSets()) {
+          final Integer count = counts.get(transactionSet.getType());
+          counts.put(transactionSet.getType(), count == null ? 1 : count + 1);
+        }
+      }
+    }
+    return ImmutableMap.copyOf(counts);
+  }
+
+  @Override
+  public String toString() {
+    return interchanges.toString();
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Checks the envelopes of the events passing through it: that SE01 is the number of segments in
+ * the transaction set, GE01 the number of transaction sets in the group and IEA01 the number of
+ * groups in the interchange, and that each trailer repeats its header's control number (ST02 in
+ * SE02, GS06 in GE02 and ISA13 in IEA02). Only a count and a control number are kept per open
+ * envelope, and events are forwarded as they arrive.
+ *
+ * <p>
+ * Violations are collected as {@link ParseError ParseErrors}; they do not stop the parse. Call
+ * {@link #finish()} at the end of the input to report envelopes that were never closed.
+ */
+public class EnvelopeValidatingHandler implements EdiHandler {
+
+  private static final int ISA_CONTROL_NUMBER_ELEMENT = 13;
+  private static final int GS_CONTROL_NUMBER_ELEMENT = 6;
+  private static final int ST_CONTROL_NUMBER_ELEMENT = 2;
+  private static final int TRAILER_COUNT_ELEMENT = 1;
+  private static final int TRAILER_CONTROL_NUMBER_ELEMENT = 2;
+
+  private final EdiHandler delegate;
+  private final Location fileLocation;
+  private final List<ParseError> violations = new ArrayList<ParseError>();
+
+  private String segmentIdentifier;
+  private int segmentCode;
+  private int segmentOrdinal;
+  private int elementIndex;
+  /** The current segment's count and control number elements, if it is a header or trailer. */
+  private String countElement;
+  private String controlNumberElement;
+
+  /** Control numbers of the open envelopes, or {@code null} if they are not open. */
+  private String isaControlNumber;
+  private String gsControlNumber;
+  private String stControlNumber;
+  private int groupCount;
+  private int transactionSetCount;
+  private int segmentCount;
+
+  /** Creates a handler whose violations are located by segment and element only. */
+  public EnvelopeValidatingHandler(EdiHandler delegate) {
+    this(delegate, null);
+  }
+
+  /** Creates a handler whose violations also give their position in the input. */
+  public EnvelopeValidatingHandler(EdiHandler delegate, @Nullable Location fileLocation) {
+    this.delegate = delegate;
+    this.fileLocation = fileLocation;
+  }
+
+  public void startSegment(String segmentIdentifier) throws EdiException {
+    this.segmentIdentifier = segmentIdentifier;
+    segmentCode = SegmentIdentifiers.code(segmentIdentifier);
+    segmentOrdinal++;
+    elementIndex = 0;
+    countElement = null;
+    controlNumberElement = null;
+    if (stControlNumber != null) {
+      segmentCount++;
+    }
+    delegate.startSegment(segmentIdentifier);
+  }
+
+  public void endSegment() throws EdiException {
+    elementIndex = 0;
+    if (segmentCode == SegmentIdentifiers.ISA) {
+      if (isaControlNumber != null) {
+        violation(null, null, "Interchange " + isaControlNumber + " has no IEA");
+      }
+      isaControlNumber = Strings.nullToEmpty(controlNumberElement);
+      groupCount = 0;
+    } else if (segmentCode == SegmentIdentifiers.GS) {
+      if (gsControlNumber != null) {
+        violation(null, null, "Functional group " + gsControlNumber + " has no GE");
+      }
+      gsControlNumber = Strings.nullToEmpty(controlNumberElement);
+      transactionSetCount = 0;
+      groupCount++;
+    } else if (segmentCode == SegmentIdentifiers.ST) {
+      if (stControlNumber != null) {
+        violation(null, null, "Transaction set " + stControlNumber + " has no SE");
+      }
+      stControlNumber = Strings.nullToEmpty(controlNumberElement);
+      segmentCount = 1;
+      transactionSetCount++;
+    } else if (segmentCode == SegmentIdentifiers.SE) {
+      checkTrailer(stControlNumber, segmentCount, "transaction set");
+      stControlNumber = null;
+    } else if (segmentCode == SegmentIdentifiers.GE) {
+      checkTrailer(gsControlNumber, transactionSetCount, "functional group");
+      gsControlNumber = null;
+    } else if (segmentCode == SegmentIdentifiers.IEA) {
+      checkTrailer(isaControlNumber, groupCount, "interchange");
+      isaControlNumber = null;
+    }
+    delegate.endSegment();
+  }
+
+  public void startElement(String contents) throws EdiException {
+    elementIndex++;
+    if (segmentCode == SegmentIdentifiers.ISA) {
+      if (elementIndex == ISA_CONTROL_NUMBER_ELEMENT) {
+        controlNumberElement = contents;
+      }
+    } else if (segmentCode == SegmentIdentifiers.GS) {
+      if (elementIndex == GS_CONTROL_NUMBER_ELEMENT) {
+        controlNumberElement = contents;
+      }
+    } else if (segmentCode == SegmentIdentifiers.ST) {
+      if (elementIndex == ST_CONTROL_NUMBER_ELEMENT) {
+        controlNumberElement = contents;
+      }
+    } else if (segmentCode == SegmentIdentifiers.SE || segmentCode == SegmentIdentifiers.GE
+        || segmentCode == SegmentIdentifiers.IEA) {
+      if (elementIndex == TRAILER_COUNT_ELEMENT) {
+        countElement = contents;
+      } else if (elementIndex == TRAILER_CONTROL_NUMBER_ELEMENT) {
+        controlNumberElement = contents;
+      }
+    }
+    delegate.startElement(contents);
+  }
+
+  public void endElement() throws EdiException {
+    delegate.endElement();
+  }
+
+  public void subElement(String contents) throws EdiException {
+    delegate.subElement(contents);
+  }
+
+  public void startLoop(String segmentIdentifier) throws EdiException {
+    delegate.startLoop(segmentIdentifier);
+  }
+
+  public void endLoop() throws EdiException {
+    delegate.endLoop();
+  }
+
+  /** Reports the envelopes still open at the end of the input. */
+  public void finish() {
+    segmentIdentifier = null;
+    if (stControlNumber != null) {
+      violation(null, null, "Transaction set " + stControlNumber + " has no SE");
+    }
+    if (gsControlNumber != null) {
+      violation(null, null, "Functional group " + gsControlNumber + " has no GE");
+    }
+    if (isaControlNumber != null) {
+      violation(null, null, "Interchange " + isaControlNumber + " has no IEA");
+    }
+    stControlNumber = null;
+    gsControlNumber = null;
+    isaControlNumber = null;
+  }
+
+  /** Returns the violations found so far, in order. */
+  public List<ParseError> getViolations() {
+    return ImmutableList.copyOf(violations);
+  }
+
+  /** Checks a trailer's count and control number against its envelope's. */
+  private void checkTrailer(String controlNumber, int count, String envelope) {
+    if (controlNumber == null) {
+      violation(null, null, segmentIdentifier + " outside a " + envelope);
+      return;
+    }
+
+    final String expectedCount = Integer.toString(count);
+    if (!expectedCount.equals(trimLeadingZeros(countElement))) {
+      elementIndex = TRAILER_COUNT_ELEMENT;
+      violation(expectedCount, countElement, segmentIdentifier + TRAILER_COUNT_ELEMENT
+          + " does not match the " + envelope + "'s count");
+    }
+    if (!controlNumber.equals(Strings.nullToEmpty(controlNumberElement))) {
+      elementIndex = TRAILER_CONTROL_NUMBER_ELEMENT;
+      violation(controlNumber, controlNumberElement, segmentIdentifier
+          + TRAILER_CONTROL_NUMBER_ELEMENT + " does not match the " + envelope
+          + "'s control number");
+    }
+    elementIndex = 0;
+  }
+
+  private void violation(@Nullable String expected, @Nullable String found, String message) {
+    final ImmutableEdiLocation location = new ImmutableEdiLocation(fileLocation == null ? null
+        : Location.copyOf(fileLocation), segmentIdentifier, elementIndex,
+        ImmutableEdiLocation.NO_SUB_ELEMENT);
+    violations.add(new ParseError(location, segmentOrdinal, expected, found, message));
+  }
+
+  private static String trimLeadingZeros(String count) {
+    if (count == null) {
+      return null;
+    }
+    int start = 0;
+    while (start < count.length() - 1 && count.charAt(start) == '0') {
+      start++;
+    }
+    return count.substring(start);
+  }
+}
@@ -0,0 +1,234 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+/**
+ * Delivers one parse's events to several handlers, each on its own thread. Events are recorded a
+ * block of segments at a time into the slots of a ring of reusable {@link EdiEventBuffer}s, which
+ * the single producer (the parser thread) fills and every consumer reads in order at its own pace.
+ * A slot is refilled only once every consumer has read it, so the parser waits when the slowest
+ * consumer is a full ring behind.
+ *
+ * <p>
+ * Each consumer runs as a task on the {@link ExecutorService}, which must have a thread free for
+ * every consumer. Call {@link #finish()} after the parse to deliver the remaining events and wait
+ * for the consumers, or {@link #cancel()} if the parse fails. A consumer that throws stops
+ * receiving events without holding back the others; its exception is thrown from
+ * {@link #finish()}.
+ */
+public class FanOutEdiHandler implements EdiHandler {
+
+  /** The number of slots used by {@link #FanOutEdiHandler(ExecutorService, EdiHandler...)}. */
+  public static final int DEFAULT_SLOTS = 16;
+
+  private final EdiEventBuffer[] slots;
+  private final int batchSegments;
+  private final List<Consumer> consumers;
+  /** Guards the sequences below; waiters on either side are woken through it. */
+  private final Object lock = new Object();
+
+  /** The number of slots published, counting from the start of the parse. */
+  private long published;
+  private boolean closed;
+  private boolean cancelled;
+
+  /** The slot being filled, and the number of segments in it. */
+  private EdiEventBuffer slot;
+  private int segments;
+
+  /**
+   * Creates a handler with {@link #DEFAULT_SLOTS} slots of
+   * {@link BatchingEdiHandler#DEFAULT_BATCH_SEGMENTS} segments each.
+   */
+  public FanOutEdiHandler(ExecutorService executor, EdiHandler... handlers) {
+    this(executor, DEFAULT_SLOTS, BatchingEdiHandler.DEFAULT_BATCH_SEGMENTS, handlers);
+  }
+
+  /**
+   * Creates a handler that publishes a slot after every {@code batchSegments} segments, and lets
+   * the fastest consumer run at most {@code slotCount} slots ahead of the slowest. The consumers
+   * are started on {@code executor} at once; the executor is not shut down.
+   */
+  public FanOutEdiHandler(ExecutorService executor, int slotCount, int batchSegments,
+      EdiHandler... handlers) {
+    Preconditions.checkArgument(slotCount > 0, "slotCount must be positive");
+    Preconditions.checkArgument(batchSegments > 0, "batchSegments must be positive");
+    Preconditions.checkArgument(handlers.length > 0, "No handlers");
+    this.slots = new EdiEventBuffer[slotCount];
+    for (int i = 0; i < slotCount; i++) {
+      slots[i] = new EdiEventBuffer(512);
+    }
+    this.batchSegments = batchSegments;
+    this.slot = slots[0];
+
+    consumers = new ArrayList<Consumer>(handlers.length);
+    for (final EdiHandler handler : handlers) {
+      consumers.add(new Consumer(handler));
+    }
+    for (final Consumer consumer : consumers) {
+      executor.execute(consumer);
+    }
+  }
+
+  public void startSegment(String segmentIdentifier) throws EdiException {
+    slot.startSegment(segmentIdentifier);
+  }
+
+  public void endSegment() throws EdiException {
+    slot.endSegment();
+    if (++segments == batchSegments) {
+      publish();
+    }
+  }
+
+  public void startElement(String contents) throws EdiException {
+    slot.startElement(contents);
+  }
+
+  public void endElement() throws EdiException {
+    slot.endElement();
+  }
+
+  public void subElement(String contents) throws EdiException {
+    slot.subElement(contents);
+  }
+
+  public void startLoop(String segmentIdentifier) throws EdiException {
+    slot.startLoop(segmentIdentifier);
+  }
+
+  public void endLoop() throws EdiException {
+    slot.endLoop();
+  }
+
+  /**
+   * Publishes the remaining events, waits for every consumer to handle them, and throws the first
+   * exception a consumer threw, if any.
+   */
+  public void finish() throws EdiException {
+    if (!slot.isEmpty()) {
+      publish();
+    }
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+      for (final Consumer consumer : consumers) {
+        while (!consumer.done) {
+          await();
+        }
+      }
+    }
+    for (final Consumer consumer : consumers) {
+      if (consumer.failure != null) {
+        Throwables.propagateIfInstanceOf(consumer.failure, EdiException.class);
+        throw Throwables.propagate(consumer.failure);
+      }
+    }
+  }
+
+  /** Stops the consumers without delivering the events not yet handled. */
+  public void cancel() {
+    synchronized (lock) {
+      cancelled = true;
+      lock.notifyAll();
+    }
+  }
+
+  /** Makes the slot being filled visible to the consumers and moves to the next free one. */
+  private void publish() throws EdiException {
+    segments = 0;
+    synchronized (lock) {
+      published++;
+      lock.notifyAll();
+      // The next slot is free once every consumer is less than a full ring behind.
+      while (published - slowestConsumer() >= slots.length) {
+        if (cancelled) {
+          throw new EdiException("Cancelled");
+        }
+        await();
+      }
+    }
+    slot = slots[(int) (published % slots.length)];
+    slot.clear();
+  }
+
+  /** Returns the number of slots handled by the slowest consumer still running. */
+  private long slowestConsumer() {
+    long slowest = published;
+    for (final Consumer consumer : consumers) {
+      if (!consumer.done) {
+        slowest = Math.min(slowest, consumer.consumed);
+      }
+    }
+    return slowest;
+  }
+
+  /** Waits on the lock, which must be held, for a change in the sequences. */
+  private void await() throws EdiException {
+    try {
+      lock.wait();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EdiException("Interrupted waiting for a handler", e);
+    }
+  }
+
+  private class Consumer implements Runnable {
+
+    private final EdiHandler handler;
+    /** The number of slots handled; guarded by the lock. */
+    long consumed;
+    boolean done;
+    Throwable failure;
+
+    Consumer(EdiHandler handler) {
+      this.handler = handler;
+    }
+
+    public void run() {
+      try {
+        while (true) {
+          final EdiEventBuffer next;
+          synchronized (lock) {
+            while (consumed == published && !closed && !cancelled) {
+              lock.wait();
+            }
+            if (cancelled || consumed == published) {
+              return;
+            }
+            next = slots[(int) (consumed % slots.length)];
+          }
+          next.replay(handler);
+          synchronized (lock) {
+            consumed++;
+            lock.notifyAll();
+          }
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        fail(e);
+      } catch (final Throwable t) {
+        fail(t);
+      } finally {
+        synchronized (lock) {
+          done = true;
+          lock.notifyAll();
+        }
+      }
+    }
+
+    private void fail(Throwable t) {
+      synchronized (lock) {
+        failure = t;
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nests HL loops by their parent pointers. Each HL opens a loop inside the loop of the HL named
+ * by its HL02, closing the loops of any completed siblings and their descendants first; an HL
+ * without a parent closes every open HL loop. The loops still open end before the SE, so a 271's
+ * information sources, receivers, subscribers and dependents come out as a tree.
+ *
+ * <p>
+ * HLs arrive in the order of the tree, so only the IDs of the open loops, one per level, are kept,
+ * and a subtree is done with as soon as a sibling or an ancestor's sibling starts. The handler
+ * expects segments without HL loops, as parsed flat by {@link EdiXmlReader#HL_HIERARCHY_FEATURE};
+ * other loops are passed through.
+ */
+public class HlHierarchyHandler implements EdiHandler {
+
+  private static final String HL_LOOP = "HL";
+  private static final int HL_ID_ELEMENT = 1;
+  private static final int HL_PARENT_ELEMENT = 2;
+
+  private final EdiHandler delegate;
+  private final EdiEventBuffer pending = new EdiEventBuffer();
+  /** IDs of the open HL loops, outermost first. */
+  private final List<String> openIds = new ArrayList<String>();
+
+  private int elementIndex;
+  /** Whether the current segment is an HL being held back until its parent is known. */
+  private boolean placing;
+  private String id;
+
+  public HlHierarchyHandler(EdiHandler delegate) {
+    this.delegate = delegate;
+  }
+
+  public void startSegment(String segmentIdentifier) throws EdiException {
+    final int segmentCode = SegmentIdentifiers.code(segmentIdentifier);
+    elementIndex = 0;
+
+    if (segmentCode == SegmentIdentifiers.HL) {
+      placing = true;
+      id = null;
+      pending.startSegment(segmentIdentifier);
+      return;
+    }
+
+    if (segmentCode == SegmentIdentifiers.SE || segmentCode == SegmentIdentifiers.ST) {
+      endOpenLoops();
+    }
+    delegate.startSegment(segmentIdentifier);
+  }
+
+  public void endSegment() throws EdiException {
+    if (placing) {
+      // An HL without an HL02
+      place(null);
+    }
+
+    if (!pending.isEmpty()) {
+      pending.endSegment();
+      flush();
+    } else {
+      delegate.endSegment();
+    }
+  }
+
+  public void startElement(String contents) throws EdiException {
+    elementIndex++;
+    if (placing) {
+      pending.startElement(contents);
+      if (elementIndex == HL_ID_ELEMENT) {
+        id = contents;
+      } else if (elementIndex == HL_PARENT_ELEMENT) {
+        place(contents);
+      }
+      return;
+    }
+
+    delegate.startElement(contents);
+  }
+
+  public void endElement() throws EdiException {
+    if (!pending.isEmpty()) {
+      pending.endElement();
+    } else {
+      delegate.endElement();
+    }
+  }
+
+  public void subElement(String contents) throws EdiException {
+    if (!pending.isEmpty()) {
+      pending.subElement(contents);
+    } else {
+      delegate.subElement(contents);
+    }
+  }
+
+  public void startLoop(String segmentIdentifier) throws EdiException {
+    delegate.startLoop(segmentIdentifier);
+  }
+
+  public void endLoop() throws EdiException {
+    delegate.endLoop();
+  }
+
+  /** Returns the number of open HL loops. */
+  public int getDepth() {
+    return openIds.size();
+  }
+
+  /** Ends the HL loops still open, as when the input ends inside a transaction set. */
+  public void endOpenLoops() throws EdiException {
+    endLoops(openIds.size());
+  }
+
+  /** Closes the loops down to the HL named by {@code parentId}, then opens the current HL's. */
+  private void place(String parentId) throws EdiException {
+    placing = false;
+    if (parentId == null || parentId.length() == 0) {
+      endOpenLoops();
+    } else {
+      final int parent = openIds.lastIndexOf(parentId);
+      if (parent < 0) {
+        throw new EdiException("HL " + id + " names parent " + parentId
+            + ", which is not an open HL");
+      }
+      endLoops(openIds.size() - parent - 1);
+    }
+
+    delegate.startLoop(HL_LOOP);
+    openIds.add(id);
+    flush();
+  }
+
+  private void endLoops(int count) throws EdiException {
+    for (int i = 0; i < count; i++) {
+      delegate.endLoop();
+      openIds.remove(openIds.size() - 1);
+    }
+  }
+
+  private void flush() throws EdiException {
+    pending.replay(delegate);
+    pending.clear();
+  }
+}
@@ -22,7 +22,8 @@ public class HlLoopParser extends SegmentParser {
 
   @Override
   public boolean matches(Token token) {
-    return token != null && token.equals(HL_TOKEN);
+    return token != null && token.getType() == Token.Type.WORD
+        && token.getSegmentCode() == SegmentIdentifiers.HL;
   }
 
   @Override
@@ -38,8 +39,7 @@ public class HlLoopParser extends SegmentParser {
 
     // We're in an HL loop.
     Token token = tokenizer.nextToken();
-    final ElementListParser elementListParser = elementListParserFactory.create(location,
-        tokenizer, handler);
+    final ElementListParser elementListParser = elementListParser();
 
     // HL requires elements, so let the element list parser complain if the
 // parse fails.
@@ -54,7 +54,8 @@ public class HlLoopParser extends SegmentParser {
       throw new EdiException(new EOFException());
     }
 
-    while (token.getType() == Token.Type.WORD && token.getValue().equals("TRN")) {
+    while (token.getType() == Token.Type.WORD
+        && token.getSegmentCode() == SegmentIdentifiers.TRN) {
       // TRNs are informational segments; allow as many as you want.
       final SegmentParser segmentParser = segmentParserFactory.create(tokenizer, location, handler,
           token.getValue());
@@ -3,8 +3,6 @@ package com.sociodyne.edi.parser;
 
 import com.sociodyne.parser.Location;
 
-import javax.annotation.Nullable;
-
 import com.google.common.base.Objects;
 
 /**
@@ -16,14 +14,16 @@ import com.google.common.base.Objects;
  */
 public class ImmutableEdiLocation {
 
+  /** Value of {@link #getSubElement()} outside of a composite element. */
+  public static final int NO_SUB_ELEMENT = -1;
+
   private final Location location;
 
   protected String segment;
   protected int element;
-  @Nullable
-  protected Integer subElement;
+  protected int subElement;
 
-  public ImmutableEdiLocation(Location location, String segment, int element, Integer subElement) {
+  public ImmutableEdiLocation(Location location, String segment, int element, int subElement) {
     this.location = location;
     this.segment = segment;
     this.element = element;
@@ -31,7 +31,7 @@ public class ImmutableEdiLocation {
   }
 
   public ImmutableEdiLocation(String segment, int element) {
-    this(null, segment, element, null);
+    this(null, segment, element, NO_SUB_ELEMENT);
   }
 
   public ImmutableEdiLocation(String segment, int element, int subElement) {
@@ -46,8 +46,14 @@ public class ImmutableEdiLocation {
     return element;
   }
 
+  /** Returns the sub-element index, or {@link #NO_SUB_ELEMENT}. */
   public int getSubElement() {
-    return subElement == null ? -1 : subElement;
+    return subElement;
+  }
+
+  /** Returns the position in the input, or {@code null} if this location does not track one. */
+  public Location getLocation() {
+    return location;
   }
 
   @Override
@@ -64,7 +70,7 @@ public class ImmutableEdiLocation {
     if (o instanceof ImmutableEdiLocation) {
       final ImmutableEdiLocation that = (ImmutableEdiLocation) o;
       return Objects.equal(location, that.location) && Objects.equal(segment, that.segment)
-          && Objects.equal(element, that.element) && Objects.equal(subElement, that.subElement);
+          && element == that.element && subElement == that.subElement;
     }
 
     return false;
@@ -78,8 +84,13 @@ public class ImmutableEdiLocation {
     return new ImmutableEdiLocation(segment, element, subElement);
   }
 
+  /**
+   * Returns a snapshot of {@code location}. The position in the input, if any, is copied too, so
+   * its line and character are resolved at this point.
+   */
   public static ImmutableEdiLocation copyOf(ImmutableEdiLocation location) {
-    return new ImmutableEdiLocation(location.location, location.segment, location.element,
+    return new ImmutableEdiLocation(location.location == null ? null
+        : Location.copyOf(location.location), location.segment, location.element,
         location.subElement);
   }
 
@@ -93,8 +104,8 @@ public class ImmutableEdiLocation {
     if (element > 0) {
       locationBuffer.append(", element ").append(element);
     }
-    if (subElement != null) {
-      locationBuffer.append("subelement ").append(subElement);
+    if (subElement != NO_SUB_ELEMENT) {
+      locationBuffer.append(", subelement ").append(subElement);
     }
 
     return locationBuffer.toString();
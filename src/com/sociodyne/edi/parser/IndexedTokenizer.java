@@ -0,0 +1,70 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteBufferTokenizer} that tokenizes from a {@link StructuralIndex} of its input. The
+ * index is built in one pass when tokenizing starts, and again whenever the delimiters change;
+ * after that, words and segments are found by looking up the next delimiter instead of scanning
+ * the bytes again.
+ *
+ * <p>
+ * Until the sub-element separator is known, only one segment at a time is indexed, so the ISA of
+ * an input without a fixed-width ISA does not cost a pass over the whole input.
+ */
+public class IndexedTokenizer extends ByteBufferTokenizer {
+
+  private StructuralIndex index;
+
+  /** Tokenizes {@code input} from its position to its limit. */
+  public IndexedTokenizer(ByteBuffer input, Configuration config, Location location) {
+    super(input, config, location);
+  }
+
+  /**
+   * Returns the index from the current position, building it if necessary. Before the
+   * sub-element separator is known, it covers only the current segment.
+   */
+  public StructuralIndex getIndex() {
+    return index(window.position());
+  }
+
+  @Override
+  public void setDelimiters(CompiledConfiguration delimiters) {
+    super.setDelimiters(delimiters);
+    index = null;
+  }
+
+  @Override
+  protected int scanWord(int from) {
+    return index(from).nextDelimiter(from);
+  }
+
+  @Override
+  public boolean skipSegment() {
+    final int position = window.position();
+    final int end = index(position).nextSegmentTerminator(position);
+    if (end >= window.limit()) {
+      window.position(window.limit());
+      return false;
+    }
+    window.position(end + 1);
+    location.nextSegment();
+    return true;
+  }
+
+  /** Returns an index that covers {@code from}. */
+  private StructuralIndex index(int from) {
+    if (index == null || from < index.getStart()
+        || (from >= index.getEnd() && index.getEnd() < window.limit())) {
+      index = StructuralIndex.build(window, from, window.limit(), delimiters, !delimiters
+          .hasSubElementSeparator());
+    }
+    return index;
+  }
+}
@@ -0,0 +1,146 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed-width ISA segment, parsed by offset. The ISA is always {@value #LENGTH} characters long,
+ * so its delimiters can be read before anything is tokenized: the element separator is at offset
+ * 3, the sub-element separator (ISA16) at offset 104 and the segment terminator at offset 105.
+ *
+ * <p>
+ * Interchanges whose ISA is not padded to its fixed width are not recognized by
+ * {@link #parse(CharSequence)}; they are tokenized like any other segment instead.
+ */
+public final class IsaHeader {
+
+  /** Length of a fixed-width ISA segment, including its segment terminator. */
+  public static final int LENGTH = 106;
+
+  public static final String SEGMENT_IDENTIFIER = "ISA";
+
+  /** Widths of ISA01 through ISA16. */
+  private static final int[] ELEMENT_WIDTHS = { 2, 10, 2, 10, 2, 15, 2, 15, 6, 4, 1, 5, 9, 1, 1,
+      1 };
+
+  private static final int ELEMENT_SEPARATOR_OFFSET = 3;
+  private static final int SUB_ELEMENT_SEPARATOR_OFFSET = 104;
+  private static final int SEGMENT_TERMINATOR_OFFSET = 105;
+
+  /** ISA11 is the repetition separator from this interchange version on. */
+  private static final String REPETITION_SEPARATOR_VERSION = "00501";
+  private static final int REPETITION_SEPARATOR_ELEMENT = 11;
+  private static final int VERSION_ELEMENT = 12;
+
+  private final String[] elements;
+  private final char elementSeparator;
+  private final char subElementSeparator;
+  private final char segmentTerminator;
+
+  private IsaHeader(String[] elements, char elementSeparator, char subElementSeparator,
+      char segmentTerminator) {
+    this.elements = elements;
+    this.elementSeparator = elementSeparator;
+    this.subElementSeparator = subElementSeparator;
+    this.segmentTerminator = segmentTerminator;
+  }
+
+  /**
+   * Parses the first {@value #LENGTH} characters of {@code header}.
+   *
+   * @return the header, or {@code null} if {@code header} does not start with a fixed-width ISA
+   *         segment
+   */
+  @Nullable
+  public static IsaHeader parse(CharSequence header) {
+    if (header.length() < LENGTH || header.charAt(0) != 'I' || header.charAt(1) != 'S'
+        || header.charAt(2) != 'A') {
+      return null;
+    }
+
+    final char elementSeparator = header.charAt(ELEMENT_SEPARATOR_OFFSET);
+    final char subElementSeparator = header.charAt(SUB_ELEMENT_SEPARATOR_OFFSET);
+    final char segmentTerminator = header.charAt(SEGMENT_TERMINATOR_OFFSET);
+    if (Character.isLetterOrDigit(elementSeparator) || elementSeparator == segmentTerminator
+        || Character.isLetterOrDigit(segmentTerminator)) {
+      return null;
+    }
+
+    final String[] elements = new String[ELEMENT_WIDTHS.length];
+    int offset = ELEMENT_SEPARATOR_OFFSET + 1;
+    for (int i = 0; i < ELEMENT_WIDTHS.length; i++) {
+      final int end = offset + ELEMENT_WIDTHS[i];
+      for (int j = offset; j < end; j++) {
+        final char ch = header.charAt(j);
+        if (ch == elementSeparator || ch == segmentTerminator) {
+          // Not padded to the fixed width.
+          return null;
+        }
+      }
+      final char expectedSeparator = i < ELEMENT_WIDTHS.length - 1 ? elementSeparator
+          : segmentTerminator;
+      if (header.charAt(end) != expectedSeparator) {
+        return null;
+      }
+
+      elements[i] = header.subSequence(offset, end).toString();
+      offset = end + 1;
+    }
+
+    return new IsaHeader(elements, elementSeparator, subElementSeparator, segmentTerminator);
+  }
+
+  /** Returns ISA{@code index}, where {@code index} is between 1 and 16. */
+  public String getElement(int index) {
+    Preconditions.checkElementIndex(index - 1, elements.length);
+    return elements[index - 1];
+  }
+
+  public char getElementSeparator() {
+    return elementSeparator;
+  }
+
+  public char getSubElementSeparator() {
+    return subElementSeparator;
+  }
+
+  public char getSegmentTerminator() {
+    return segmentTerminator;
+  }
+
+  /** Returns whether ISA11 is a repetition separator rather than a standards identifier. */
+  public boolean hasRepetitionSeparator() {
+    final char isa11 = getElement(REPETITION_SEPARATOR_ELEMENT).charAt(0);
+    return getElement(VERSION_ELEMENT).compareTo(REPETITION_SEPARATOR_VERSION) >= 0
+        && !Character.isLetterOrDigit(isa11);
+  }
+
+  /** Returns a complete configuration for the interchange this header starts. */
+  public Configuration toConfiguration() {
+    final Configuration.Builder builder = Configuration.builder()
+        .setSegmentTerminator(segmentTerminator).setElementSeparator(elementSeparator)
+        .setSubElementSeparator(subElementSeparator);
+    if (hasRepetitionSeparator()) {
+      builder.setRepetitionSeparator(getElement(REPETITION_SEPARATOR_ELEMENT).charAt(0));
+    }
+    return builder.build();
+  }
+
+  /** Reports the ISA segment to {@code handler}, tracking it in {@code location}. */
+  public void emit(EdiLocation location, EdiHandler handler) throws EdiException {
+    location.startSegment(SEGMENT_IDENTIFIER);
+    handler.startSegment(SEGMENT_IDENTIFIER);
+    for (final String element : elements) {
+      location.nextElement();
+      handler.startElement(element);
+      handler.endElement();
+    }
+    location.endSegment();
+    handler.endSegment();
+  }
+}
@@ -5,6 +5,7 @@ import com.sociodyne.edi.EdiException;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Set;
 
 import com.google.inject.Inject;
@@ -13,12 +14,20 @@ import com.google.inject.assistedinject.Assisted;
 public class LoopParser extends SegmentParser {
 
   private final SegmentParserFactory segmentParserFactory;
-  private final Set<String> nonTerminalSegments;
+  /** {@link SegmentIdentifiers} codes of the segments that may appear inside the loop. */
+  private final BitSet nonTerminalSegments;
 
   @Inject
   LoopParser(@Assisted Tokenizer tokenizer, @Assisted EdiLocation location,
       @Assisted EdiHandler handler, ParserFactory<ElementListParser> elementListParserFactory,
       SegmentParserFactory segmentParserFactory, Set<String> nonTerminalSegments) {
+    this(tokenizer, location, handler, elementListParserFactory, segmentParserFactory,
+        SegmentIdentifiers.codes(nonTerminalSegments));
+  }
+
+  LoopParser(Tokenizer tokenizer, EdiLocation location, EdiHandler handler,
+      ParserFactory<ElementListParser> elementListParserFactory,
+      SegmentParserFactory segmentParserFactory, BitSet nonTerminalSegments) {
     super(tokenizer, location, handler, elementListParserFactory);
     this.segmentParserFactory = segmentParserFactory;
     this.nonTerminalSegments = nonTerminalSegments;
@@ -36,11 +45,11 @@ public class LoopParser extends SegmentParser {
     }
 
     final String loopSegment = startToken.getValue();
+    final int loopCode = startToken.getSegmentCode();
     handler.startLoop(loopSegment);
     location.startSegment(loopSegment);
     handler.startSegment(loopSegment);
-    final ElementListParser elementListParser = elementListParserFactory.create(location,
-        tokenizer, handler);
+    final ElementListParser elementListParser = elementListParser();
     Token token;
     boolean isNonTerminal = true;
     PARSE_LOOP:
@@ -58,12 +67,12 @@ public class LoopParser extends SegmentParser {
           }
 
           if (token.getType() == Token.Type.WORD) {
-            token = parseChildSegments(loopSegment, token);
+            token = parseChildSegments(loopCode, token);
             if (token == null) {
               throw new EdiException(new EOFException());
             }
             if (token.getType() == Token.Type.WORD) {
-              if (token.getValue().equals(loopSegment)) {
+              if (token.getSegmentCode() == loopCode) {
                 // Another instance of the loop; close the last segment and open
                 // a new one.
                 handler.endSegment();
@@ -91,13 +100,13 @@ public class LoopParser extends SegmentParser {
     return token;
   }
 
-  private Token parseChildSegments(String loopIdentifier, Token token) throws EdiException,
+  private Token parseChildSegments(int loopCode, Token token) throws EdiException,
       IOException, UnexpectedTokenException {
     while (token != null) {
       // It's a segment identifier. Make sure it's part of the segment grammar.
+      final int code = token.getSegmentCode();
       if (token.getType() == Token.Type.WORD
-          && (token.getValue().equals(loopIdentifier) || !nonTerminalSegments.contains(token
-              .getValue()))) {
+          && (code == loopCode || !nonTerminalSegments.get(code))) {
         // This is either another instance of the loop we're parsing, or
         // Close the loop, start another instance, then continue.
         break;
@@ -22,7 +22,7 @@ public class LsLoopParser extends SegmentParser {
 
   @Override
   public boolean matches(Token token) {
-    return token.equals(LS_TOKEN);
+    return token.getType() == Token.Type.WORD && token.getSegmentCode() == SegmentIdentifiers.LS;
   }
 
   @Override
@@ -37,8 +37,7 @@ public class LsLoopParser extends SegmentParser {
     handler.startSegment(loopSegment);
 
     Token token = tokenizer.nextToken();
-    final ElementListParser elementListParser = elementListParserFactory.create(location,
-        tokenizer, handler);
+    final ElementListParser elementListParser = elementListParser();
 
     // LS requires elements, so let the element list parser complain if the
 // parse fails.
@@ -47,7 +46,7 @@ public class LsLoopParser extends SegmentParser {
       throw new UnexpectedTokenException(token, Token.Type.SEGMENT_TERMINATOR);
     }
 
-    String segmentIdentifier;
+    int segmentCode;
     token = tokenizer.nextToken();
     do {
       if (token == null) {
@@ -56,7 +55,7 @@ public class LsLoopParser extends SegmentParser {
       if (token.getType() != Token.Type.WORD) {
         throw new UnexpectedTokenException(token, Token.Type.WORD);
       }
-      segmentIdentifier = token.getValue();
+      segmentCode = token.getSegmentCode();
       final SegmentParser segmentParser = segmentParserFactory.create(tokenizer, location, handler,
           token.getValue());
       token = segmentParser.parse(token);
@@ -66,7 +65,7 @@ public class LsLoopParser extends SegmentParser {
         throw new UnexpectedTokenException(token, Token.Type.WORD);
       }
       // Include the LE segment inside the LS loop.
-    } while (!segmentIdentifier.equals("LE"));
+    } while (segmentCode != SegmentIdentifiers.LE);
 
     handler.endSegment();
     handler.endLoop();
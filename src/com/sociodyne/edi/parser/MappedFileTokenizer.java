@@ -0,0 +1,67 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A {@link ByteBufferTokenizer} that memory-maps a file one window at a time, so the file is
+ * tokenized straight from the page cache without being copied onto the heap. Words that straddle
+ * two windows are handled by {@link ByteBufferTokenizer}'s carry buffer.
+ * 
+ * <p>
+ * The tokenizer does not close the channel.
+ */
+public class MappedFileTokenizer extends ByteBufferTokenizer {
+
+  /** Default size of each mapped window: 64 MiB. */
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final int windowSize;
+  private final long end;
+  /** File offset of the start of the next window. */
+  private long offset;
+
+  public MappedFileTokenizer(FileChannel channel, Configuration config, Location location)
+      throws IOException {
+    this(channel, config, location, DEFAULT_WINDOW_SIZE);
+  }
+
+  public MappedFileTokenizer(FileChannel channel, Configuration config, Location location,
+      int windowSize) throws IOException {
+    this(channel, 0, channel.size(), config, location, windowSize);
+  }
+
+  /**
+   * Tokenizes the bytes of {@code channel} in the range [{@code start}, {@code end}). Offsets are
+   * reported as file offsets; lines are counted from {@code start}.
+   */
+  public MappedFileTokenizer(FileChannel channel, long start, long end, Configuration config,
+      Location location, int windowSize) {
+    super(config, location, start);
+    Preconditions.checkArgument(windowSize > 0, "Window size must be positive");
+    Preconditions.checkArgument(start >= 0 && start <= end, "Invalid range [%s, %s)", start, end);
+    this.channel = channel;
+    this.windowSize = windowSize;
+    this.offset = start;
+    this.end = end;
+  }
+
+  @Override
+  protected boolean nextWindow() throws IOException {
+    if (offset >= end) {
+      return false;
+    }
+
+    final long size = Math.min(windowSize, end - offset);
+    window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    offset += size;
+    return true;
+  }
+}
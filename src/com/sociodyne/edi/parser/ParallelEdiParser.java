@@ -0,0 +1,190 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+
+/**
+ * Parses the transaction sets of a single-byte input in parallel. The input is first split at its
+ * envelope boundaries (ISA, GS, ST and SE) by an {@link EnvelopeSplitter}, which tokenizes only
+ * segment identifiers. Each ST through SE transaction set is then parsed on the
+ * {@link ExecutorService} into an {@link EdiEventBuffer}, while the envelope segments between
+ * them are parsed on the calling thread. Events reach the handler on the calling thread in the
+ * order of the input, exactly as a sequential parse would report them.
+ *
+ * <p>
+ * At most a fixed number of transaction sets are parsed ahead of the one being delivered, which
+ * bounds the memory held in buffered events. Parsers may be shared; each call to {@code parse}
+ * is independent.
+ */
+public class ParallelEdiParser {
+
+  private final ExecutorService executor;
+  private final int maxPending;
+  private final ParserFactory<SegmentListParser> segmentListParserFactory;
+  private final ParserFactory<SegmentParser> segmentParserFactory;
+
+  /** Creates a parser that keeps two transaction sets per processor in flight. */
+  public ParallelEdiParser(ExecutorService executor) {
+    this(executor, 2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a parser that parses on {@code executor}, with at most {@code maxPending} transaction
+   * sets parsed or queued ahead of the one being delivered. The executor is not shut down.
+   */
+  public ParallelEdiParser(ExecutorService executor, int maxPending) {
+    Preconditions.checkArgument(maxPending > 0, "maxPending must be positive");
+    this.executor = executor;
+    this.maxPending = maxPending;
+    this.segmentListParserFactory = ParserFactories.segmentListParsers();
+    this.segmentParserFactory = ParserFactories.segmentParsers();
+  }
+
+  /** Parses {@code input} from its position to its limit. */
+  public void parse(final ByteBuffer input, EdiHandler handler) throws EdiException,
+      IOException {
+    final int base = input.position();
+    parse(new Source() {
+      @Override
+      Tokenizer tokenizer(long start, long end, Configuration configuration,
+          Location fileLocation) {
+        final ByteBuffer part = input.duplicate();
+        part.limit(base + (int) end).position(base + (int) start);
+        return new ByteBufferTokenizer(part, start, configuration, fileLocation);
+      }
+    }, input.remaining(), handler);
+  }
+
+  /** Parses a file, memory-mapping each part as it is parsed. */
+  public void parse(File file, EdiHandler handler) throws EdiException, IOException {
+    final FileInputStream is = new FileInputStream(file);
+    try {
+      final FileChannel channel = is.getChannel();
+      parse(new Source() {
+        @Override
+        Tokenizer tokenizer(long start, long end, Configuration configuration,
+            Location fileLocation) {
+          return new MappedFileTokenizer(channel, start, end, configuration, fileLocation,
+              MappedFileTokenizer.DEFAULT_WINDOW_SIZE);
+        }
+      }, channel.size(), handler);
+    } finally {
+      Closeables.closeQuietly(is);
+    }
+  }
+
+  /** Supplies tokenizers over byte ranges of the input. */
+  private abstract static class Source {
+    abstract Tokenizer tokenizer(long start, long end, Configuration configuration,
+        Location fileLocation) throws IOException;
+  }
+
+  private void parse(final Source source, long size, EdiHandler handler) throws EdiException,
+      IOException {
+    final Location scanLocation = new Location();
+    final List<EnvelopeSplitter.Part> parts = new EnvelopeSplitter(source.tokenizer(0, size,
+        newConfiguration(), scanLocation), newConfiguration(), scanLocation).split();
+
+    final List<Future<EdiEventBuffer>> futures = new ArrayList<Future<EdiEventBuffer>>(
+        parts.size());
+    int submitted = 0;
+    int pending = 0;
+    try {
+      for (int i = 0; i < parts.size(); i++) {
+        while (submitted < parts.size() && pending < maxPending) {
+          final EnvelopeSplitter.Part part = parts.get(submitted++);
+          if (part.transactionSet) {
+            futures.add(executor.submit(new Callable<EdiEventBuffer>() {
+              public EdiEventBuffer call() throws Exception {
+                final EdiEventBuffer events = new EdiEventBuffer();
+                parsePart(source, part, events);
+                return events;
+              }
+            }));
+            pending++;
+          } else {
+            futures.add(null);
+          }
+        }
+
+        final Future<EdiEventBuffer> future = futures.get(i);
+        if (future == null) {
+          parsePart(source, parts.get(i), handler);
+        } else {
+          futures.set(i, null);
+          pending--;
+          get(future).replay(handler);
+        }
+      }
+    } finally {
+      for (final Future<EdiEventBuffer> future : futures) {
+        if (future != null) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  private void parsePart(Source source, EnvelopeSplitter.Part part, EdiHandler handler)
+      throws EdiException, IOException {
+    final Configuration configuration = part.startsInterchange() ? newConfiguration()
+        : part.configuration;
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = source.tokenizer(part.start, part.end, configuration,
+        fileLocation);
+    final EdiLocation location = new EdiLocation(fileLocation, IsaHeader.SEGMENT_IDENTIFIER, 0);
+    try {
+      if (part.startsInterchange()
+          && !EdiXmlReader.parseIsa(tokenizer, configuration, location, handler,
+              segmentParserFactory)) {
+        return;
+      }
+      final Token token = tokenizer.nextToken();
+      if (token != null) {
+        segmentListParserFactory.create(location, tokenizer, handler).parse(token);
+      }
+    } catch (final UnexpectedTokenException e) {
+      e.setLocation(ImmutableEdiLocation.copyOf(location));
+      throw e;
+    }
+  }
+
+  private static EdiEventBuffer get(Future<EdiEventBuffer> future) throws EdiException,
+      IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a transaction set");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      Throwables.propagateIfInstanceOf(cause, EdiException.class);
+      Throwables.propagateIfInstanceOf(cause, IOException.class);
+      throw Throwables.propagate(cause);
+    }
+  }
+
+  private static Configuration newConfiguration() {
+    return new Configuration.Builder().setSegmentTerminator('~').setElementSeparator('*')
+        .build();
+  }
+}
@@ -0,0 +1,67 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import javax.annotation.Nullable;
+
+/**
+ * An error found in the input without stopping the parse: a malformed segment that a recovering
+ * parse dropped before resuming after its terminator, or an envelope that failed validation.
+ *
+ * @see EdiXmlReader#RECOVER_FEATURE
+ * @see EnvelopeValidatingHandler
+ */
+public final class ParseError {
+
+  private final ImmutableEdiLocation location;
+  private final int segmentOrdinal;
+  private final String expected;
+  private final String found;
+  private final String message;
+
+  public ParseError(ImmutableEdiLocation location, int segmentOrdinal, @Nullable String expected,
+      @Nullable String found, String message) {
+    this.location = location;
+    this.segmentOrdinal = segmentOrdinal;
+    this.expected = expected;
+    this.found = found;
+    this.message = message;
+  }
+
+  /** Returns a snapshot of where the error was found. */
+  public ImmutableEdiLocation getLocation() {
+    return location;
+  }
+
+  /** Returns the offset in the input just after the token in error, or -1 if it is unknown. */
+  public long getOffset() {
+    return location.getLocation() == null ? -1 : location.getLocation().getOffset();
+  }
+
+  /** Returns the ordinal of the segment in error, counting the ISA as 1. */
+  public int getSegmentOrdinal() {
+    return segmentOrdinal;
+  }
+
+  /** Returns what was expected, or {@code null} if the error is not about a token. */
+  @Nullable
+  public String getExpected() {
+    return expected;
+  }
+
+  /** Returns the token that was found, or {@code null} if the error is not about a token. */
+  @Nullable
+  public String getFound() {
+    return found;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    final long offset = getOffset();
+    return "segment #" + segmentOrdinal + (offset < 0 ? "" : ", offset " + offset) + ": "
+        + message;
+  }
+}
@@ -0,0 +1,50 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+/**
+ * The parsers for one document. A session holds one parser of each kind, created on first use
+ * and shared by every segment of that kind; each of those holds its own element and sub-element
+ * list parsers. Parsers keep their per-segment state in locals, so a shared parser is safe to
+ * re-enter for nested loops, and once every kind has been seen, parsing allocates no parsers.
+ *
+ * <p>
+ * Loop parsers look up their child parsers through the session, which is why it is a
+ * {@link SegmentParserFactory}. A session is bound to its tokenizer, location and handler; asked
+ * for a parser over anything else, it creates a new one.
+ */
+public final class ParseSession extends SegmentParserFactory {
+
+  private final Tokenizer tokenizer;
+  private final EdiLocation location;
+  private final EdiHandler handler;
+  private final SegmentParser[] parsers;
+
+  ParseSession(Tokenizer tokenizer, EdiLocation location, EdiHandler handler,
+      ParserFactory<ElementListParser> elementListParserFactory) {
+    super(elementListParserFactory);
+    this.tokenizer = tokenizer;
+    this.location = location;
+    this.handler = handler;
+    parsers = new SegmentParser[kindCount()];
+  }
+
+  @Override
+  public SegmentParser create(Tokenizer tokenizer, EdiLocation location, EdiHandler handler,
+      String segmentIdentifier) {
+    if (tokenizer != this.tokenizer || location != this.location || handler != this.handler) {
+      return super.create(tokenizer, location, handler, segmentIdentifier);
+    }
+    return parserFor(SegmentIdentifiers.code(segmentIdentifier));
+  }
+
+  /** Returns the session's parser for the segment whose identifier has {@code code}. */
+  public SegmentParser parserFor(int code) {
+    final int kind = kind(code);
+    SegmentParser parser = parsers[kind];
+    if (parser == null) {
+      parser = newParser(kind, tokenizer, location, handler);
+      parsers[kind] = parser;
+    }
+    return parser;
+  }
+}
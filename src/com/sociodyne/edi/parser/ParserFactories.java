@@ -0,0 +1,74 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+/**
+ * Plain-Java {@link ParserFactory} implementations, wired to each other directly. Parsers are
+ * created by ordinary constructor calls instead of through Guice's assisted-inject proxies, so
+ * none of Guice's reflective dispatch remains on the parsing path. {@link ParserModule} binds
+ * these same instances for code that still builds parsers with an injector.
+ *
+ * <p>
+ * The factories are stateless and may be shared between threads.
+ */
+public final class ParserFactories {
+
+  private static final ParserFactory<SubElementListParser> SUB_ELEMENT_LIST_PARSERS =
+      new ParserFactory<SubElementListParser>() {
+        public SubElementListParser create(EdiLocation location, Tokenizer tokenizer,
+            EdiHandler handler) {
+          return new SubElementListParser(tokenizer, location, handler);
+        }
+      };
+
+  private static final ParserFactory<ElementListParser> ELEMENT_LIST_PARSERS =
+      new ParserFactory<ElementListParser>() {
+        public ElementListParser create(EdiLocation location, Tokenizer tokenizer,
+            EdiHandler handler) {
+          return new ElementListParser(tokenizer, location, handler, SUB_ELEMENT_LIST_PARSERS);
+        }
+      };
+
+  private static final ParserFactory<SegmentParser> SEGMENT_PARSERS =
+      new ParserFactory<SegmentParser>() {
+        public SegmentParser create(EdiLocation location, Tokenizer tokenizer,
+            EdiHandler handler) {
+          return new SegmentParser(tokenizer, location, handler, ELEMENT_LIST_PARSERS);
+        }
+      };
+
+  private static final SegmentParserFactory SEGMENT_PARSER_FACTORY = new SegmentParserFactory(
+      ELEMENT_LIST_PARSERS);
+
+  private static final ParserFactory<SegmentListParser> SEGMENT_LIST_PARSERS =
+      new ParserFactory<SegmentListParser>() {
+        public SegmentListParser create(EdiLocation location, Tokenizer tokenizer,
+            EdiHandler handler) {
+          return new SegmentListParser(tokenizer, location, handler, SEGMENT_PARSER_FACTORY);
+        }
+      };
+
+  private ParserFactories() {
+  }
+
+  public static ParserFactory<SubElementListParser> subElementListParsers() {
+    return SUB_ELEMENT_LIST_PARSERS;
+  }
+
+  public static ParserFactory<ElementListParser> elementListParsers() {
+    return ELEMENT_LIST_PARSERS;
+  }
+
+  /** Returns a factory for plain {@link SegmentParser SegmentParsers}, which open no loops. */
+  public static ParserFactory<SegmentParser> segmentParsers() {
+    return SEGMENT_PARSERS;
+  }
+
+  /** Returns the factory that picks a loop or plain parser by segment identifier. */
+  public static SegmentParserFactory segmentParserFactory() {
+    return SEGMENT_PARSER_FACTORY;
+  }
+
+  public static ParserFactory<SegmentListParser> segmentListParsers() {
+    return SEGMENT_LIST_PARSERS;
+  }
+}
@@ -3,25 +3,24 @@ package com.sociodyne.edi.parser;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.TypeLiteral;
-import com.google.inject.assistedinject.FactoryModuleBuilder;
 
+/**
+ * Binds the parser factories for injection. The bindings are the plain-Java factories from
+ * {@link ParserFactories}, so injected parsers are created without assisted-inject proxies.
+ */
 public class ParserModule extends AbstractModule {
 
   @Override
   protected void configure() {
-    bind(SegmentParserFactory.class);
-
-    // This is only used by SegmentParserFactory
-    install(new FactoryModuleBuilder().build(new TypeLiteral<ParserFactory<SegmentParser>>() {
-    }));
-    install(new FactoryModuleBuilder().build(new TypeLiteral<ParserFactory<ElementListParser>>() {
-    }));
-    install(new FactoryModuleBuilder()
-        .build(new TypeLiteral<ParserFactory<SubElementListParser>>() {
-        }));
-    install(new FactoryModuleBuilder().build(new TypeLiteral<ParserFactory<SegmentListParser>>() {
-    }));
-    bind(SegmentParserFactory.class);
+    bind(SegmentParserFactory.class).toInstance(ParserFactories.segmentParserFactory());
+    bind(new TypeLiteral<ParserFactory<SegmentParser>>() {
+    }).toInstance(ParserFactories.segmentParsers());
+    bind(new TypeLiteral<ParserFactory<ElementListParser>>() {
+    }).toInstance(ParserFactories.elementListParsers());
+    bind(new TypeLiteral<ParserFactory<SubElementListParser>>() {
+    }).toInstance(ParserFactories.subElementListParsers());
+    bind(new TypeLiteral<ParserFactory<SegmentListParser>>() {
+    }).toInstance(ParserFactories.segmentListParsers());
   }
 
 }
@@ -0,0 +1,13 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+/**
+ * An {@link EdiHandler} that wants only some segments and elements. Parsers that report to it
+ * skip everything outside its {@link SegmentProjection}, so it never sees those segments' events.
+ * Segments that open loops are always reported, since they give the loops their structure.
+ */
+public interface ProjectedEdiHandler extends EdiHandler {
+
+  /** Returns the segments and elements to report. Called once, when a parser is created. */
+  SegmentProjection getProjection();
+}
@@ -0,0 +1,361 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A push-mode parser for single-byte (ASCII or ISO-8859-1) EDI input. Rather than pulling from a
+ * blocking {@link java.io.Reader}, it is handed input as it arrives through
+ * {@link #feed(ByteBuffer)}, and reports each segment, element and sub-element to its
+ * {@link EdiHandler} as soon as the delimiter that completes it has been fed. A word cut off by
+ * the end of a chunk is carried over to the next chunk. A single thread, such as an NIO event
+ * loop, can therefore parse many concurrent streams with one parser per stream.
+ *
+ * <p>
+ * The first {@value IsaHeader#LENGTH} bytes are held back until a fixed-width ISA segment can be
+ * recognized, which assigns the interchange's separators. If the ISA is not padded to its fixed
+ * width, it is tokenized with the separators of the {@link Configuration}, and the sub-element
+ * separator is taken from ISA16 as in {@link EdiXmlReader}.
+ *
+ * <p>
+ * Loops are not reported: recognizing them needs the look-ahead of the pull parsers. Instances are
+ * not thread-safe, and must not be fed again after throwing.
+ */
+public class PushEdiParser implements Location.Resolver {
+
+  private enum State {
+    /** Expecting a segment identifier. */
+    SEGMENT_START,
+    /** After a segment identifier. */
+    SEGMENT_IDENTIFIER,
+    /** After an element separator. */
+    ELEMENT_START,
+    /** After the first (or only) component of an element. */
+    ELEMENT_END,
+    /** After a sub-element separator. */
+    SUB_ELEMENT_START,
+    /** After a sub-element. */
+    SUB_ELEMENT_END
+  }
+
+  private final Configuration configuration;
+  private final EdiHandler handler;
+  private final Location fileLocation = new Location();
+  private final EdiLocation location;
+
+  private CompiledConfiguration delimiters;
+  private DelimiterScanner scanner;
+  /** Receives segment events; an {@link IsaEdiHandler} while a tokenized ISA is parsed. */
+  private EdiHandler segmentHandler;
+  private State state = State.SEGMENT_START;
+  private boolean finished;
+
+  /** Collects the start of the input until the ISA can be recognized; {@code null} after that. */
+  private ByteBuffer header = ByteBuffer.allocate(IsaHeader.LENGTH);
+  /** Holds a word cut off at the end of a chunk. */
+  private ByteBuffer carry = ByteBuffer.allocate(256);
+  private final ByteSlice slice = new ByteSlice();
+
+  /** The chunk being parsed, or {@code null} between calls. */
+  private ByteBuffer chunk;
+  /** Index in {@link #chunk} of the first byte not yet counted. */
+  private int chunkStart;
+  /** Offset in the input of {@code chunk[chunkStart]}. */
+  private long chunkOffset;
+  /** Number of newlines in the counted bytes. */
+  private int linesBeforeChunk;
+  /** Offset of the byte after the last newline in the counted bytes. */
+  private long lineStartBeforeChunk;
+
+  /**
+   * Creates a parser that reports to {@code handler}. {@code configuration} supplies the
+   * separators of an ISA that is not padded to its fixed width; its sub-element separator is
+   * assigned from ISA16.
+   */
+  public PushEdiParser(Configuration configuration, EdiHandler handler) {
+    this.configuration = configuration;
+    this.handler = handler;
+    this.segmentHandler = handler;
+    this.location = new EdiLocation(fileLocation, IsaHeader.SEGMENT_IDENTIFIER, 0);
+    fileLocation.setResolver(this);
+    setDelimiters(configuration.compile());
+  }
+
+  /** Returns a snapshot of the current location. */
+  public ImmutableEdiLocation getLocation() {
+    return ImmutableEdiLocation.copyOf(location);
+  }
+
+  /**
+   * Parses the remaining bytes of {@code input}, reporting every token they complete. On return,
+   * {@code input} has been consumed; a trailing partial word has been copied.
+   */
+  public void feed(ByteBuffer input) throws EdiException {
+    Preconditions.checkState(!finished, "The parser has been finished");
+    if (header != null) {
+      final ByteBuffer part = input.duplicate();
+      part.limit(part.position() + Math.min(header.remaining(), part.remaining()));
+      header.put(part);
+      input.position(part.position());
+      if (header.hasRemaining()) {
+        return;
+      }
+      readHeader();
+    }
+
+    parse(input);
+  }
+
+  /** Signals the end of the input, reporting the last word if it was not terminated. */
+  public void finish() throws EdiException {
+    Preconditions.checkState(!finished, "The parser has been finished");
+    if (header != null) {
+      readHeader();
+    }
+    finished = true;
+
+    if (carry.position() > 0) {
+      completeWord();
+    }
+    if (state != State.SEGMENT_START) {
+      throw new EdiException("Unexpected EOF in segment " + location.getSegment(),
+          new EOFException());
+    }
+  }
+
+  public long getOffset() {
+    return chunk == null ? chunkOffset : chunkOffset + chunk.position() - chunkStart;
+  }
+
+  public void resolve(Location location) {
+    int lines = linesBeforeChunk;
+    long lineStart = lineStartBeforeChunk;
+    if (chunk != null) {
+      final int end = chunk.position();
+      int index = chunkStart;
+      while ((index = DelimiterScanner.NEWLINE.indexOf(chunk, index, end)) < end) {
+        index++;
+        lines++;
+        lineStart = chunkOffset + index - chunkStart;
+      }
+    }
+    location.setLineAndChar(lines, (int) (getOffset() - lineStart));
+  }
+
+  private void setDelimiters(CompiledConfiguration delimiters) {
+    Preconditions.checkArgument(delimiters.getSegmentTerminator() < 0x100
+        && delimiters.getElementSeparator() < 0x100, "Delimiters must be single-byte characters");
+    this.delimiters = delimiters;
+    this.scanner = DelimiterScanner.forWordTerminals(delimiters);
+  }
+
+  /** Recognizes a fixed-width ISA in the held-back bytes, or else parses them as they are. */
+  private void readHeader() throws EdiException {
+    final ByteBuffer buffered = (ByteBuffer) header.flip();
+    header = null;
+
+    final IsaHeader isaHeader = IsaHeader.parse(new ByteSlice(buffered, 0, buffered.limit()));
+    if (isaHeader == null) {
+      segmentHandler = new IsaEdiHandler(configuration, handler);
+      parse(buffered);
+      return;
+    }
+
+    setDelimiters(isaHeader.toConfiguration().compile());
+    startChunk(buffered);
+    try {
+      buffered.position(buffered.limit());
+      fileLocation.nextSegment();
+      isaHeader.emit(location, handler);
+    } finally {
+      endChunk();
+    }
+  }
+
+  private void parse(ByteBuffer input) throws EdiException {
+    startChunk(input);
+    try {
+      scan(input);
+    } catch (final UnexpectedTokenException e) {
+      e.setLocation(ImmutableEdiLocation.copyOf(location));
+      throw e;
+    } finally {
+      endChunk();
+    }
+  }
+
+  private void startChunk(ByteBuffer input) {
+    chunk = input;
+    chunkStart = input.position();
+  }
+
+  /** Counts the newlines in the parsed part of the chunk, which is then forgotten. */
+  private void endChunk() {
+    final int end = chunk.position();
+    int index = chunkStart;
+    while ((index = DelimiterScanner.NEWLINE.indexOf(chunk, index, end)) < end) {
+      index++;
+      linesBeforeChunk++;
+      lineStartBeforeChunk = chunkOffset + index - chunkStart;
+    }
+    chunkOffset += end - chunkStart;
+    chunk = null;
+  }
+
+  private void scan(ByteBuffer input) throws EdiException {
+    final int limit = input.limit();
+    int position = input.position();
+    while (position < limit) {
+      final int b = input.get(position) & 0xff;
+      if (delimiters.isWordTerminal(b)) {
+        if (carry.position() > 0) {
+          completeWord();
+        }
+        input.position(++position);
+        delimiter(delimiters.classOf(b));
+        continue;
+      }
+
+      // The delimiters may have changed at the end of the ISA, so the scanner is read each time.
+      final int end = scanner.indexOf(input, position, limit);
+      if (end == limit || carry.position() > 0) {
+        appendToCarry(input, position, end);
+      } else {
+        input.position(end);
+        slice.reset(input, position, end - position);
+        word(SegmentIdentifiers.intern(slice));
+      }
+      position = end;
+      input.position(position);
+    }
+  }
+
+  private void appendToCarry(ByteBuffer input, int from, int to) {
+    final int length = to - from;
+    if (carry.remaining() < length) {
+      final ByteBuffer grown = ByteBuffer.allocate(Math.max(carry.capacity() * 2, carry.position()
+          + length));
+      carry.flip();
+      grown.put(carry);
+      carry = grown;
+    }
+
+    final ByteBuffer source = input.duplicate();
+    source.limit(to).position(from);
+    carry.put(source);
+  }
+
+  private void completeWord() throws EdiException {
+    slice.reset(carry, 0, carry.position());
+    final String contents = SegmentIdentifiers.intern(slice);
+    carry.clear();
+    word(contents);
+  }
+
+  private void word(String contents) throws EdiException {
+    switch (state) {
+    case SEGMENT_START:
+      location.startSegment(contents);
+      segmentHandler.startSegment(contents);
+      state = State.SEGMENT_IDENTIFIER;
+      break;
+    case ELEMENT_START:
+      location.nextElement();
+      segmentHandler.startElement(contents);
+      state = State.ELEMENT_END;
+      break;
+    case SUB_ELEMENT_START:
+      location.nextSubElement();
+      segmentHandler.subElement(contents);
+      state = State.SUB_ELEMENT_END;
+      break;
+    default:
+      // A word always ends at a delimiter, so two words cannot be adjacent.
+      throw new IllegalStateException("Unexpected word in state " + state);
+    }
+  }
+
+  private void delimiter(byte characterClass) throws EdiException {
+    if (characterClass == CompiledConfiguration.SEGMENT) {
+      fileLocation.nextSegment();
+    }
+
+    switch (state) {
+    case SEGMENT_START:
+      throw new UnexpectedTokenException(tokenOf(characterClass), Token.Type.WORD);
+    case SEGMENT_IDENTIFIER:
+      if (characterClass != CompiledConfiguration.ELEMENT) {
+        throw new UnexpectedTokenException(tokenOf(characterClass), Token.ELEMENT_SEPARATOR);
+      }
+      state = State.ELEMENT_START;
+      break;
+    case ELEMENT_START:
+      if (characterClass == CompiledConfiguration.ELEMENT) {
+        location.nextElement();
+        segmentHandler.startElement("");
+        segmentHandler.endElement();
+      } else if (characterClass == CompiledConfiguration.SEGMENT) {
+        endSegment();
+      } else {
+        // A composite whose first component is empty
+        location.nextElement();
+        segmentHandler.startElement("");
+        state = State.SUB_ELEMENT_START;
+      }
+      break;
+    default:
+      // Within an element.
+      if (characterClass == CompiledConfiguration.SUBELEMENT) {
+        if (state == State.SUB_ELEMENT_START) {
+          location.nextSubElement();
+          segmentHandler.subElement("");
+        }
+        state = State.SUB_ELEMENT_START;
+        break;
+      }
+
+      if (state == State.SUB_ELEMENT_START) {
+        // A trailing empty component
+        location.nextSubElement();
+        segmentHandler.subElement("");
+      }
+      location.endElement();
+      segmentHandler.endElement();
+      if (characterClass == CompiledConfiguration.SEGMENT) {
+        endSegment();
+      } else {
+        state = State.ELEMENT_START;
+      }
+    }
+  }
+
+  private void endSegment() throws EdiException {
+    location.endSegment();
+    segmentHandler.endSegment();
+    state = State.SEGMENT_START;
+    if (segmentHandler != handler) {
+      // The tokenized ISA has assigned the sub-element separator.
+      segmentHandler = handler;
+      setDelimiters(configuration.compile());
+    }
+  }
+
+  private static Token tokenOf(byte characterClass) {
+    switch (characterClass) {
+    case CompiledConfiguration.SEGMENT:
+      return Token.SEGMENT_TERMINATOR;
+    case CompiledConfiguration.ELEMENT:
+      return Token.ELEMENT_SEPARATOR;
+    default:
+      return Token.SUB_ELEMENT_SEPARATOR;
+    }
+  }
+}
@@ -0,0 +1,14 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+/** Handles whole segments of one type, as routed by a {@link SegmentRouter}. */
+public interface SegmentCallback {
+
+  /**
+   * Handles a segment. The record is reused for the next segment once this returns, so it must
+   * not be kept; copy the values that are needed.
+   */
+  void handleSegment(SegmentRecord record) throws EdiException;
+}
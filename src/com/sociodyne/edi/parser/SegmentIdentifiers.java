@@ -0,0 +1,119 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.util.BitSet;
+
+/**
+ * Interning table for segment identifiers. An identifier is two or three upper-case letters or
+ * digits, so it packs into a small {@code int} code (base 37, with 0 meaning "no character"). The
+ * code is computed straight from a tokenizer's buffer, and indexes a table of canonical
+ * {@code String} instances, so identifiers can be dispatched on with {@code int} comparisons and
+ * returned without allocating.
+ *
+ * <p>
+ * Canonical instances are interned with {@link String#intern()}, so they are also identical to
+ * string literals. Other short words, such as qualifiers and codes in element values, are interned
+ * the same way.
+ */
+public final class SegmentIdentifiers {
+
+  /** Code of a word that is not a segment identifier. */
+  public static final int NONE = 0;
+
+  private static final int RADIX = 37;
+
+  /** Number of possible codes; every code is less than this. */
+  static final int CODE_COUNT = RADIX * RADIX * RADIX;
+
+  /** Canonical identifiers by code, created on first use. */
+  private static final String[] CANONICAL = new String[CODE_COUNT];
+
+  public static final int ISA = code("ISA");
+  public static final int IEA = code("IEA");
+  public static final int GS = code("GS");
+  public static final int GE = code("GE");
+  public static final int ST = code("ST");
+  public static final int SE = code("SE");
+  public static final int HL = code("HL");
+  public static final int TRN = code("TRN");
+  public static final int LS = code("LS");
+  public static final int LE = code("LE");
+
+  private SegmentIdentifiers() {
+  }
+
+  /**
+   * Returns the code of {@code word}, or {@link #NONE} if it is not two or three upper-case
+   * letters or digits.
+   */
+  public static int code(CharSequence word) {
+    final int length = word.length();
+    if (length < 2 || length > 3) {
+      return NONE;
+    }
+
+    int code = 0;
+    for (int i = 0; i < 3; i++) {
+      int digit = 0;
+      if (i < length) {
+        digit = digit(word.charAt(i));
+        if (digit == 0) {
+          return NONE;
+        }
+      }
+      code = code * RADIX + digit;
+    }
+    return code;
+  }
+
+  private static int digit(char ch) {
+    if (ch >= 'A' && ch <= 'Z') {
+      return ch - 'A' + 1;
+    } else if (ch >= '0' && ch <= '9') {
+      return ch - '0' + 27;
+    }
+    return 0;
+  }
+
+  /** Returns the canonical identifier for a code other than {@link #NONE}. */
+  public static String identifier(int code) {
+    if (code <= NONE || code >= CODE_COUNT) {
+      throw new IllegalArgumentException("Invalid segment identifier code " + code);
+    }
+
+    String identifier = CANONICAL[code];
+    if (identifier == null) {
+      // Strings are immutable, so racing threads at worst intern the same string twice.
+      final char[] chars = new char[3];
+      int length = 0;
+      for (int divisor = RADIX * RADIX; divisor > 0; divisor /= RADIX) {
+        final int digit = code / divisor % RADIX;
+        if (digit != 0) {
+          chars[length++] = digit <= 26 ? (char) ('A' + digit - 1) : (char) ('0' + digit - 27);
+        }
+      }
+      identifier = new String(chars, 0, length).intern();
+      CANONICAL[code] = identifier;
+    }
+    return identifier;
+  }
+
+  /** Returns the canonical instance of {@code word} if it has a code, or else a new string. */
+  public static String intern(CharSequence word) {
+    final int code = code(word);
+    return code == NONE ? word.toString() : identifier(code);
+  }
+
+  /** Returns the set of the codes of {@code identifiers}. */
+  public static BitSet codes(Iterable<String> identifiers) {
+    final BitSet codes = new BitSet();
+    for (final String identifier : identifiers) {
+      final int code = code(identifier);
+      if (code == NONE) {
+        throw new IllegalArgumentException("Not a segment identifier: " + identifier);
+      }
+      codes.set(code);
+    }
+    return codes;
+  }
+}
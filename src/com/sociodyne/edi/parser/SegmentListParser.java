@@ -38,10 +38,10 @@ public class SegmentListParser implements Parser {
       throw new UnexpectedTokenException(startToken, Token.Type.WORD);
     }
 
+    final ParseSession session = segmentParserFactory.newSession(tokenizer, location, handler);
     Token token = startToken;
     do {
-      final SegmentParser segmentParser = segmentParserFactory.create(tokenizer, location, handler,
-          token.getValue());
+      final SegmentParser segmentParser = session.parserFor(token.getSegmentCode());
 
       if (token.getType().equals(Token.Type.WORD)) {
         token = segmentParser.parse(token);
@@ -5,12 +5,15 @@ import com.sociodyne.edi.EdiException;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.util.BitSet;
 
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 
 /**
- * Parses a single EDI segment.
+ * Parses a single EDI segment. If the handler is a {@link ProjectedEdiHandler}, segments outside
+ * its projection are skipped to their terminator without reporting any events, and only the
+ * projected elements of the others are reported.
  * 
  * @author jkinner@sociodyne.com (Jason Kinner)
  */
@@ -20,6 +23,11 @@ public class SegmentParser implements Parser {
   protected final ParserFactory<ElementListParser> elementListParserFactory;
   protected final EdiLocation location;
   protected final EdiHandler handler;
+  /** The handler's projection, or {@code null} to report every segment. */
+  protected final SegmentProjection projection;
+  /** The buffer of a {@link BatchingEdiHandler}, written directly, or {@code null}. */
+  protected final EdiEventBuffer events;
+  private ElementListParser elementListParser;
 
   @Inject
   SegmentParser(@Assisted Tokenizer tokenizer, @Assisted EdiLocation location,
@@ -28,6 +36,9 @@ public class SegmentParser implements Parser {
     this.elementListParserFactory = elementListParserFactory;
     this.location = location;
     this.handler = handler;
+    this.projection = handler instanceof ProjectedEdiHandler ? ((ProjectedEdiHandler) handler)
+        .getProjection() : null;
+    this.events = batchEvents(handler);
   }
 
   public boolean matches(Token token) {
@@ -39,19 +50,36 @@ public class SegmentParser implements Parser {
       throw new EdiException("Unrecognized token " + startToken);
     }
 
+    BitSet elements = null;
+    if (projection != null) {
+      final int code = startToken.getSegmentCode();
+      // A word that is not an identifier is reported, for the handler to make sense of.
+      if (code != SegmentIdentifiers.NONE && !projection.containsSegment(code)) {
+        if (!tokenizer.skipSegment()) {
+          throw new EOFException();
+        }
+        return Token.SEGMENT_TERMINATOR;
+      }
+      elements = projection.elements(code);
+    }
+
     final String segmentIdentifier = startToken.getValue();
     location.startSegment(segmentIdentifier);
-    handler.startSegment(segmentIdentifier);
+    if (events != null) {
+      events.startSegment(segmentIdentifier, startToken.getSegmentCode());
+    } else {
+      handler.startSegment(segmentIdentifier);
+    }
 
-    final ElementListParser elementListParser = elementListParserFactory.create(location,
-        tokenizer, handler);
+    final ElementListParser elementListParser = elementListParser();
 
     Token token;
     PARSE_LOOP:
     do {
       token = tokenizer.nextToken();
       if (token == Token.ELEMENT_SEPARATOR) {
-        token = elementListParser.parse(token);
+        token = elements == null ? elementListParser.parse(token) : elementListParser.parse(
+            token, elements);
         switch (token.getType()) {
         case SEGMENT_TERMINATOR:
           break PARSE_LOOP;
@@ -69,4 +97,23 @@ public class SegmentParser implements Parser {
     handler.endSegment();
     return token;
   }
+
+  /**
+   * Returns the buffer to write events to directly if {@code handler} is a
+   * {@link BatchingEdiHandler}, or else {@code null}.
+   */
+  static EdiEventBuffer batchEvents(EdiHandler handler) {
+    return handler instanceof BatchingEdiHandler ? ((BatchingEdiHandler) handler).events() : null;
+  }
+
+  /**
+   * Returns this parser's element list parser, creating it on first use. Parsers are reused from
+   * segment to segment, so the element list parser is too.
+   */
+  protected ElementListParser elementListParser() {
+    if (elementListParser == null) {
+      elementListParser = elementListParserFactory.create(location, tokenizer, handler);
+    }
+    return elementListParser;
+  }
 }
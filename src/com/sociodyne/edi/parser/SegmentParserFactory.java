@@ -1,6 +1,7 @@
 // Copyright 2011, Sociodyne LLC. All rights reserved.
 package com.sociodyne.edi.parser;
 
+import java.util.BitSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,6 +15,10 @@ import com.google.inject.Singleton;
  * implementations
  * for different segment identifiers, based on the requirements of the segment
  * type.
+ *
+ * <p>
+ * Dispatch is on {@link SegmentIdentifiers} codes, so it costs a few {@code int} comparisons
+ * rather than string comparisons and a map lookup.
  * 
  * @author jkinner@sociodyne.com (Jason Kinner)
  */
@@ -22,31 +27,79 @@ public class SegmentParserFactory {
 
   private final ParserFactory<ElementListParser> elementListParserFactory;
 
-  private final Map<String, Set<String>> loopNonTerminalSegments = ImmutableMap
+  private static final Map<String, Set<String>> LOOP_NON_TERMINAL_SEGMENTS = ImmutableMap
       .<String, Set<String>> builder().put("EB", ImmutableSet.of("DTP", "AAA", "MSG", "LS", "REF"))
       .put("NM1", ImmutableSet.of("HL", "EB", "EQ", "REF", "N3", "N4", "PER", "DMG", "INS", "DTP"))
       .put("EQ", ImmutableSet.of("DTP")).build();
 
+  /** Codes of the unwrapped loop segments, parallel to {@link #loopNonTerminalSegments}. */
+  private final int[] loopSegments;
+  private final BitSet[] loopNonTerminalSegments;
+
   @Inject
   SegmentParserFactory(ParserFactory<ElementListParser> elementListParserFactory) {
     this.elementListParserFactory = elementListParserFactory;
+
+    loopSegments = new int[LOOP_NON_TERMINAL_SEGMENTS.size()];
+    loopNonTerminalSegments = new BitSet[loopSegments.length];
+    int i = 0;
+    for (final Map.Entry<String, Set<String>> loop : LOOP_NON_TERMINAL_SEGMENTS.entrySet()) {
+      loopSegments[i] = SegmentIdentifiers.code(loop.getKey());
+      loopNonTerminalSegments[i] = SegmentIdentifiers.codes(loop.getValue());
+      i++;
+    }
   }
 
   public SegmentParser create(Tokenizer tokenizer, EdiLocation location, EdiHandler handler,
       String segmentIdentifier) {
-    // TODO(jkinner): Implement special cases (HL, LS, etc.)
-    if (segmentIdentifier.equals("HL")) {
-      return new HlLoopParser(tokenizer, location, handler, elementListParserFactory, this);
-    } else if (segmentIdentifier.equals("LS")) {
-      return new LsLoopParser(tokenizer, location, handler, elementListParserFactory, this);
-    } else {
+    return newParser(kind(SegmentIdentifiers.code(segmentIdentifier)), tokenizer, location,
+        handler);
+  }
+
+  /**
+   * Starts a {@link ParseSession} over one document. The session creates each kind of parser
+   * once and reuses it for every segment of that kind.
+   */
+  public ParseSession newSession(Tokenizer tokenizer, EdiLocation location, EdiHandler handler) {
+    return new ParseSession(tokenizer, location, handler, elementListParserFactory);
+  }
+
+  /** Returns the number of distinct {@link #kind(int) kinds} of parser. */
+  int kindCount() {
+    return loopSegments.length + 3;
+  }
+
+  /**
+   * Returns the kind of parser for segment {@code code}: the index of an unwrapped loop, or one
+   * of the values after them for HL loops, LS loops and plain segments.
+   */
+  int kind(int code) {
+    if (code == SegmentIdentifiers.HL) {
+      return loopSegments.length;
+    } else if (code == SegmentIdentifiers.LS) {
+      return loopSegments.length + 1;
+    } else if (code != SegmentIdentifiers.NONE) {
       // See if it's an unwrapped loop
-      final Set<String> nonTerminalSegments = loopNonTerminalSegments.get(segmentIdentifier);
-      if (nonTerminalSegments != null) {
-        return new LoopParser(tokenizer, location, handler, elementListParserFactory, this,
-            nonTerminalSegments);
+      for (int i = 0; i < loopSegments.length; i++) {
+        if (loopSegments[i] == code) {
+          return i;
+        }
       }
     }
+    return loopSegments.length + 2;
+  }
+
+  /** Creates a parser of {@code kind}; loop parsers create their child parsers through this. */
+  SegmentParser newParser(int kind, Tokenizer tokenizer, EdiLocation location,
+      EdiHandler handler) {
+    if (kind < loopSegments.length) {
+      return new LoopParser(tokenizer, location, handler, elementListParserFactory, this,
+          loopNonTerminalSegments[kind]);
+    } else if (kind == loopSegments.length) {
+      return new HlLoopParser(tokenizer, location, handler, elementListParserFactory, this);
+    } else if (kind == loopSegments.length + 1) {
+      return new LsLoopParser(tokenizer, location, handler, elementListParserFactory, this);
+    }
 
     return new SegmentParser(tokenizer, location, handler, elementListParserFactory);
   }
@@ -0,0 +1,115 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.util.BitSet;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The segments, and optionally the elements of each, that a {@link ProjectedEdiHandler} wants to
+ * see. Other segments are skipped by the tokenizer from their identifier to their terminator,
+ * and unwanted elements of a wanted segment are passed over without being turned into strings.
+ *
+ * <pre>
+ * SegmentProjection projection = new SegmentProjection.Builder()
+ *     .addSegment("NM1")
+ *     .addSegment("EB", 1, 3, 4)
+ *     .build();
+ * </pre>
+ *
+ * <p>
+ * Projections are immutable and may be shared.
+ */
+public final class SegmentProjection {
+
+  public static class Builder {
+
+    private final BitSet segments = new BitSet();
+    private final BitSet[] elements = new BitSet[SegmentIdentifiers.CODE_COUNT];
+
+    /** Adds a segment with all of its elements. */
+    public Builder addSegment(String segmentIdentifier) {
+      final int code = code(segmentIdentifier);
+      segments.set(code);
+      elements[code] = null;
+      return this;
+    }
+
+    /**
+     * Adds a segment with only the given elements, counting from 1. Adding the same segment again
+     * adds to its elements.
+     */
+    public Builder addSegment(String segmentIdentifier, int... elementIndexes) {
+      final int code = code(segmentIdentifier);
+      if (segments.get(code) && elements[code] == null) {
+        // Already added with all of its elements.
+        return this;
+      }
+      segments.set(code);
+      BitSet indexes = elements[code];
+      if (indexes == null) {
+        indexes = new BitSet();
+        elements[code] = indexes;
+      }
+      for (final int index : elementIndexes) {
+        Preconditions.checkArgument(index > 0, "Element indexes start at 1: %s", index);
+        indexes.set(index);
+      }
+      return this;
+    }
+
+    public SegmentProjection build() {
+      final BitSet[] copy = new BitSet[elements.length];
+      for (int code = segments.nextSetBit(0); code >= 0; code = segments.nextSetBit(code + 1)) {
+        if (elements[code] != null) {
+          copy[code] = (BitSet) elements[code].clone();
+        }
+      }
+      return new SegmentProjection((BitSet) segments.clone(), copy);
+    }
+
+    private static int code(String segmentIdentifier) {
+      final int code = SegmentIdentifiers.code(segmentIdentifier);
+      Preconditions.checkArgument(code != SegmentIdentifiers.NONE,
+          "Not a segment identifier: %s", segmentIdentifier);
+      return code;
+    }
+  }
+
+  private final BitSet segments;
+  /**
+   * Elements of the segments that do not want all of theirs, indexed by segment code; {@code null}
+   * for the others.
+   */
+  private final BitSet[] elements;
+
+  private SegmentProjection(BitSet segments, BitSet[] elements) {
+    this.segments = segments;
+    this.elements = elements;
+  }
+
+  /** Returns whether the segment whose identifier has {@code code} is wanted. */
+  public boolean containsSegment(int code) {
+    return segments.get(code);
+  }
+
+  /** Returns whether element {@code index}, from 1, of segment {@code code} is wanted. */
+  public boolean containsElement(int code, int index) {
+    if (!segments.get(code)) {
+      return false;
+    }
+    final BitSet indexes = elements[code];
+    return indexes == null || indexes.get(index);
+  }
+
+  /**
+   * Returns the wanted elements of segment {@code code}, or {@code null} if all of them are. The
+   * set must not be modified.
+   */
+  @Nullable
+  BitSet elements(int code) {
+    return elements[code];
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The elements of one segment, indexed as in implementation guides: elements from 1, and the
+ * components of a composite element from 1, the first component being the element's value.
+ * Elements and components past the end of the segment read as empty, as if they had been sent
+ * empty.
+ *
+ * <p>
+ * A record is filled by a {@link SegmentRouter} and reused for each segment it routes.
+ */
+public final class SegmentRecord {
+
+  private String segmentIdentifier;
+  private int segmentCode;
+  /** The components of every element, in order. */
+  private String[] components = new String[32];
+  private int componentCount;
+  /** The index in {@code components} of each element's first component. */
+  private int[] elementStarts = new int[32];
+  private int elementCount;
+
+  SegmentRecord() {
+  }
+
+  void reset(String segmentIdentifier, int segmentCode) {
+    this.segmentIdentifier = segmentIdentifier;
+    this.segmentCode = segmentCode;
+    Arrays.fill(components, 0, componentCount, null);
+    componentCount = 0;
+    elementCount = 0;
+  }
+
+  void addElement(String contents) {
+    if (elementCount == elementStarts.length) {
+      elementStarts = Arrays.copyOf(elementStarts, elementCount * 2);
+    }
+    elementStarts[elementCount++] = componentCount;
+    addComponent(contents);
+  }
+
+  void addComponent(String contents) {
+    if (componentCount == components.length) {
+      components = Arrays.copyOf(components, componentCount * 2);
+    }
+    components[componentCount++] = contents;
+  }
+
+  public String getSegmentIdentifier() {
+    return segmentIdentifier;
+  }
+
+  /** Returns the {@link SegmentIdentifiers} code of the segment's identifier. */
+  public int getSegmentCode() {
+    return segmentCode;
+  }
+
+  /** Returns the number of elements sent, including empty ones. */
+  public int getElementCount() {
+    return elementCount;
+  }
+
+  /** Returns the value, or first component, of element {@code index}. */
+  public String getElement(int index) {
+    return getComponent(index, 1);
+  }
+
+  /** Returns the number of components of element {@code index}; 1 unless it is a composite. */
+  public int getComponentCount(int index) {
+    Preconditions.checkArgument(index > 0, "Element indexes start at 1: %s", index);
+    if (index > elementCount) {
+      return 0;
+    }
+    final int end = index == elementCount ? componentCount : elementStarts[index];
+    return end - elementStarts[index - 1];
+  }
+
+  /** Returns component {@code component} of element {@code index}. */
+  public String getComponent(int index, int component) {
+    Preconditions.checkArgument(component > 0, "Component indexes start at 1: %s", component);
+    if (component > getComponentCount(index)) {
+      return "";
+    }
+    return components[elementStarts[index - 1] + component - 1];
+  }
+
+  /** Renders the segment with {@code *} and {@code :} delimiters; intended for debugging. */
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder(segmentIdentifier);
+    for (int element = 1; element <= elementCount; element++) {
+      builder.append('*').append(getElement(element));
+      for (int component = 2; component <= getComponentCount(element); component++) {
+        builder.append(':').append(getComponent(element, component));
+      }
+    }
+    return builder.toString();
+  }
+}
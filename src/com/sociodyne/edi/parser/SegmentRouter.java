@@ -0,0 +1,102 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Sends each segment, whole, to the {@link SegmentCallback} registered for its identifier.
+ * Callbacks are found by indexing a table with the segment's interned code, so routing costs the
+ * same however many callbacks there are. Segments without a callback, and loop events, are
+ * ignored.
+ *
+ * <pre>
+ * SegmentRouter router = new SegmentRouter.Builder()
+ *     .route("NM1", subscriberExtractor)
+ *     .route("EB", benefitExtractor)
+ *     .build();
+ * </pre>
+ *
+ * <p>
+ * The router's projection holds the routed segments, so parsers that honour
+ * {@link ProjectedEdiHandler} skip the others without tokenizing them. A router fills a single
+ * {@link SegmentRecord} and is meant for one parse at a time.
+ */
+public class SegmentRouter implements ProjectedEdiHandler {
+
+  public static class Builder {
+
+    private final SegmentCallback[] routes = new SegmentCallback[SegmentIdentifiers.CODE_COUNT];
+    private final SegmentProjection.Builder projection = new SegmentProjection.Builder();
+
+    /** Routes segments identified by {@code segmentIdentifier} to {@code callback}. */
+    public Builder route(String segmentIdentifier, SegmentCallback callback) {
+      final int code = SegmentIdentifiers.code(segmentIdentifier);
+      Preconditions.checkArgument(code != SegmentIdentifiers.NONE,
+          "Not a segment identifier: %s", segmentIdentifier);
+      Preconditions.checkArgument(routes[code] == null, "%s is already routed",
+          segmentIdentifier);
+      routes[code] = Preconditions.checkNotNull(callback);
+      projection.addSegment(segmentIdentifier);
+      return this;
+    }
+
+    public SegmentRouter build() {
+      return new SegmentRouter(routes.clone(), projection.build());
+    }
+  }
+
+  private final SegmentCallback[] routes;
+  private final SegmentProjection projection;
+  private final SegmentRecord record = new SegmentRecord();
+
+  /** The callback for the current segment, or {@code null} if it is not routed. */
+  private SegmentCallback callback;
+
+  private SegmentRouter(SegmentCallback[] routes, SegmentProjection projection) {
+    this.routes = routes;
+    this.projection = projection;
+  }
+
+  public SegmentProjection getProjection() {
+    return projection;
+  }
+
+  public void startSegment(String segmentIdentifier) throws EdiException {
+    final int code = SegmentIdentifiers.code(segmentIdentifier);
+    callback = code == SegmentIdentifiers.NONE ? null : routes[code];
+    if (callback != null) {
+      record.reset(segmentIdentifier, code);
+    }
+  }
+
+  public void endSegment() throws EdiException {
+    if (callback != null) {
+      final SegmentCallback segmentCallback = callback;
+      callback = null;
+      segmentCallback.handleSegment(record);
+    }
+  }
+
+  public void startElement(String contents) throws EdiException {
+    if (callback != null) {
+      record.addElement(contents);
+    }
+  }
+
+  public void endElement() throws EdiException {
+  }
+
+  public void subElement(String contents) throws EdiException {
+    if (callback != null) {
+      record.addComponent(contents);
+    }
+  }
+
+  public void startLoop(String segmentIdentifier) throws EdiException {
+  }
+
+  public void endLoop() throws EdiException {
+  }
+}
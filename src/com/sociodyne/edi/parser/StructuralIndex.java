@@ -0,0 +1,170 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The positions of the delimiters in a range of single-byte input, found in one pass with a
+ * {@link DelimiterScanner}. Every delimiter that ends a word is marked in a bitmap of one bit per
+ * input byte, and the segment terminators are also listed in order, so the delimiter after any
+ * position is found a word of the bitmap at a time and segment <i>n</i> is found directly.
+ *
+ * <p>
+ * Positions are indexes into the {@link ByteBuffer} the index was built from. An index is
+ * immutable once built and may be shared between threads, for instance to hand segment ranges to
+ * several parsers.
+ */
+public final class StructuralIndex {
+
+  private final ByteBuffer input;
+  private final int start;
+  private final int end;
+  /** Bit {@code i} is set if the byte at {@code start + i} ends a word. */
+  private final long[] delimiters;
+  /** Positions of the segment terminators, in order. */
+  private final int[] terminators;
+  private final int segmentCount;
+
+  private StructuralIndex(ByteBuffer input, int start, int end, long[] delimiters,
+      int[] terminators, int segmentCount) {
+    this.input = input;
+    this.start = start;
+    this.end = end;
+    this.delimiters = delimiters;
+    this.terminators = terminators;
+    this.segmentCount = segmentCount;
+  }
+
+  /** Indexes {@code input} from its position to its limit. */
+  public static StructuralIndex build(ByteBuffer input, CompiledConfiguration delimiters) {
+    return build(input, input.position(), input.limit(), delimiters, false);
+  }
+
+  /**
+   * Indexes {@code input} in the range [{@code from}, {@code to}), or only through the first
+   * segment terminator if {@code firstSegmentOnly} is set.
+   */
+  static StructuralIndex build(ByteBuffer input, int from, int to,
+      CompiledConfiguration delimiters, boolean firstSegmentOnly) {
+    Preconditions.checkArgument(from >= 0 && from <= to && to <= input.limit(),
+        "Invalid range [%s, %s)", from, to);
+    final DelimiterScanner scanner = DelimiterScanner.forWordTerminals(delimiters);
+    if (firstSegmentOnly) {
+      // Bound the range first, so the arrays are sized for one segment rather than the input.
+      to = firstTerminator(input, from, to, scanner, delimiters);
+    }
+    final long[] bits = new long[(to - from + 63) >>> 6];
+    int[] terminators = new int[firstSegmentOnly ? 1 : 16];
+    int segmentCount = 0;
+    int end = to;
+
+    int position = from;
+    while ((position = scanner.indexOf(input, position, to)) < to) {
+      final int bit = position - from;
+      bits[bit >>> 6] |= 1L << bit;
+      if (delimiters.classOf(input.get(position) & 0xff) == CompiledConfiguration.SEGMENT) {
+        if (segmentCount == terminators.length) {
+          terminators = Arrays.copyOf(terminators, segmentCount * 2);
+        }
+        terminators[segmentCount++] = position;
+        if (firstSegmentOnly) {
+          end = position + 1;
+          break;
+        }
+      }
+      position++;
+    }
+
+    return new StructuralIndex(input, from, end, bits, terminators, segmentCount);
+  }
+
+  /**
+   * Returns the position after the first segment terminator in [{@code from}, {@code to}), or
+   * {@code to} if there is none.
+   */
+  private static int firstTerminator(ByteBuffer input, int from, int to,
+      DelimiterScanner scanner, CompiledConfiguration delimiters) {
+    int position = from;
+    while ((position = scanner.indexOf(input, position, to)) < to) {
+      if (delimiters.classOf(input.get(position) & 0xff) == CompiledConfiguration.SEGMENT) {
+        return position + 1;
+      }
+      position++;
+    }
+    return to;
+  }
+
+  /** Returns the position of the first indexed byte. */
+  public int getStart() {
+    return start;
+  }
+
+  /** Returns the position after the last indexed byte. */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * Returns the position of the first delimiter at or after {@code from}, or {@link #getEnd()} if
+   * there is none.
+   */
+  public int nextDelimiter(int from) {
+    if (from >= end) {
+      return end;
+    }
+    final int bit = from - start;
+    int word = bit >>> 6;
+    long bits = delimiters[word] & (-1L << bit);
+    while (bits == 0) {
+      if (++word == delimiters.length) {
+        return end;
+      }
+      bits = delimiters[word];
+    }
+    return Math.min(start + (word << 6) + Long.numberOfTrailingZeros(bits), end);
+  }
+
+  /**
+   * Returns the position of the first segment terminator at or after {@code from}, or
+   * {@link #getEnd()} if there is none.
+   */
+  public int nextSegmentTerminator(int from) {
+    int index = Arrays.binarySearch(terminators, 0, segmentCount, from);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < segmentCount ? terminators[index] : end;
+  }
+
+  /** Returns the number of terminated segments in the index. */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /** Returns the position of the first byte of segment {@code n}, counting from 0. */
+  public int segmentStart(int n) {
+    Preconditions.checkElementIndex(n, segmentCount);
+    return n == 0 ? start : terminators[n - 1] + 1;
+  }
+
+  /** Returns the position of the terminator of segment {@code n}. */
+  public int segmentEnd(int n) {
+    Preconditions.checkElementIndex(n, segmentCount);
+    return terminators[n];
+  }
+
+  /**
+   * Returns the bytes of segment {@code n}, without its terminator, as a buffer that shares the
+   * input's content.
+   */
+  public ByteBuffer segment(int n) {
+    final ByteBuffer segment = input.duplicate();
+    segment.limit(segmentEnd(n)).position(segmentStart(n));
+    return segment.slice();
+  }
+}
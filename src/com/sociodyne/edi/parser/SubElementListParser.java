@@ -9,15 +9,26 @@ import java.io.IOException;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 
+/**
+ * Parses the components of a composite element after its first. The first component is reported
+ * by {@link EdiHandler#startElement(String)}; each later one, including an empty one, is reported
+ * by {@link EdiHandler#subElement(String)} with the value of its token.
+ */
 public class SubElementListParser implements Parser {
 
   private final Tokenizer tokenizer;
   private final EdiLocation location;
+  private final EdiHandler handler;
+  /** The buffer of a {@link BatchingEdiHandler}, written directly, or {@code null}. */
+  private final EdiEventBuffer events;
 
   @Inject
-  public SubElementListParser(@Assisted Tokenizer tokenizer, @Assisted EdiLocation location) {
+  public SubElementListParser(@Assisted Tokenizer tokenizer, @Assisted EdiLocation location,
+      @Assisted EdiHandler handler) {
     this.tokenizer = tokenizer;
     this.location = location;
+    this.handler = handler;
+    this.events = SegmentParser.batchEvents(handler);
   }
 
   public boolean matches(Token token) {
@@ -30,32 +41,44 @@ public class SubElementListParser implements Parser {
     }
 
     while (true) {
-      token = tokenizer.nextToken();
-      if (token == null) {
-        throw new EdiException("Unexpected EOF in sub-element", new EOFException());
+      token = nextToken();
+      location.nextSubElement();
+      if (token.getType() == Token.Type.WORD) {
+        subElement(token.getValue());
+        token = nextToken();
+      } else {
+        // An empty component
+        subElement("");
       }
 
-      if (token.getType() == Token.Type.WORD) {
-        // Good
-        location.nextSubElement();
-        token = tokenizer.nextToken();
-        if (token == null) {
-          throw new EdiException("Unexpected EOF in sub-element", new EOFException());
-        }
-
-        switch (token.getType()) {
-        case SUB_ELEMENT_SEPARATOR:
-          // Okay
-          break;
-        case ELEMENT_SEPARATOR:
-          return token;
-        case SEGMENT_TERMINATOR:
-          return token;
-        default:
-          throw new UnexpectedTokenException(token, Token.Type.ELEMENT_SEPARATOR,
-              Token.Type.SUB_ELEMENT_SEPARATOR, Token.Type.SEGMENT_TERMINATOR);
-        }
+      switch (token.getType()) {
+      case SUB_ELEMENT_SEPARATOR:
+        // Okay
+        break;
+      case ELEMENT_SEPARATOR:
+        return token;
+      case SEGMENT_TERMINATOR:
+        return token;
+      default:
+        throw new UnexpectedTokenException(token, Token.Type.ELEMENT_SEPARATOR,
+            Token.Type.SUB_ELEMENT_SEPARATOR, Token.Type.SEGMENT_TERMINATOR);
       }
     }
   }
+
+  private void subElement(String contents) throws EdiException {
+    if (events != null) {
+      events.subElement(contents);
+    } else {
+      handler.subElement(contents);
+    }
+  }
+
+  private Token nextToken() throws EdiException, IOException {
+    final Token token = tokenizer.nextToken();
+    if (token == null) {
+      throw new EdiException("Unexpected EOF in sub-element", new EOFException());
+    }
+    return token;
+  }
 }
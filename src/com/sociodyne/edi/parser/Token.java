@@ -29,15 +29,20 @@ public class Token {
   public boolean equals(Object o) {
     if (o instanceof Token) {
       final Token that = (Token) o;
-      return Objects.equal(that.type, type) && Objects.equal(that.value, value);
+      return Objects.equal(that.type, type) && Objects.equal(that.getValue(), getValue());
     }
 
     return false;
   }
 
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(type, getValue());
+  }
+
   @Override
   public String toString() {
-    return Objects.toStringHelper(this).add("type", type).add("value", value).toString();
+    return Objects.toStringHelper(this).add("type", type).add("value", getValue()).toString();
   }
 
   public Type getType() {
@@ -48,6 +53,22 @@ public class Token {
     return value;
   }
 
+  /**
+   * Returns the contents of this token without necessarily creating a {@code String}. Callers
+   * that only need to inspect or copy the characters should prefer this to {@link #getValue()}.
+   */
+  public CharSequence getContents() {
+    return value;
+  }
+
+  /**
+   * Returns the {@link SegmentIdentifiers} code of this word, or {@link SegmentIdentifiers#NONE}
+   * if it is not a segment identifier or not a word.
+   */
+  public int getSegmentCode() {
+    return value == null ? SegmentIdentifiers.NONE : SegmentIdentifiers.code(value);
+  }
+
   public static Token word(String word) {
     return new Token(Token.Type.WORD, word);
   }
@@ -1,23 +1,79 @@
 // Copyright 2011, Sociodyne LLC. All rights reserved.
 package com.sociodyne.edi.parser;
 
+import com.sociodyne.edi.CompiledConfiguration;
 import com.sociodyne.edi.Configuration;
 import com.sociodyne.parser.Location;
 
 import java.io.IOException;
 import java.io.Reader;
 
-public class Tokenizer {
+import javax.annotation.Nullable;
+
+/**
+ * Splits EDI input into {@link Token}s. Tokenizers keep only an absolute offset on the hot path;
+ * they act as the {@link Location.Resolver} of their {@link Location}, so line and character are
+ * counted only when something asks for them.
+ */
+public class Tokenizer implements Location.Resolver {
 
   private final Reader r;
-  private final Configuration config;
+  protected final Configuration config;
+  /** Separator table used on the hot path; see {@link #setDelimiters}. */
+  protected CompiledConfiguration delimiters;
   private Token lookAhead;
-  private final Location location;
+  protected final Location location;
+
+  /** Number of characters read. */
+  private long offset;
+  /** Number of newlines read. */
+  private int lines;
+  /** Offset of the character after the last newline. */
+  private long lineStart;
 
   public Tokenizer(Reader r, Configuration config, Location location) {
     this.r = r;
     this.config = config;
     this.location = location;
+    this.delimiters = config.compile();
+    location.setResolver(this);
+  }
+
+  /** Constructor for subclasses that do not read from a {@link Reader}. */
+  protected Tokenizer(Configuration config, Location location) {
+    this(null, config, location);
+  }
+
+  /**
+   * Replaces the separator table. Called once per interchange, after the ISA segment has assigned
+   * the sub-element separator to the {@link Configuration}.
+   */
+  public void setDelimiters(CompiledConfiguration delimiters) {
+    this.delimiters = delimiters;
+  }
+
+  /**
+   * Reads a fixed-width ISA segment from the start of the input, so the interchange's separators
+   * are known before anything is tokenized. If the input does not start with a fixed-width ISA,
+   * nothing is consumed.
+   *
+   * <p>
+   * This tokenizer reads one character at a time and cannot look ahead, so it always returns
+   * {@code null}; subclasses that buffer their input recognize the header.
+   *
+   * @return the header, or {@code null} if it was not read
+   */
+  @Nullable
+  public IsaHeader readIsaHeader() throws IOException {
+    return null;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public void resolve(Location location) {
+    location.setLineAndChar(lines, (int) (offset - lineStart));
   }
 
   public Token nextToken() throws IOException {
@@ -33,18 +89,11 @@ public class Tokenizer {
     read = r.read();
     if (read != -1) {
       char ch = (char) read;
-      location.nextChar();
-      if (ch == '\n') {
-        location.nextLine();
-      }
+      advance(ch);
 
-      if (config.isSegmentTerminator(ch)) {
-        return Token.SEGMENT_TERMINATOR;
-      } else if (config.isElementSeparator(ch)) {
-        return Token.ELEMENT_SEPARATOR;
-      }
-      if (config.isSubElementSeparator(ch)) {
-        return Token.SUB_ELEMENT_SEPARATOR;
+      final Token delimiter = delimiterToken(ch);
+      if (delimiter != null) {
+        return delimiter;
       }
 
       do {
@@ -52,34 +101,75 @@ public class Tokenizer {
         read = r.read();
         if (read != -1) {
           ch = (char) read;
-          location.nextChar();
-          if (ch == '\n') {
-            location.nextLine();
-          }
+          advance(ch);
         }
       } while (read != -1 && !isWordTerminal(ch));
 
       if (read != -1) {
         // We have read a terminal off the stream. Save the token for the next
 // call.
-        if (config.isSegmentTerminator(ch)) {
-          lookAhead = Token.SEGMENT_TERMINATOR;
-        }
-        if (config.isElementSeparator(ch)) {
-          lookAhead = Token.ELEMENT_SEPARATOR;
-        }
-        if (config.isSubElementSeparator(ch)) {
-          lookAhead = Token.SUB_ELEMENT_SEPARATOR;
-        }
+        lookAhead = delimiterToken(ch);
       }
-      return new Token(Token.Type.WORD, accumulator.toString());
+      return new Token(Token.Type.WORD, SegmentIdentifiers.intern(accumulator));
     }
 
     return null;
   }
 
-  private boolean isWordTerminal(char ch) {
-    return config.isSegmentTerminator(ch) || config.isElementSeparator(ch)
-        || config.isSubElementSeparator(ch);
+  /**
+   * Skips the rest of the current segment, through its terminator, without producing tokens or
+   * copying the skipped input.
+   *
+   * @return {@code false} if the input ended before a segment terminator
+   */
+  public boolean skipSegment() throws IOException {
+    if (lookAhead != null) {
+      final Token token = lookAhead;
+      lookAhead = null;
+      if (token == Token.SEGMENT_TERMINATOR) {
+        return true;
+      }
+    }
+
+    int read;
+    while ((read = r.read()) != -1) {
+      final char ch = (char) read;
+      advance(ch);
+      if (delimiters.classOf(ch) == CompiledConfiguration.SEGMENT) {
+        location.nextSegment();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void advance(char ch) {
+    offset++;
+    if (ch == '\n') {
+      lines++;
+      lineStart = offset;
+    }
+  }
+
+  protected boolean isWordTerminal(char ch) {
+    return delimiters.isWordTerminal(ch);
+  }
+
+  /**
+   * Returns the token for {@code ch} if it is a delimiter, or {@code null}. Subclasses call this
+   * exactly once for each delimiter they consume, since it counts segments.
+   */
+  protected Token delimiterToken(int ch) {
+    switch (delimiters.classOf(ch)) {
+    case CompiledConfiguration.SEGMENT:
+      location.nextSegment();
+      return Token.SEGMENT_TERMINATOR;
+    case CompiledConfiguration.ELEMENT:
+      return Token.ELEMENT_SEPARATOR;
+    case CompiledConfiguration.SUBELEMENT:
+      return Token.SUB_ELEMENT_SEPARATOR;
+    default:
+      return null;
+    }
   }
 }
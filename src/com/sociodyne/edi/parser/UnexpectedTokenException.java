@@ -9,6 +9,7 @@ public class UnexpectedTokenException extends EdiException {
   private Token actual;
   private Token.Type[] expected;
   private Token exact;
+  private ImmutableEdiLocation location;
 
   public UnexpectedTokenException(String message, Throwable cause) {
     // Primarily used for wrapping parse exceptions
@@ -31,6 +32,47 @@ public class UnexpectedTokenException extends EdiException {
     initCause(cause);
   }
 
+  /**
+   * Returns a snapshot of where the unexpected token was found, or {@code null} if the exception
+   * has not been reported by a reader yet.
+   */
+  public ImmutableEdiLocation getLocation() {
+    return location;
+  }
+
+  public void setLocation(ImmutableEdiLocation location) {
+    this.location = location;
+  }
+
+  /** Returns the token that was found, or {@code null} if the exception only wraps another. */
+  public Token getActual() {
+    return actual;
+  }
+
+  /**
+   * Returns a description of the token or token types that were expected, or {@code null} if the
+   * exception only wraps another.
+   */
+  public String getExpected() {
+    if (actual == null) {
+      return null;
+    }
+    if (exact != null) {
+      return exact.toString();
+    }
+    if (expected.length == 0) {
+      return "EOF";
+    }
+
+    final StringBuffer stringBuffer = new StringBuffer();
+    for (final Token.Type expectedType : expected) {
+      stringBuffer.append(expectedType.toString());
+      stringBuffer.append(", ");
+    }
+    stringBuffer.delete(stringBuffer.length() - 2, stringBuffer.length());
+    return stringBuffer.toString();
+  }
+
   @Override
   public String getMessage() {
     if (actual == null) {
@@ -40,28 +82,10 @@ public class UnexpectedTokenException extends EdiException {
 
     final StringBuffer stringBuffer = new StringBuffer();
     stringBuffer.append("Unexpected token '");
-    if (actual != null) {
-      stringBuffer.append(actual.toString());
-    } else {
-      stringBuffer.append("EOF");
-    }
-
+    stringBuffer.append(actual.toString());
     stringBuffer.append("'. ");
-    if (exact != null) {
-      stringBuffer.append("Expected: " + exact.toString());
-    } else {
-      stringBuffer.append("Expected one of: ");
-      if (expected.length > 0) {
-        for (final Token.Type expectedType : expected) {
-          stringBuffer.append(expectedType.toString());
-          stringBuffer.append(", ");
-        }
-        stringBuffer.delete(stringBuffer.length() - 2, stringBuffer.length());
-      } else {
-        stringBuffer.append("EOF");
-      }
-    }
-
+    stringBuffer.append(exact != null ? "Expected: " : "Expected one of: ");
+    stringBuffer.append(getExpected());
     return stringBuffer.toString();
   }
 }
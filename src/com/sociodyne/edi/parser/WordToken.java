@@ -0,0 +1,57 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+/**
+ * A {@link Token.Type#WORD} token that is recycled by a tokenizer. The contents are a view of the
+ * tokenizer's buffer; a {@code String} is only created if {@link #getValue()} is called, and is
+ * cached until the token is reused.
+ * 
+ * <p>
+ * Words that are segment identifiers are interned: {@link #getValue()} returns the canonical
+ * instance from {@link SegmentIdentifiers} without allocating, and the code is computed at most
+ * once per word.
+ *
+ * <p>
+ * A {@code WordToken} is only valid until the next call to {@link Tokenizer#nextToken()}.
+ */
+final class WordToken extends Token {
+
+  private final CharSequence contents;
+  private String value;
+  /** The segment code, or -1 if it has not been computed. */
+  private int code = -1;
+
+  WordToken(CharSequence contents) {
+    super(Token.Type.WORD);
+    this.contents = contents;
+  }
+
+  /** Discards the cached value; called by the tokenizer after the contents have changed. */
+  void reset() {
+    value = null;
+    code = -1;
+  }
+
+  @Override
+  public String getValue() {
+    if (value == null) {
+      final int segmentCode = getSegmentCode();
+      value = segmentCode == SegmentIdentifiers.NONE ? contents.toString() : SegmentIdentifiers
+          .identifier(segmentCode);
+    }
+    return value;
+  }
+
+  @Override
+  public int getSegmentCode() {
+    if (code < 0) {
+      code = SegmentIdentifiers.code(contents);
+    }
+    return code;
+  }
+
+  @Override
+  public CharSequence getContents() {
+    return value != null ? value : contents;
+  }
+}
@@ -17,8 +17,10 @@ public class XmlEdiWriter implements ContentHandler {
   private boolean startedLoopSegment = false;
   private final Stack<String> loopSegments = new Stack<String>();
   private boolean hasSegmentContents = false;
-  private boolean isEmptyElement = true;
-  private boolean isEmptySubElement = true;
+  /** Text of the current element or sub-element, which may arrive in several pieces. */
+  private final StringBuilder text = new StringBuilder();
+  /** Whether the current element's first component has been written. */
+  private boolean wroteElement = false;
 
   private enum Type {
     SEGMENT, ELEMENT, SUBELEMENT, UNKNOWN
@@ -29,22 +31,8 @@ public class XmlEdiWriter implements ContentHandler {
   }
 
   public void characters(char[] arg0, int arg1, int arg2) throws SAXException {
-    try {
-      switch (type) {
-      case SEGMENT:
-        break;
-      case ELEMENT:
-        hasSegmentContents = true;
-        isEmptyElement = false;
-        writer.startElement(new String(arg0, arg1, arg2));
-        break;
-      case SUBELEMENT:
-        isEmptySubElement = false;
-        writer.subElement(new String(arg0, arg1, arg2));
-        break;
-      }
-    } catch (final EdiException e) {
-      throw new SAXException(e);
+    if (type == Type.ELEMENT || type == Type.SUBELEMENT) {
+      text.append(arg0, arg1, arg2);
     }
   }
 
@@ -70,14 +58,15 @@ public class XmlEdiWriter implements ContentHandler {
       } else if (localName.equals(EdiXmlAdapter.LOOP_ELEMENT)) {
         loopSegments.pop();
       } else if (localName.equals(EdiXmlAdapter.ELEMENT_ELEMENT)) {
-        if (isEmptyElement) {
-          writer.startElement("");
-        }
+        writeElement();
         writer.endElement();
+        type = Type.SEGMENT;
       } else if (localName.equals(EdiXmlAdapter.SUBELEMENT_ELEMENT)) {
-        if (isEmptySubElement) {
-          writer.subElement("");
-        }
+        hasSegmentContents |= text.length() > 0;
+        writer.subElement(text.toString());
+        text.setLength(0);
+        // Text between sub-elements is ignored.
+        type = Type.ELEMENT;
       }
     } catch (final EdiException e) {
       throw new SAXException(e);
@@ -136,10 +125,16 @@ public class XmlEdiWriter implements ContentHandler {
           startedLoopSegment = true;
         }
       } else if (localName.equals(EdiXmlAdapter.ELEMENT_ELEMENT)) {
-        isEmptyElement = true;
+        text.setLength(0);
+        wroteElement = false;
         newType = Type.ELEMENT;
       } else if (localName.equals(EdiXmlAdapter.SUBELEMENT_ELEMENT)) {
-        isEmptySubElement = true;
+        try {
+          writeElement();
+        } catch (final EdiException e) {
+          throw new SAXException(e);
+        }
+        text.setLength(0);
         newType = Type.SUBELEMENT;
       } else {
         newType = Type.UNKNOWN;
@@ -158,4 +153,14 @@ public class XmlEdiWriter implements ContentHandler {
   public void startPrefixMapping(String arg0, String arg1) throws SAXException {
   }
 
+  /** Writes the current element's first component, once, from the text seen so far. */
+  private void writeElement() throws EdiException {
+    if (!wroteElement) {
+      hasSegmentContents |= text.length() > 0;
+      writer.startElement(text.toString());
+      text.setLength(0);
+      wroteElement = true;
+    }
+  }
+
 }
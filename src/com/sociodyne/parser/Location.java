@@ -1,14 +1,43 @@
 // Copyright 2011, Sociodyne LLC. All rights reserved.
 package com.sociodyne.parser;
 
+/**
+ * A position in a parser's input: an absolute offset, the ordinal of the current segment, and the
+ * line and character derived from the offset.
+ *
+ * <p>
+ * Tokenizers do not report every character. Instead they register a {@link Resolver}, which
+ * supplies the offset and computes the line and character only when they are asked for, typically
+ * when an error is reported. {@link #copyOf(Location)} takes a resolved snapshot.
+ */
 public class Location {
 
+  /** Computes a location's line and character from its offset on demand. */
+  public interface Resolver {
+
+    /** Returns the offset of the next unread character. */
+    long getOffset();
+
+    /**
+     * Sets the line and character of {@code location} to those of the next unread character, by
+     * calling {@link Location#setLineAndChar}.
+     */
+    void resolve(Location location);
+  }
+
   int line;
   int character;
+  private long offset;
+  private int segment;
+  private Resolver resolver;
 
   public Location() {
   }
 
+  public void setResolver(Resolver resolver) {
+    this.resolver = resolver;
+  }
+
   public void nextLine() {
     line++;
     character = 0;
@@ -18,25 +47,58 @@ public class Location {
     character++;
   }
 
+  /** Called by tokenizers at the end of every segment. */
+  public void nextSegment() {
+    segment++;
+  }
+
+  public void setLineAndChar(int line, int character) {
+    this.line = line;
+    this.character = character;
+  }
+
   public int getLine() {
+    resolve();
     return line;
   }
 
   public int getChar() {
+    resolve();
     return character;
   }
 
+  /** Returns the absolute offset of the next unread character. */
+  public long getOffset() {
+    return resolver != null ? resolver.getOffset() : offset;
+  }
+
+  /** Returns the number of segments terminated so far. */
+  public int getSegment() {
+    return segment;
+  }
+
+  private void resolve() {
+    if (resolver != null) {
+      resolver.resolve(this);
+    }
+  }
+
   @Override
   public String toString() {
+    resolve();
     final StringBuffer locationBuffer = new StringBuffer();
     locationBuffer.append("line ").append(line).append(", character ").append(character);
     return locationBuffer.toString();
   }
 
+  /** Returns a snapshot of {@code location}, with its line and character resolved. */
   public static Location copyOf(Location location) {
+    location.resolve();
     final Location newLocation = new Location();
     newLocation.character = location.character;
     newLocation.line = location.line;
+    newLocation.offset = location.getOffset();
+    newLocation.segment = location.segment;
     return newLocation;
   }
 }
@@ -0,0 +1,41 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi;
+
+import junit.framework.TestCase;
+
+public class ConfigurationTest extends TestCase {
+
+  public void testCompile_classifiesSeparators() throws Exception {
+    final CompiledConfiguration compiled = Configuration.builder().setSegmentTerminator('~')
+        .setElementSeparator('*').setSubElementSeparator(':').setRepetitionSeparator('^').build()
+        .compile();
+
+    assertEquals(CompiledConfiguration.SEGMENT, compiled.classOf('~'));
+    assertEquals(CompiledConfiguration.ELEMENT, compiled.classOf('*'));
+    assertEquals(CompiledConfiguration.SUBELEMENT, compiled.classOf(':'));
+    assertEquals(CompiledConfiguration.REPETITION, compiled.classOf('^'));
+    assertEquals(CompiledConfiguration.WORD, compiled.classOf('A'));
+    assertEquals(CompiledConfiguration.WORD, compiled.classOf('\u2603'));
+    assertFalse("Repetition separators are part of words", compiled.isWordTerminal('^'));
+  }
+
+  public void testCompile_beforeSubElementSeparator_unassigned() throws Exception {
+    final CompiledConfiguration compiled = Configuration.builder().build().compile();
+
+    assertFalse(compiled.hasSubElementSeparator());
+    assertEquals(CompiledConfiguration.UNASSIGNED, compiled.getSubElementSeparator());
+    assertEquals(CompiledConfiguration.WORD, compiled.classOf(':'));
+  }
+
+  public void testCompile_cachedUntilSubElementSeparatorAssigned() throws Exception {
+    final Configuration configuration = Configuration.builder().build();
+    final CompiledConfiguration beforeIsa = configuration.compile();
+    assertSame(beforeIsa, configuration.compile());
+
+    configuration.setSubElementSeparator(':');
+    final CompiledConfiguration afterIsa = configuration.compile();
+    assertNotSame(beforeIsa, afterIsa);
+    assertEquals(CompiledConfiguration.SUBELEMENT, afterIsa.classOf(':'));
+    assertEquals(CompiledConfiguration.WORD, beforeIsa.classOf(':'));
+  }
+}
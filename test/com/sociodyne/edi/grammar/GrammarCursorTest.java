@@ -0,0 +1,67 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.parser.SegmentIdentifiers;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class GrammarCursorTest extends TestCase {
+
+  private static final String GRAMMAR = "transaction 999\n"
+      + "ST\n"
+      + "loop 1000 >1\n"
+      + "  HL03=20\n"
+      + "  loop 2000 >1\n"
+      + "    HL03=22\n"
+      + "    REF 9\n"
+      + "SE\n";
+
+  public void testAdvance_reportsLoops() throws Exception {
+    final GrammarCursor cursor = new GrammarCursor(Grammar.load(new StringReader(GRAMMAR)));
+    assertEquals(0, cursor.qualifierElement(SegmentIdentifiers.ST));
+    cursor.advance(SegmentIdentifiers.ST, null);
+    assertEquals(0, cursor.getEndLoops());
+    assertNull(cursor.getStartLoop());
+
+    assertEquals(3, cursor.qualifierElement(SegmentIdentifiers.HL));
+    cursor.advance(SegmentIdentifiers.HL, "20");
+    assertEquals("1000", cursor.getStartLoop());
+    cursor.advance(SegmentIdentifiers.HL, "22");
+    assertEquals("2000", cursor.getStartLoop());
+    assertEquals("2000", cursor.getLoopName());
+    cursor.advance(SegmentIdentifiers.code("REF"), null);
+    assertNull(cursor.getStartLoop());
+
+    cursor.advance(SegmentIdentifiers.HL, "20");
+    assertEquals(2, cursor.getEndLoops());
+    assertEquals("1000", cursor.getStartLoop());
+    cursor.advance(SegmentIdentifiers.SE, null);
+    assertEquals(1, cursor.getEndLoops());
+    assertNull(cursor.getStartLoop());
+  }
+
+  public void testQualifierElement_segmentNotAllowed_throws() throws Exception {
+    final GrammarCursor cursor = new GrammarCursor(Grammar.load(new StringReader(GRAMMAR)));
+    cursor.advance(SegmentIdentifiers.ST, null);
+    try {
+      cursor.qualifierElement(SegmentIdentifiers.code("REF"));
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("REF"));
+    }
+  }
+
+  public void testAdvance_qualifierNotAllowed_throws() throws Exception {
+    final GrammarCursor cursor = new GrammarCursor(Grammar.load(new StringReader(GRAMMAR)));
+    cursor.advance(SegmentIdentifiers.ST, null);
+    try {
+      cursor.advance(SegmentIdentifiers.HL, "22");
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("22"));
+    }
+  }
+}
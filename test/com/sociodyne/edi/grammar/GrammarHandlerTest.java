@@ -0,0 +1,157 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.parser.EdiEventBuffer;
+import com.sociodyne.edi.parser.EdiHandler;
+import com.sociodyne.edi.parser.PushEdiParser;
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class GrammarHandlerTest extends TestCase {
+
+  public void testOxford271_hlLoopsNested() throws Exception {
+    final String events = parse(SampleDocuments.OXFORD_271);
+    assertTrue(events, events.contains("[ST(271)(000002624)][BHT(0022)(11)(000002624)"
+        + "(20100413)(0219)]<2000A [HL(1)()(20)(1)]<2100A [NM1(PR)"));
+    assertTrue(events, events.contains("]><2000B [HL(2)(1)(21)(1)]"));
+    assertTrue(events, events.contains("<2000C [HL(3)(2)(22)(0)][TRN"));
+    // A subscriber directly following another closes 2110C, 2100C and 2000C.
+    assertTrue(events, events.contains("]>>><2000C [HL(4)(2)(22)(0)]"));
+    assertTrue(events, events.contains("]><2000D [HL(8)(7)(23)(0)]<2100D [NM1(03)"));
+    // 2110D through 2000A close before the next information source.
+    assertTrue(events, events.contains("]>>>>>><2000A [HL(9)()(20)(1)]"));
+    assertTrue(events, events.contains("[LS(2120)]<2120C [NM1(P3)"));
+    assertTrue(events, events.contains("]>[LE(2120)]>"));
+    assertTrue(events, events.endsWith("]>>>>>[SE(314)(000002624)][GE(1)(1)]"
+        + "[IEA(1)(240140919)]"));
+    assertEquals(EdiTestHelper.count(events, '<'), EdiTestHelper.count(events, '>'));
+  }
+
+  public void testCms271_loopsBalanced() throws Exception {
+    final String events = parse(SampleDocuments.CMS_271);
+    assertTrue(events, events.contains("<2110C [EB(D)(IND)()(MB)()()()()()()()()(HC{G0389})]"));
+    assertTrue(events, events.contains("[LS(2120)]<2120C [NM1(PR)(2)(ABCHEALTHPLAN)][N3"));
+    assertEquals(EdiTestHelper.count(events, '<'), EdiTestHelper.count(events, '>'));
+  }
+
+  public void testUnknownTransactionSet_passedThroughWithoutLoops() throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final GrammarHandler handler = new GrammarHandler(output);
+    segment(handler, "ST", "999", "1");
+    segment(handler, "HL", "1", "", "20");
+    segment(handler, "SE", "3", "1");
+    assertEquals("[ST(999)(1)][HL(1)()(20)][SE(3)(1)]", output.toString());
+  }
+
+  public void test837_grammarSelectedByGroupVersion() throws Exception {
+    assertEquals("[ST(837)(1)]<1000A [NM1(41)]>[SE(3)(1)]", parse837("004010X098A1", null));
+    assertEquals("[ST(837)(1)][NM1(41)][SE(3)(1)]", parse837("004010X096A1", null));
+  }
+
+  public void test837_transactionSetVersionOverridesGroup() throws Exception {
+    assertEquals("[ST(837)(1)(004010X098A1)]<1000A [NM1(41)]>[SE(3)(1)]", parse837(
+        "004010X096A1", "004010X098A1"));
+    assertEquals("[ST(837)(1)(005010X222A1)][NM1(41)][SE(3)(1)]", parse837("004010X098A1",
+        "005010X222A1"));
+  }
+
+  public void testSegmentNotInGrammar_throws() throws Exception {
+    final GrammarHandler handler = new GrammarHandler(new EdiEventBuffer());
+    segment(handler, "ST", "271", "1");
+    try {
+      segment(handler, "EB", "1");
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("EB"));
+    }
+  }
+
+  public void testQualifierNotInGrammar_throws() throws Exception {
+    final GrammarHandler handler = new GrammarHandler(new EdiEventBuffer());
+    segment(handler, "ST", "271", "1");
+    segment(handler, "BHT", "0022");
+    try {
+      segment(handler, "HL", "1", "", "99");
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("99"));
+    }
+  }
+
+  public void testCheck_rejectsWithoutMoving() throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final GrammarHandler handler = new GrammarHandler(output);
+    segment(handler, "ST", "271", "1");
+    segment(handler, "BHT", "0022");
+
+    final EdiEventBuffer segment = new EdiEventBuffer();
+    segment(segment, "ZZZ", "1");
+    try {
+      handler.check(segment);
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("ZZZ"));
+    }
+    segment.clear();
+    segment(segment, "HL", "1", "", "99");
+    try {
+      handler.check(segment);
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("99"));
+    }
+    segment.clear();
+    segment(segment, "HL", "1", "", "20");
+    handler.check(segment);
+
+    output.clear();
+    segment.replay(handler);
+    assertEquals("<2000A [HL(1)()(20)]", output.toString());
+  }
+
+  /**
+   * Parses an 837 with only a submitter name, in a group of version {@code groupVersion}, and
+   * returns the events of the transaction set.
+   */
+  private static String parse837(String groupVersion, String transactionSetVersion)
+      throws EdiException {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final GrammarHandler handler = new GrammarHandler(output);
+    segment(handler, "GS", "HC", "A", "B", "20100413", "0219", "1", "X", groupVersion);
+    output.clear();
+    if (transactionSetVersion == null) {
+      segment(handler, "ST", "837", "1");
+    } else {
+      segment(handler, "ST", "837", "1", transactionSetVersion);
+    }
+    segment(handler, "NM1", "41");
+    segment(handler, "SE", "3", "1");
+    return output.toString();
+  }
+
+  private static void segment(EdiHandler handler, String identifier, String... elements)
+      throws EdiException {
+    handler.startSegment(identifier);
+    for (final String element : elements) {
+      handler.startElement(element);
+      handler.endElement();
+    }
+    handler.endSegment();
+  }
+
+  private static String parse(String document) throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final PushEdiParser parser = new PushEdiParser(configuration, new GrammarHandler(output));
+    parser.feed(ByteBuffer.wrap(document.getBytes("US-ASCII")));
+    parser.finish();
+    return output.toString();
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.grammar;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.parser.SegmentIdentifiers;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+public class GrammarTest extends TestCase {
+
+  private static final String GRAMMAR = "# A comment\n"
+      + "transaction 999\n"
+      + "ST\n"
+      + "loop 1000 >1\n"
+      + "  HL03=20\n"
+      + "  NM1  # trailing comment\n"
+      + "  loop 2000 >1\n"
+      + "    HL03=21|22\n"
+      + "    REF 9\n"
+      + "SE\n";
+
+  public void testLoad_compilesOneStatePerSegment() throws Exception {
+    final Grammar grammar = load(GRAMMAR);
+    assertEquals("999", grammar.getTransactionSetId());
+    // The start state, plus ST, HL, NM1, HL, REF and SE
+    assertEquals(7, grammar.getStateCount());
+    assertEquals(3, grammar.qualifierElement(SegmentIdentifiers.HL));
+    assertEquals(0, grammar.qualifierElement(SegmentIdentifiers.code("NM1")));
+  }
+
+  public void testTransitions_startsAndEndsLoops() throws Exception {
+    final Grammar grammar = load(GRAMMAR);
+    final int st = follow(grammar, Grammar.START, "ST", null, 0, null);
+    final int hl1000 = follow(grammar, st, "HL", "20", 0, "1000");
+    final int nm1 = follow(grammar, hl1000, "NM1", null, 0, null);
+    final int hl2000 = follow(grammar, nm1, "HL", "22", 0, "2000");
+    final int ref = follow(grammar, hl2000, "REF", null, 0, null);
+    assertEquals(ref, follow(grammar, ref, "REF", null, 0, null));
+    // Another 2000, then another 1000
+    assertEquals(hl2000, follow(grammar, ref, "HL", "21", 1, "2000"));
+    assertEquals(hl1000, follow(grammar, ref, "HL", "20", 2, "1000"));
+    assertEquals("2000", grammar.loopName(ref));
+    follow(grammar, ref, "SE", null, 2, null);
+  }
+
+  public void testTransitions_outOfOrder_none() throws Exception {
+    final Grammar grammar = load(GRAMMAR);
+    final int st = follow(grammar, Grammar.START, "ST", null, 0, null);
+    assertNull(grammar.transitions(st, SegmentIdentifiers.code("NM1")));
+    assertNull(grammar.transitions(st, SegmentIdentifiers.code("EB")));
+  }
+
+  public void testLoad_use_copiesLoop() throws Exception {
+    final Grammar grammar = load("transaction 999\nST\nloop A\n  N1\n  N3\nloop B\n  LX\n"
+        + "  use A\nSE\n");
+    final int st = follow(grammar, Grammar.START, "ST", null, 0, null);
+    final int lx = follow(grammar, st, "LX", null, 0, "B");
+    final int n1 = follow(grammar, lx, "N1", null, 0, "A");
+    assertEquals("A", grammar.loopName(n1));
+    assertEquals(8, grammar.getStateCount());
+  }
+
+  public void testLoad_syntaxErrors_reportLine() throws Exception {
+    assertLoadFails("ST\n", "Grammar line 1");
+    assertLoadFails("transaction 999\nST\nloop A\n", "Loop A must start");
+    assertLoadFails("transaction 999\nST\n  BHT\n", "Grammar line 3: Inconsistent");
+    assertLoadFails("transaction 999\nST 0\n", "Invalid maximum use");
+    assertLoadFails("transaction 999\nst\n", "Invalid segment");
+    assertLoadFails("transaction 999\nuse A\n", "not defined");
+    assertLoadFails("transaction 999\nloop A\n  HL03=1\nloop B\n  HL01=1\n", "more than one");
+  }
+
+  public void testForTransactionSet_builtInGrammarsLoad() throws Exception {
+    for (final String id : new String[] { "270", "271", "276", "277", "835" }) {
+      final Grammar grammar = Grammar.forTransactionSet(id);
+      assertNotNull(id, grammar);
+      assertEquals(id, grammar.getTransactionSetId());
+      assertSame(grammar, Grammar.forTransactionSet(id));
+    }
+    assertNull(Grammar.forTransactionSet("999"));
+  }
+
+  public void testForTransactionSet_version_selectsVersionedGrammar() throws Exception {
+    final Grammar professional = Grammar.forTransactionSet("837", "004010X098A1");
+    assertNotNull(professional);
+    assertEquals("837", professional.getTransactionSetId());
+    // The Institutional guide, and an 837 of unknown version, have no grammar.
+    assertNull(Grammar.forTransactionSet("837", "004010X096A1"));
+    assertNull(Grammar.forTransactionSet("837", null));
+    assertNull(Grammar.forTransactionSet("837"));
+    // Without a grammar for the version, the one for every version applies.
+    assertSame(Grammar.forTransactionSet("271"), Grammar.forTransactionSet("271", "004010X092A1"));
+    assertSame(Grammar.forTransactionSet("271"), Grammar.forTransactionSet("271", ""));
+  }
+
+  private static int follow(Grammar grammar, int state, String segment, String qualifier,
+      int endLoops, String startLoop) {
+    final Transition[] transitions = grammar.transitions(state,
+        SegmentIdentifiers.code(segment));
+    assertNotNull(segment, transitions);
+    for (final Transition transition : transitions) {
+      if (transition.accepts(qualifier)) {
+        assertEquals(segment, endLoops, transition.endLoops);
+        assertEquals(segment, startLoop, transition.startLoop);
+        return transition.target;
+      }
+    }
+    fail("No transition for " + segment + " " + qualifier);
+    return -1;
+  }
+
+  private static Grammar load(String text) throws Exception {
+    return Grammar.load(new StringReader(text));
+  }
+
+  private static void assertLoadFails(String text, String message) throws Exception {
+    try {
+      load(text);
+      fail("Expected EdiException for " + text);
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+}
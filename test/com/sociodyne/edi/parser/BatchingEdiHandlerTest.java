@@ -0,0 +1,128 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class BatchingEdiHandlerTest extends TestCase {
+
+  public void testEndSegment_deliversFullBlocks() throws Exception {
+    final RecordingBatchHandler batches = new RecordingBatchHandler();
+    final BatchingEdiHandler handler = new BatchingEdiHandler(batches, 2);
+    segment(handler, "ST");
+    handler.startLoop("HL");
+    segment(handler, "HL");
+    assertEquals(1, batches.blocks.size());
+    segment(handler, "NM1");
+    handler.endLoop();
+    assertEquals(1, batches.blocks.size());
+
+    handler.flush();
+    assertEquals(2, batches.blocks.size());
+    assertEquals("[ST(1)]<HL [HL(1)]", batches.blocks.get(0));
+    assertEquals("[NM1(1)]>", batches.blocks.get(1));
+  }
+
+  public void testFlush_nothingRecorded_deliversNothing() throws Exception {
+    final RecordingBatchHandler batches = new RecordingBatchHandler();
+    final BatchingEdiHandler handler = new BatchingEdiHandler(batches, 2);
+    handler.flush();
+    segment(handler, "ST");
+    segment(handler, "SE");
+    handler.flush();
+    assertEquals(1, batches.blocks.size());
+  }
+
+  public void testBatch_readInPlace() throws Exception {
+    final List<Integer> codes = new ArrayList<Integer>();
+    final BatchingEdiHandler handler = new BatchingEdiHandler(new BatchEdiHandler() {
+      public void handleBatch(EdiEventBuffer batch) {
+        for (int i = 0; i < batch.size(); i++) {
+          if (batch.getType(i) == EdiEventBuffer.START_SEGMENT) {
+            codes.add(batch.getSegmentCode(i));
+          }
+        }
+      }
+    }, 1);
+    segment(handler, "ST");
+    segment(handler, "SE");
+    assertEquals(2, codes.size());
+    assertEquals(SegmentIdentifiers.ST, codes.get(0).intValue());
+    assertEquals(SegmentIdentifiers.SE, codes.get(1).intValue());
+  }
+
+  public void testAdapter_sameEventsAsDirectParse() throws Exception {
+    final EdiEventBuffer direct = new EdiEventBuffer();
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, direct);
+
+    final EdiEventBuffer adapted = new EdiEventBuffer();
+    final BatchingEdiHandler handler = new BatchingEdiHandler(new BatchEdiHandlerAdapter(
+        adapted), 5);
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, handler);
+    handler.flush();
+    assertEquals(direct.toString(), adapted.toString());
+  }
+
+  public void testPullParser_writesBufferDirectly() throws Exception {
+    final EdiEventBuffer direct = new EdiEventBuffer();
+    pullParse(SampleDocuments.CMS_271, direct);
+
+    final StringBuilder batches = new StringBuilder();
+    final List<Integer> codes = new ArrayList<Integer>();
+    final BatchingEdiHandler handler = new BatchingEdiHandler(new BatchEdiHandler() {
+      public void handleBatch(EdiEventBuffer batch) {
+        batches.append(batch);
+        for (int i = 0; i < batch.size(); i++) {
+          if (batch.getType(i) == EdiEventBuffer.START_SEGMENT) {
+            codes.add(batch.getSegmentCode(i));
+          }
+        }
+      }
+    }, 3);
+    pullParse(SampleDocuments.CMS_271, handler);
+    handler.flush();
+
+    assertEquals(direct.toString(), batches.toString());
+    assertTrue(batches.toString(), batches.indexOf("(HC{G0389})") > 0);
+    assertEquals(SegmentIdentifiers.ISA, codes.get(0).intValue());
+    assertEquals(SegmentIdentifiers.GS, codes.get(1).intValue());
+    assertEquals(SegmentIdentifiers.IEA, codes.get(codes.size() - 1).intValue());
+  }
+
+  private static void segment(EdiHandler handler, String segmentIdentifier) throws EdiException {
+    handler.startSegment(segmentIdentifier);
+    handler.startElement("1");
+    handler.endElement();
+    handler.endSegment();
+  }
+
+  private static void pullParse(String document, EdiHandler handler) throws Exception {
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new ByteBufferTokenizer(ByteBuffer.wrap(document
+        .getBytes("US-ASCII")), configuration, fileLocation);
+    final EdiLocation location = new EdiLocation(fileLocation, "ISA", 0);
+    EdiXmlReader.parseIsa(tokenizer, configuration, location, handler,
+        ParserFactories.segmentParsers());
+    ParserFactories.segmentListParsers().create(location, tokenizer, handler).parse(
+        tokenizer.nextToken());
+  }
+
+  private static class RecordingBatchHandler implements BatchEdiHandler {
+    final List<String> blocks = new ArrayList<String>();
+
+    public void handleBatch(EdiEventBuffer batch) {
+      blocks.add(batch.toString());
+    }
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.Mock;
+import com.sociodyne.test.MockTest;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+
+public class BufferedTokenizerTest extends MockTest {
+
+  @Mock(Mock.Type.NICE)
+  Location location;
+
+  Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+      .setElementSeparator(':').setSubElementSeparator('|').build();
+
+  private static final String CONTENTS_WITH_NEWLINES = "ab~\ncd:ef\ngh~x";
+
+  public void testReadSegmentTerminator() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("~");
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadWord_eofOkay_nextTokenEof() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("abc");
+    assertEquals(Token.word("abc"), tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadSegment_withSubElements_succeeds() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("abc:def|ghi~");
+    assertEquals(Token.word("abc"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("def"), tokenizer.nextToken());
+    assertEquals(Token.SUB_ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("ghi"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadWord_straddlesBuffer_succeeds() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = new BufferedTokenizer(readerFor("ab:cdefghij~k"), configuration,
+        location, 4);
+    assertEquals(Token.word("ab"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("cdefghij"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertEquals(Token.word("k"), tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadWord_recyclesToken() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("abc:def");
+    final Token first = tokenizer.nextToken();
+    assertEquals("abc", first.getContents().toString());
+    tokenizer.nextToken();
+    final Token second = tokenizer.nextToken();
+    assertSame(first, second);
+    assertEquals("def", second.getValue());
+  }
+
+  private Tokenizer tokenizerFor(String contents) {
+    return new BufferedTokenizer(readerFor(contents), configuration, location);
+  }
+
+  public void testSkipSegment_acrossBuffers_positionedAfterTerminator() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new BufferedTokenizer(readerFor("ab:cdefgh|ij~kl~mn"),
+        configuration, fileLocation, 4);
+    assertEquals(Token.word("ab"), tokenizer.nextToken());
+    assertTrue(tokenizer.skipSegment());
+    assertEquals(1, fileLocation.getSegment());
+    assertEquals(Token.word("kl"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertFalse(tokenizer.skipSegment());
+  }
+
+  public void testLocation_resolvedFromOffset() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new BufferedTokenizer(readerFor(CONTENTS_WITH_NEWLINES),
+        configuration, fileLocation, 4);
+    for (int i = 0; i < 5; i++) {
+      tokenizer.nextToken();
+    }
+    assertEquals(12, fileLocation.getOffset());
+    assertEquals(1, fileLocation.getSegment());
+    assertEquals(2, fileLocation.getLine());
+    assertEquals(2, fileLocation.getChar());
+
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertEquals(2, fileLocation.getSegment());
+    assertEquals(3, Location.copyOf(fileLocation).getChar());
+  }
+
+  private static Reader readerFor(String contents) {
+    return new CharArrayReader(contents.toCharArray());
+  }
+}
@@ -0,0 +1,131 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.Mock;
+import com.sociodyne.test.MockTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+public class ByteBufferTokenizerTest extends MockTest {
+
+  @Mock(Mock.Type.NICE)
+  Location location;
+
+  Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+      .setElementSeparator(':').setSubElementSeparator('|').build();
+
+  private static final String CONTENTS_WITH_NEWLINES = "ab~\ncd:ef\ngh~x";
+
+  public void testReadSegmentTerminator() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("~");
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadWord_eofOkay_nextTokenEof() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("abc");
+    assertEquals(Token.word("abc"), tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadSegment_withSubElements_succeeds() throws Exception {
+    replay();
+
+    assertSegmentWithSubElements(tokenizerFor("abc:def|ghi~"));
+  }
+
+  public void testReadSegment_directBuffer_succeeds() throws Exception {
+    replay();
+
+    final byte[] bytes = "abc:def|ghi~".getBytes("US-ASCII");
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    assertSegmentWithSubElements(new ByteBufferTokenizer(direct, configuration, location));
+  }
+
+  public void testReadSegment_fromChannel_wordsStraddleWindows() throws Exception {
+    replay();
+
+    final ByteArrayInputStream is = new ByteArrayInputStream("abc:def|ghi~".getBytes("US-ASCII"));
+    assertSegmentWithSubElements(new ByteBufferTokenizer(Channels.newChannel(is), configuration,
+        location, 2));
+  }
+
+  public void testReadWord_highBitCharacter_decodedAsIso88591() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = new ByteBufferTokenizer(ByteBuffer.wrap(new byte[] { 'a',
+        (byte) 0xe9 }), configuration, location);
+    assertEquals("a\u00e9", tokenizer.nextToken().getValue());
+  }
+
+  public void testReadWord_longFreeText_succeeds() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("MSG:THIS IS A LONG FREE TEXT MESSAGE~");
+    assertEquals(Token.word("MSG"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("THIS IS A LONG FREE TEXT MESSAGE"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+  }
+
+  private void assertSegmentWithSubElements(Tokenizer tokenizer) throws Exception {
+    assertEquals(Token.word("abc"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("def"), tokenizer.nextToken());
+    assertEquals(Token.SUB_ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("ghi"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testSkipSegment_acrossWindows_positionedAfterTerminator() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final ByteArrayInputStream is = new ByteArrayInputStream(
+        "ab:cdefgh|ij~kl~mn".getBytes("US-ASCII"));
+    final Tokenizer tokenizer = new ByteBufferTokenizer(Channels.newChannel(is), configuration,
+        fileLocation, 4);
+    assertEquals(Token.word("ab"), tokenizer.nextToken());
+    assertTrue(tokenizer.skipSegment());
+    assertEquals(1, fileLocation.getSegment());
+    assertEquals(Token.word("kl"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertFalse(tokenizer.skipSegment());
+  }
+
+  public void testLocation_resolvedFromOffset() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final ByteArrayInputStream is = new ByteArrayInputStream(
+        CONTENTS_WITH_NEWLINES.getBytes("US-ASCII"));
+    final Tokenizer tokenizer = new ByteBufferTokenizer(Channels.newChannel(is), configuration,
+        fileLocation, 4);
+    for (int i = 0; i < 5; i++) {
+      tokenizer.nextToken();
+    }
+    assertEquals(12, fileLocation.getOffset());
+    assertEquals(1, fileLocation.getSegment());
+    assertEquals(2, fileLocation.getLine());
+    assertEquals(2, fileLocation.getChar());
+
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertEquals(2, fileLocation.getSegment());
+    assertEquals(3, Location.copyOf(fileLocation).getChar());
+  }
+
+  private Tokenizer tokenizerFor(String contents) throws Exception {
+    return new ByteBufferTokenizer(ByteBuffer.wrap(contents.getBytes("US-ASCII")), configuration,
+        location);
+  }
+}
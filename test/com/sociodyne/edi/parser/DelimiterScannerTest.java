@@ -0,0 +1,67 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class DelimiterScannerTest extends TestCase {
+
+  private final DelimiterScanner scanner = new DelimiterScanner('~', '*', ':');
+
+  public void testIndexOf_noStop_returnsEnd() throws Exception {
+    final ByteBuffer buffer = bufferOf("ABCDEFGHIJKLMNOPQRS");
+    assertEquals(19, scanner.indexOf(buffer, 0, 19));
+    assertEquals(10, scanner.indexOf(buffer, 3, 10));
+  }
+
+  public void testIndexOf_stopInEveryLane_bigAndLittleEndian() throws Exception {
+    final ByteOrder[] orders = new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+    for (final ByteOrder order : orders) {
+      for (int lane = 0; lane < 16; lane++) {
+        final byte[] bytes = "ABCDEFGHIJKLMNOPQRSTU".getBytes("US-ASCII");
+        bytes[lane] = '*';
+        bytes[lane + 2] = '~';
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+        assertEquals("lane " + lane + " " + order, lane, scanner.indexOf(buffer, 0, bytes.length));
+      }
+    }
+  }
+
+  public void testIndexOf_highBitNeighbours_noFalseMatches() throws Exception {
+    // 0xFE differs from '~' (0x7E) only in the high bit.
+    final byte[] bytes = new byte[] { (byte) 0xfe, (byte) 0xaa, (byte) 0xba, 0, 1, (byte) 0x80,
+        (byte) 0xff, (byte) 0xfe, (byte) 0xfe, '~' };
+    assertEquals(9, scanner.indexOf(ByteBuffer.wrap(bytes), 0, bytes.length));
+  }
+
+  public void testIndexOf_unassignedStopIgnored() throws Exception {
+    final DelimiterScanner twoStops = new DelimiterScanner('~', -1, '*');
+    assertEquals(3, twoStops.indexOf(bufferOf("ABC*~"), 0, 5));
+  }
+
+  public void testIndexOf_matchesScalarSearch() throws Exception {
+    final Random random = new Random(271);
+    final byte[] alphabet = "AB~*:\u00fe".getBytes("ISO-8859-1");
+    for (int trial = 0; trial < 500; trial++) {
+      final byte[] bytes = new byte[random.nextInt(40)];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = random.nextInt(4) == 0 ? alphabet[random.nextInt(alphabet.length)]
+            : (byte) ('A' + random.nextInt(26));
+      }
+      final int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+      int expected = from;
+      while (expected < bytes.length && bytes[expected] != '~' && bytes[expected] != '*'
+          && bytes[expected] != ':') {
+        expected++;
+      }
+      assertEquals(expected, scanner.indexOf(ByteBuffer.wrap(bytes), from, bytes.length));
+    }
+  }
+
+  private static ByteBuffer bufferOf(String contents) throws Exception {
+    return ByteBuffer.wrap(contents.getBytes("US-ASCII"));
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import junit.framework.TestCase;
+
+public class EdiEventBufferTest extends TestCase {
+
+  public void testReplay_sameEventsInOrder() throws Exception {
+    final EdiEventBuffer buffer = new EdiEventBuffer(2);
+    record(buffer);
+    assertEquals(7, buffer.size());
+
+    final EdiEventBuffer copy = new EdiEventBuffer();
+    buffer.replay(copy);
+    assertEquals("<HL [EB(D){G0389}]>", copy.toString());
+    assertEquals(buffer.toString(), copy.toString());
+  }
+
+  public void testClear_reusable() throws Exception {
+    final EdiEventBuffer buffer = new EdiEventBuffer();
+    record(buffer);
+    buffer.clear();
+    assertTrue(buffer.isEmpty());
+    assertEquals("", buffer.toString());
+
+    buffer.startSegment("SE");
+    buffer.endSegment();
+    assertEquals("[SE]", buffer.toString());
+  }
+
+  public void testGetters_readEventsInPlace() throws Exception {
+    final EdiEventBuffer buffer = new EdiEventBuffer();
+    record(buffer);
+    assertEquals(EdiEventBuffer.START_LOOP, buffer.getType(0));
+    assertEquals(SegmentIdentifiers.HL, buffer.getSegmentCode(0));
+    assertEquals(EdiEventBuffer.START_SEGMENT, buffer.getType(1));
+    assertEquals("EB", buffer.getValue(1));
+    assertEquals(EdiEventBuffer.SUB_ELEMENT, buffer.getType(4));
+    assertEquals("G0389", buffer.getValue(4));
+    assertEquals(SegmentIdentifiers.NONE, buffer.getSegmentCode(4));
+    assertNull(buffer.getValue(5));
+
+    buffer.startSegment("NM1", 42);
+    assertEquals(42, buffer.getSegmentCode(7));
+    try {
+      buffer.getType(8);
+      fail("Expected IndexOutOfBoundsException");
+    } catch (final IndexOutOfBoundsException e) {
+      // Expected
+    }
+  }
+
+  private static void record(EdiHandler handler) throws Exception {
+    handler.startLoop("HL");
+    handler.startSegment("EB");
+    handler.startElement("D");
+    handler.endElement();
+    handler.subElement("G0389");
+    handler.endSegment();
+    handler.endLoop();
+  }
+}
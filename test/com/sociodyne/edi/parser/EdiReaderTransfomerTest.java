@@ -1,8 +1,14 @@
 // Copyright 2011, Sociodyne LLC. All rights reserved.
 package com.sociodyne.edi.parser;
 
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.transform.OutputKeys;
@@ -13,6 +19,8 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -26,6 +34,9 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
 
 public class EdiReaderTransfomerTest extends TestCase {
 
@@ -135,4 +146,340 @@ public class EdiReaderTransfomerTest extends TestCase {
         XPathConstants.NODESET);
     assertEquals(3, nl.getLength());
   }
+
+  public void testParseComplexDocument_bufferedTokenizer_succeeds() throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.BUFFERED_TOKENIZER_FEATURE, true);
+    final ByteArrayInputStream is = new ByteArrayInputStream(SampleDocuments.OXFORD_271.getBytes());
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(is)), output);
+    final XPathExpression testAllHlSegments = xpath.compile("/edi:edi//edi:loop[@type = 'HL']");
+    final NodeList nl = (NodeList) testAllHlSegments.evaluate(output.getNode(),
+        XPathConstants.NODESET);
+    assertEquals(17, nl.getLength());
+  }
+
+  public void testParseComplexDocument_singleByteInput_succeeds() throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.SINGLE_BYTE_INPUT_FEATURE, true);
+    final ByteArrayInputStream is = new ByteArrayInputStream(SampleDocuments.OXFORD_271.getBytes());
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(is)), output);
+    final XPathExpression testAllHlSegments = xpath.compile("/edi:edi//edi:loop[@type = 'HL']");
+    final NodeList nl = (NodeList) testAllHlSegments.evaluate(output.getNode(),
+        XPathConstants.NODESET);
+    assertEquals(17, nl.getLength());
+  }
+
+  public void testParseComplexDocument_grammar_nestsLoopsByImplementationGuide()
+      throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.GRAMMAR_FEATURE, true);
+    final ByteArrayInputStream is = new ByteArrayInputStream(SampleDocuments.OXFORD_271.getBytes());
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(is)), output);
+    final XPathExpression testSubscribers = xpath.compile("/edi:edi/edi:loop[@type = '2000A']"
+        + "/edi:loop[@type = '2000B']/edi:loop[@type = '2000C']");
+    assertEquals(10, ((NodeList) testSubscribers.evaluate(output.getNode(),
+        XPathConstants.NODESET)).getLength());
+    final XPathExpression testDependents = xpath
+        .compile("//edi:loop[@type = '2000C']/edi:loop[@type = '2000D']/edi:segment[1]");
+    final NodeList nl = (NodeList) testDependents.evaluate(output.getNode(),
+        XPathConstants.NODESET);
+    assertEquals(1, nl.getLength());
+    assertEquals("8", nl.item(0).getFirstChild().getTextContent());
+  }
+
+  public void testParseComplexDocument_hlHierarchy_nestsHlLoopsByParent() throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.HL_HIERARCHY_FEATURE, true);
+    final ByteArrayInputStream is = new ByteArrayInputStream(SampleDocuments.OXFORD_271.getBytes());
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(is)), output);
+    final XPathExpression testAllHlLoops = xpath.compile("//edi:loop[@type = 'HL']");
+    assertEquals(17, ((NodeList) testAllHlLoops.evaluate(output.getNode(),
+        XPathConstants.NODESET)).getLength());
+    final XPathExpression testSubscribers = xpath.compile("/edi:edi/edi:loop[@type = 'HL']"
+        + "/edi:loop[@type = 'HL']/edi:loop[@type = 'HL']/edi:segment[1]");
+    final NodeList subscribers = (NodeList) testSubscribers.evaluate(output.getNode(),
+        XPathConstants.NODESET);
+    assertEquals(10, subscribers.getLength());
+    assertEquals("3", subscribers.item(0).getFirstChild().getTextContent());
+    final XPathExpression testDependents = xpath.compile("//edi:loop[@type = 'HL']"
+        + "/edi:loop[@type = 'HL']/edi:loop[@type = 'HL']/edi:loop[@type = 'HL']/edi:segment[1]");
+    final NodeList dependents = (NodeList) testDependents.evaluate(output.getNode(),
+        XPathConstants.NODESET);
+    assertEquals(1, dependents.getLength());
+    assertEquals("8", dependents.item(0).getFirstChild().getTextContent());
+  }
+
+  public void testParseSampleDocument_asciiEncoding_succeeds() throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    final InputSource inputSource = new InputSource(new ByteArrayInputStream(
+        SampleDocuments.CMS_271.getBytes()));
+    inputSource.setEncoding("US-ASCII");
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, inputSource), output);
+    final XPathExpression testAllHlSegments = xpath.compile("/edi:edi//edi:segment[@type = 'HL']");
+    final NodeList nl = (NodeList) testAllHlSegments.evaluate(output.getNode(),
+        XPathConstants.NODESET);
+    assertEquals(3, nl.getLength());
+  }
+
+  public void testParseComplexDocument_mappedFile_succeeds() throws Exception {
+    final DOMResult output = parseFile(EdiXmlReader.Factory.create(), SampleDocuments.OXFORD_271);
+    assertEquals(17, count(output, "/edi:edi//edi:loop[@type = 'HL']"));
+  }
+
+  public void testParseComplexDocument_structuralIndex_succeeds() throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.STRUCTURAL_INDEX_FEATURE, true);
+    final DOMResult output = parseFile(reader, SampleDocuments.OXFORD_271);
+    assertEquals(17, count(output, "/edi:edi//edi:loop[@type = 'HL']"));
+  }
+
+  public void testParseDocument_fixedWidthIsaWithCustomSeparators_succeeds() throws Exception {
+    final String doc = IsaHeaderTest.FIXED_WIDTH_ISA.replace('*', '^').replace('~', '\'')
+        .replace(":'", "|'") + "GS^HB^OXFRD^LLX1210001'EB^D^IND^^^^^^^^^^^HC|G0389'SE^3^0001'";
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.SINGLE_BYTE_INPUT_FEATURE, true);
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(new ByteArrayInputStream(doc
+        .getBytes()))), output);
+    final XPathExpression isa16 = xpath
+        .compile("/edi:edi/edi:segment[@type = 'ISA']/edi:element[16]");
+    assertEquals("|", ((Node) isa16.evaluate(output.getNode(), XPathConstants.NODE))
+        .getTextContent());
+    final XPathExpression gs03 = xpath.compile("/edi:edi/edi:segment[@type = 'GS']/edi:element[3]");
+    assertEquals("LLX1210001", ((Node) gs03.evaluate(output.getNode(), XPathConstants.NODE))
+        .getTextContent());
+  }
+
+  public void testParseDocument_compositeElements_reportsSubElements() throws Exception {
+    final String doc = VALID_ISA_HEADER + "SV1*HC:G0389*15::A*:X~";
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(new ByteArrayInputStream(doc
+        .getBytes()))), output);
+
+    final Node sv101 = (Node) xpath.compile("/edi:edi/edi:segment[@type = 'SV1']/edi:element[1]")
+        .evaluate(output.getNode(), XPathConstants.NODE);
+    assertEquals("HC", sv101.getFirstChild().getNodeValue());
+    assertEquals("G0389", xpath.evaluate("edi:subelement[1]", sv101));
+    assertEquals(1.0, xpath.evaluate("count(edi:subelement)", sv101, XPathConstants.NUMBER));
+
+    final Node sv102 = (Node) xpath.compile("/edi:edi/edi:segment[@type = 'SV1']/edi:element[2]")
+        .evaluate(output.getNode(), XPathConstants.NODE);
+    assertEquals(2.0, xpath.evaluate("count(edi:subelement)", sv102, XPathConstants.NUMBER));
+    assertEquals("", xpath.evaluate("edi:subelement[1]", sv102));
+    assertEquals("A", xpath.evaluate("edi:subelement[2]", sv102));
+
+    final Node sv103 = (Node) xpath.compile("/edi:edi/edi:segment[@type = 'SV1']/edi:element[3]")
+        .evaluate(output.getNode(), XPathConstants.NODE);
+    assertEquals("X", xpath.evaluate("edi:subelement[1]", sv103));
+  }
+
+  public void testParseDocument_instrument_countsSegments() throws Exception {
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    assertNull(reader.getInstrumentation());
+    reader.setFeature(EdiXmlReader.INSTRUMENT_FEATURE, true);
+    parse(reader, VALID_ISA_HEADER + "SV1*HC:G0389*15~SV1*A~");
+
+    final InstrumentingEdiHandler instrumentation = reader.getInstrumentation();
+    assertEquals(3, instrumentation.getSegmentCount());
+    assertEquals(2, instrumentation.getSegmentStats("SV1").getSegmentCount());
+    assertEquals(3, instrumentation.getSegmentStats("SV1").getElementCount());
+    assertEquals(1, instrumentation.getSegmentStats("SV1").getSubElementCount());
+  }
+
+  public void testParseComplexDocument_batch_matchesUnbatched() throws Exception {
+    final DOMResult expected = parse(EdiXmlReader.Factory.create(), SampleDocuments.OXFORD_271);
+
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.BATCH_FEATURE, true);
+    assertTrue(reader.getFeature(EdiXmlReader.BATCH_FEATURE));
+    final DOMResult output = parse(reader, SampleDocuments.OXFORD_271);
+
+    assertTrue(expected.getNode().isEqualNode(output.getNode()));
+  }
+
+  public void testParseComplexDocument_batch_refusedWithLocatedHandlers() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.replaceFirst("~HL\\*1\\*", "~ZZZ*1~HL*1*");
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.GRAMMAR_FEATURE, true);
+    try {
+      parse(reader, doc);
+      fail("Expected SAXException");
+    } catch (final SAXException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("segment ZZZ"));
+    }
+
+    // Behind a batcher the grammar would see ZZZ a block late, at another segment's location.
+    reader.setFeature(EdiXmlReader.BATCH_FEATURE, true);
+    try {
+      parse(reader, doc);
+      fail("Expected SAXNotSupportedException");
+    } catch (final SAXNotSupportedException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("grammar"));
+    }
+  }
+
+  public void testParseComplexDocument_recover_dropsMalformedSegments() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.replaceFirst("~HL\\*1\\*", "~*BAD~HL*1*")
+        .replaceFirst("~DMG\\*D8\\*19460217\\*M~", "~DMG~");
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    final DOMResult output = parseRecovering(reader, doc);
+
+    final List<ParseError> errors = reader.getParseErrors();
+    assertEquals(2, errors.size());
+    // ISA, GS, ST and BHT come before the first malformed segment, so it is the 5th.
+    assertEquals(5, errors.get(0).getSegmentOrdinal());
+    assertEquals(doc.indexOf("*BAD") + 1, errors.get(0).getOffset());
+    assertEquals("WORD", errors.get(0).getExpected());
+    assertEquals(Token.ELEMENT_SEPARATOR.toString(), errors.get(0).getFound());
+    assertEquals("DMG", errors.get(1).getLocation().getSegment());
+    assertEquals(Token.SEGMENT_TERMINATOR.toString(), errors.get(1).getFound());
+
+    // Loops are still built around the dropped segments.
+    assertEquals(10, count(output, "//edi:loop[@type = '2000C']"));
+    assertEquals(9, count(output, "//edi:segment[@type = 'DMG']"));
+  }
+
+  public void testParseComplexDocument_recover_dropsSegmentsTheGrammarRejects() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.replaceFirst("~HL\\*1\\*", "~ZZZ*1~HL*1*");
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    final DOMResult output = parseRecovering(reader, doc);
+
+    assertEquals(1, reader.getParseErrors().size());
+    final ParseError error = reader.getParseErrors().get(0);
+    assertEquals("ZZZ", error.getLocation().getSegment());
+    assertEquals(5, error.getSegmentOrdinal());
+    assertTrue(error.toString(), error.toString().contains("not allowed"));
+    assertEquals(0, count(output, "//edi:segment[@type = 'ZZZ']"));
+    assertEquals(10, count(output, "//edi:loop[@type = '2000C']"));
+  }
+
+  public void testParseComplexDocument_recover_truncatedInput_closesDocument() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.substring(0, SampleDocuments.OXFORD_271
+        .indexOf("~DMG") + 8);
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    final DOMResult output = parseRecovering(reader, doc);
+
+    assertEquals(1, reader.getParseErrors().size());
+    assertEquals("EOF", reader.getParseErrors().get(0).getFound());
+    assertEquals(3, count(output, "//edi:segment[@type = 'NM1']"));
+  }
+
+  public void testParseComplexDocument_recover_reportsToErrorHandler() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.replaceFirst("~DMG\\*D8\\*19460217\\*M~",
+        "~DMG~");
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.WRAP_EXCEPTIONS_FEATURE, false);
+    final List<SAXParseException> reported = new ArrayList<SAXParseException>();
+    reader.setErrorHandler(new DefaultHandler() {
+      @Override
+      public void error(SAXParseException e) {
+        reported.add(e);
+      }
+    });
+    parseRecovering(reader, doc);
+
+    assertEquals(1, reported.size());
+    final UnexpectedTokenException cause = (UnexpectedTokenException) reported.get(0)
+        .getException();
+    assertEquals(Token.SEGMENT_TERMINATOR, cause.getActual());
+    assertEquals("DMG", cause.getLocation().getSegment());
+  }
+
+  public void testParseComplexDocument_recover_errorHandlerThrows_stopsParse() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.replaceFirst("~DMG\\*D8\\*19460217\\*M~",
+        "~DMG~");
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setErrorHandler(new DefaultHandler() {
+      @Override
+      public void error(SAXParseException e) throws SAXException {
+        throw e;
+      }
+    });
+    try {
+      parseRecovering(reader, doc);
+      fail("Expected SAXParseException");
+    } catch (final SAXParseException e) {
+      assertTrue(e.getException() instanceof UnexpectedTokenException);
+      // Wrapped with the location, as by default
+      assertTrue(e.getException().getMessage(), e.getException().getMessage().contains(
+          "segment DMG"));
+      assertEquals(1, reader.getParseErrors().size());
+    }
+  }
+
+  public void testParseComplexDocument_validateEnvelopes_reportsViolations() throws Exception {
+    final String doc = SampleDocuments.OXFORD_271.replace("GE*1*1~", "GE*1*2~");
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    reader.setFeature(EdiXmlReader.ENVELOPE_VALIDATION_FEATURE, true);
+    final List<SAXParseException> reported = new ArrayList<SAXParseException>();
+    reader.setErrorHandler(new DefaultHandler() {
+      @Override
+      public void error(SAXParseException e) {
+        reported.add(e);
+      }
+    });
+    final DOMResult output = new DOMResult();
+    transformer.transform(new SAXSource(reader, new InputSource(new ByteArrayInputStream(doc
+        .getBytes()))), output);
+
+    assertEquals(1, reader.getParseErrors().size());
+    final ParseError violation = reader.getParseErrors().get(0);
+    assertEquals(ImmutableEdiLocation.of("GE", 2), ImmutableEdiLocation.of(violation
+        .getLocation().getSegment(), violation.getLocation().getIndex()));
+    assertEquals("1", violation.getExpected());
+    assertEquals("2", violation.getFound());
+    assertEquals(1, reported.size());
+    final XPathExpression testIea = xpath.compile("/edi:edi/edi:segment[@type = 'IEA']");
+    assertNotNull(testIea.evaluate(output.getNode(), XPathConstants.NODE));
+  }
+
+  private static DOMResult parseRecovering(EdiXmlReader reader, String doc) throws Exception {
+    reader.setFeature(EdiXmlReader.RECOVER_FEATURE, true);
+    return parse(reader, doc);
+  }
+
+  /** Parses {@code doc} with {@code reader} into a DOM. */
+  private static DOMResult parse(EdiXmlReader reader, String doc) throws Exception {
+    final DOMResult output = new DOMResult();
+    reader.setContentHandler(domBuilder(output));
+    reader.parse(new InputSource(new ByteArrayInputStream(doc.getBytes("US-ASCII"))));
+    return output;
+  }
+
+  /** Parses {@code doc} from a temporary file, as {@link EdiXmlReader#parse(File)} does. */
+  private static DOMResult parseFile(EdiXmlReader reader, String doc) throws Exception {
+    final File file = File.createTempFile("complex", ".edi");
+    try {
+      final FileOutputStream os = new FileOutputStream(file);
+      try {
+        os.write(doc.getBytes("US-ASCII"));
+      } finally {
+        os.close();
+      }
+      final DOMResult output = new DOMResult();
+      reader.setContentHandler(domBuilder(output));
+      reader.parse(file);
+      return output;
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static TransformerHandler domBuilder(DOMResult output) throws Exception {
+    final TransformerHandler transformerHandler = ((SAXTransformerFactory) TransformerFactory
+        .newInstance()).newTransformerHandler();
+    transformerHandler.setResult(output);
+    return transformerHandler;
+  }
+
+  private static int count(DOMResult output, String expression) throws Exception {
+    return ((NodeList) xpath.evaluate(expression, output.getNode(), XPathConstants.NODESET))
+        .getLength();
+  }
 }
@@ -0,0 +1,187 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.edi.grammar.GrammarHandler;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class EdiStreamReaderTest extends TestCase {
+
+  public void testNext_sameEventsAsGrammarHandler() throws Exception {
+    final String expected = push(SampleDocuments.OXFORD_271);
+    assertEquals(expected, pull(EdiStreamReader.create(
+        new StringReader(SampleDocuments.OXFORD_271))));
+    assertEquals(expected, pull(channelReader(SampleDocuments.OXFORD_271)));
+  }
+
+  public void testNext_unpaddedIsa_takesSubElementSeparatorFromIsa16() throws Exception {
+    final String events = pull(channelReader(SampleDocuments.CMS_271));
+    assertTrue(events, events.contains("<2110C [EB(D)(IND)()(MB)()()()()()()()()(HC{G0389})]"));
+    assertEquals(push(SampleDocuments.CMS_271), events);
+  }
+
+  public void testNext_compositeElement_reportsComponents() throws Exception {
+    final EdiStreamReader reader = channelReader(SampleDocuments.CMS_271);
+    while (reader.next() != EdiStreamReader.SUB_ELEMENT) {
+      continue;
+    }
+    assertEquals("G0389", reader.getElementText());
+    assertEquals("EB", reader.getSegmentId());
+    assertEquals(13, reader.getElementIndex());
+    assertEquals(2, reader.getLocation().getSubElement());
+  }
+
+  public void testNext_837_grammarSelectedByGroupVersion() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.substring(0, IsaHeader.LENGTH)
+        + "GS*HC*A*B*20100413*0219*1*X*004010X098A1~ST*837*0001~BHT*0019*00*1~NM1*41*2*SUB~"
+        + "HL*1**20*1~NM1*85*2*BILLING~SE*6*0001~GE*1*1~IEA*1*240140919~";
+    final String events = pull(channelReader(document));
+    assertTrue(events, events.contains("<1000A [NM1(41)(2)(SUB)]><2000A [HL(1)()(20)(1)]"
+        + "<2010AA [NM1(85)"));
+    assertEquals(push(document), events);
+
+    final String institutional = document.replace("004010X098A1", "004010X096A1");
+    assertFalse(pull(channelReader(institutional)).contains("<"));
+    assertEquals(push(institutional), pull(channelReader(institutional)));
+  }
+
+  public void testSkipSegment_leavesReaderAtEndSegment() throws Exception {
+    final EdiStreamReader reader = EdiStreamReader.create(
+        new StringReader(SampleDocuments.OXFORD_271));
+    final List<String> subscribers = new ArrayList<String>();
+    while (reader.next() != EdiStreamReader.END_DOCUMENT) {
+      if (reader.getEventType() != EdiStreamReader.START_SEGMENT) {
+        continue;
+      }
+      if (!reader.getSegmentId().equals("NM1")) {
+        reader.skipSegment();
+        assertEquals(EdiStreamReader.END_SEGMENT, reader.getEventType());
+        continue;
+      }
+      reader.next();
+      if (reader.getElementText().equals("IL")) {
+        reader.next();
+        reader.next();
+        subscribers.add(reader.getElementText());
+      }
+      reader.skipSegment();
+    }
+    assertEquals("[WEISSENBERGER, DAS, CERNUTO, MOHANTY, CASTIGLIONE, FRIEDMAN, VAZQUEZ,"
+        + " CERNUTO, MCDUFFIE]", subscribers.toString());
+    assertFalse(reader.hasNext());
+  }
+
+  public void testSkipSegment_isaWithoutFixedWidth_keepsSubElementSeparator() throws Exception {
+    final EdiStreamReader reader = channelReader(SampleDocuments.CMS_271);
+    assertEquals(EdiStreamReader.START_SEGMENT, reader.next());
+    reader.skipSegment();
+    assertEquals(EdiStreamReader.END_SEGMENT, reader.getEventType());
+    final String expected = push(SampleDocuments.CMS_271);
+    assertEquals(expected.substring(expected.indexOf("[GS")), pull(reader));
+  }
+
+  public void testSkipLoop_leavesReaderAtEndLoop() throws Exception {
+    final EdiStreamReader reader = EdiStreamReader.create(
+        new StringReader(SampleDocuments.OXFORD_271));
+    while (reader.next() != EdiStreamReader.START_LOOP
+        || !reader.getLoopName().equals("2000C")) {
+      continue;
+    }
+    reader.skipLoop();
+    assertEquals(EdiStreamReader.END_LOOP, reader.getEventType());
+    assertEquals("2000C", reader.getLoopName());
+
+    assertEquals(EdiStreamReader.START_LOOP, reader.next());
+    assertEquals("2000C", reader.getLoopName());
+    assertEquals(EdiStreamReader.START_SEGMENT, reader.next());
+    assertEquals("HL", reader.getSegmentId());
+    assertEquals(EdiStreamReader.ELEMENT, reader.next());
+    assertEquals("4", reader.getElementText());
+  }
+
+  public void testNext_afterEndDocument_throws() throws Exception {
+    final EdiStreamReader reader = EdiStreamReader.create(
+        new StringReader(SampleDocuments.OXFORD_271));
+    pull(reader);
+    try {
+      reader.next();
+      fail("Expected IllegalStateException");
+    } catch (final IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  public void testNext_endsInsideSegment_throws() throws Exception {
+    final EdiStreamReader reader = EdiStreamReader.create(
+        new StringReader(SampleDocuments.OXFORD_271.substring(0, 120)));
+    try {
+      pull(reader);
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      // Expected
+    }
+  }
+
+  private static EdiStreamReader channelReader(String document) throws Exception {
+    return EdiStreamReader.create(Channels.newChannel(new ByteArrayInputStream(
+        document.getBytes("US-ASCII"))));
+  }
+
+  /** Renders the rest of the reader's events as an {@link EdiEventBuffer} would. */
+  private static String pull(EdiStreamReader reader) throws Exception {
+    final EdiEventBuffer events = new EdiEventBuffer();
+    boolean inElement = false;
+    while (reader.next() != EdiStreamReader.END_DOCUMENT) {
+      switch (reader.getEventType()) {
+      case EdiStreamReader.START_SEGMENT:
+        events.startSegment(reader.getSegmentId());
+        break;
+      case EdiStreamReader.ELEMENT:
+        if (inElement) {
+          events.endElement();
+        }
+        events.startElement(reader.getElementText());
+        inElement = true;
+        break;
+      case EdiStreamReader.SUB_ELEMENT:
+        events.subElement(reader.getElementText());
+        break;
+      case EdiStreamReader.END_SEGMENT:
+        if (inElement) {
+          events.endElement();
+        }
+        inElement = false;
+        events.endSegment();
+        break;
+      case EdiStreamReader.START_LOOP:
+        events.startLoop(reader.getLoopName());
+        break;
+      case EdiStreamReader.END_LOOP:
+        events.endLoop();
+        break;
+      default:
+        fail("Unexpected event " + reader.getEventType());
+      }
+    }
+    return events.toString();
+  }
+
+  private static String push(String document) throws Exception {
+    final EdiEventBuffer events = new EdiEventBuffer();
+    final PushEdiParser parser = new PushEdiParser(new Configuration.Builder()
+        .setSegmentTerminator('~').setElementSeparator('*').build(), new GrammarHandler(events));
+    parser.feed(ByteBuffer.wrap(document.getBytes("US-ASCII")));
+    parser.finish();
+    return events.toString();
+  }
+}
@@ -44,4 +44,19 @@ public class EdiWriterTransformerTest extends MockTest {
     assertEquals(doc, stringWriter.toString());
   }
 
+  public void testRoundTripCompositeElements_succeeds() throws Exception {
+    final String doc = "ISA*00*          *00*          *ZZ*TPG00094935    *ZZ*TPG00094935    "
+        + "*100413*0219*U*00401*240140919*0*P*:~GS*HC*OXFRD*LLX1210001*20100413*0219*1*X*004010~"
+        + "ST*837*0001~SV1*HC:G0389:25*15::A*:X*1~SE*3*0001~GE*1*1~IEA*1*240140919~";
+    final EdiXmlReader reader = EdiXmlReader.Factory.create();
+    final Configuration writeConfiguration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').setSubElementSeparator(':').build();
+    final StringWriter stringWriter = new StringWriter();
+    final SAXResult output = new SAXResult(new XmlEdiWriter(new EdiWriter(writeConfiguration,
+        stringWriter)));
+    transformer.transform(new SAXSource(reader, new InputSource(new ByteArrayInputStream(doc
+        .getBytes()))), output);
+    assertEquals(doc, stringWriter.toString());
+  }
+
 }
@@ -13,6 +13,7 @@ import com.sociodyne.test.parser.edi.MockEdiParserTest;
 import java.io.CharArrayReader;
 import java.io.EOFException;
 import java.io.Reader;
+import java.util.BitSet;
 
 public class ElementListParserTest extends MockEdiParserTest {
 
@@ -117,4 +118,89 @@ public class ElementListParserTest extends MockEdiParserTest {
     }
   }
 
+  public void testSubElementsWithEmptyFirstComponent_succeeds() throws Exception {
+    expect(subElementListParser.parse(eq(new Token(Token.Type.SUB_ELEMENT_SEPARATOR)))).andReturn(
+        Token.SEGMENT_TERMINATOR);
+
+    handler.startElement("");
+    handler.endElement();
+
+    replay();
+
+    final Reader r = new CharArrayReader(new String("|234~").toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    final ElementListParser parser = new ElementListParser(tokenizer, location, handler,
+        subElementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR, parser.parse(Token.ELEMENT_SEPARATOR));
+  }
+
+  public void testProjection_reportsOnlyWantedElements() throws Exception {
+    handler.startElement("2");
+    handler.endElement();
+    handler.startElement("4");
+    handler.endElement();
+
+    replay();
+
+    final Reader r = new CharArrayReader(new String("1|a|b:2::4:5~NEXT~").toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    final ElementListParser parser = new ElementListParser(tokenizer, location, handler,
+        subElementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR,
+        parser.parse(Token.ELEMENT_SEPARATOR, elements(2, 4)));
+    // The rest of the segment was skipped
+    assertEquals(Token.word("NEXT"), tokenizer.nextToken());
+  }
+
+  public void testProjection_skipsCompositeWithEmptyFirstComponent() throws Exception {
+    handler.startElement("5");
+    handler.endElement();
+
+    replay();
+
+    final Reader r = new CharArrayReader(new String("|X:5~NEXT~").toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    final ElementListParser parser = new ElementListParser(tokenizer, location, handler,
+        subElementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR, parser.parse(Token.ELEMENT_SEPARATOR, elements(2)));
+    assertEquals(Token.word("NEXT"), tokenizer.nextToken());
+  }
+
+  public void testProjection_wantedElementMissing_returnsTerminator() throws Exception {
+    handler.startElement("1");
+    handler.endElement();
+
+    replay();
+
+    final Reader r = new CharArrayReader(new String("1~NEXT~").toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    final ElementListParser parser = new ElementListParser(tokenizer, location, handler,
+        subElementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR,
+        parser.parse(Token.ELEMENT_SEPARATOR, elements(1, 5)));
+    assertEquals(Token.word("NEXT"), tokenizer.nextToken());
+  }
+
+  public void testProjection_noSegmentTerminator_throwsEof() throws Exception {
+    replay();
+
+    final Reader r = new CharArrayReader(new String("1:2").toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    final ElementListParser parser = new ElementListParser(tokenizer, location, handler,
+        subElementListParserFactory);
+    try {
+      parser.parse(Token.ELEMENT_SEPARATOR, elements(3));
+      fail("Expected EOFException");
+    } catch (final EOFException e) {
+      // Expected
+    }
+  }
+
+  private static BitSet elements(int... indexes) {
+    final BitSet elements = new BitSet();
+    for (final int index : indexes) {
+      elements.set(index);
+    }
+    return elements;
+  }
 }
@@ -0,0 +1,110 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.io.EOFException;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+
+public class EnvelopeScannerTest extends TestCase {
+
+  public void testScan_oneTransactionSet() throws Exception {
+    final String document = SampleDocuments.OXFORD_271;
+    final EnvelopeSummary summary = scan(document);
+    assertEquals(1, summary.getInterchanges().size());
+
+    final EnvelopeSummary.Interchange interchange = summary.getInterchanges().get(0);
+    assertEquals("TPG00094935", interchange.getSenderId());
+    assertEquals("TPG00094935", interchange.getReceiverId());
+    assertEquals("240140919", interchange.getControlNumber());
+    assertEquals(0, interchange.getStart());
+    assertEquals(document.length(), interchange.getEnd());
+    assertEquals(1, interchange.getFunctionalGroups().size());
+
+    final EnvelopeSummary.FunctionalGroup group = interchange.getFunctionalGroups().get(0);
+    assertEquals("HB", group.getFunctionalIdentifier());
+    assertEquals("1", group.getControlNumber());
+    assertEquals(document.indexOf("GS*"), group.getStart());
+    assertEquals(document.indexOf("IEA*"), group.getEnd());
+
+    final EnvelopeSummary.TransactionSet transactionSet = group.getTransactionSets().get(0);
+    assertEquals("271", transactionSet.getType());
+    assertEquals("000002624", transactionSet.getControlNumber());
+    // As given by SE01
+    assertEquals(314, transactionSet.getSegmentCount());
+    assertEquals(document.indexOf("ST*"), transactionSet.getStart());
+    assertEquals(document.indexOf("GE*"), transactionSet.getEnd());
+  }
+
+  public void testScan_countsTransactionSetsByType() throws Exception {
+    final String document = ParallelEdiParserTest.repeatTransactionSet(
+        SampleDocuments.OXFORD_271, 3) + SampleDocuments.CMS_271;
+    final EnvelopeSummary summary = scan(document);
+    assertEquals(2, summary.getInterchanges().size());
+    assertEquals(4, summary.getTransactionSetCount());
+    assertEquals(ImmutableMap.of("271", 4), summary.getTransactionSetCounts());
+  }
+
+  public void testScan_tokenizedIsa_paddingTrimmed() throws Exception {
+    final EnvelopeSummary.Interchange interchange = scan(SampleDocuments.CMS_271)
+        .getInterchanges().get(0);
+    assertEquals("CMS", interchange.getSenderId());
+    assertEquals("T000000011", interchange.getReceiverId());
+    assertEquals("002417703", interchange.getControlNumber());
+    final EnvelopeSummary.FunctionalGroup group = interchange.getFunctionalGroups().get(0);
+    assertEquals("2381770", group.getControlNumber());
+    assertEquals("2377396", group.getTransactionSets().get(0).getControlNumber());
+  }
+
+  public void testScan_lineBreaksBetweenSegments() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.replace("~", "~\r\n");
+    final EnvelopeSummary summary = scan(document);
+    assertEquals(1, summary.getTransactionSetCount());
+    // The line break after the IEA is not part of the interchange
+    assertEquals(document.length() - 2, summary.getInterchanges().get(0).getEnd());
+  }
+
+  public void testScan_file() throws Exception {
+    final File file = File.createTempFile("envelope", ".edi");
+    try {
+      Files.write(SampleDocuments.OXFORD_271, file, Charsets.US_ASCII);
+      assertEquals(scan(SampleDocuments.OXFORD_271).toString(), EnvelopeScanner.scan(file)
+          .toString());
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testScan_stOutsideGroup_throwsEdiException() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.replaceFirst("GS\\*[^~]*~", "");
+    try {
+      scan(document);
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("ST outside a functional group"));
+    }
+  }
+
+  public void testScan_noIea_throwsEof() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.substring(0,
+        SampleDocuments.OXFORD_271.indexOf("IEA*"));
+    try {
+      scan(document);
+      fail("Expected EOFException");
+    } catch (final EOFException e) {
+      // Expected
+    }
+  }
+
+  private static EnvelopeSummary scan(String document) throws Exception {
+    return EnvelopeScanner.scan(ByteBuffer.wrap(document.getBytes("US-ASCII")));
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class EnvelopeSplitterTest extends TestCase {
+
+  public void testSplit_transactionSetsBetweenEnvelopeSegments() throws Exception {
+    final String document = ParallelEdiParserTest.repeatTransactionSet(
+        SampleDocuments.OXFORD_271, 2);
+    final List<EnvelopeSplitter.Part> parts = split(document);
+    final int st1 = document.indexOf("ST*");
+    final int st2 = document.indexOf("ST*", st1 + 1);
+    final int ge = document.indexOf("GE*");
+    assertEquals("[envelope[0, " + st1 + "), ST[" + st1 + ", " + st2 + "), ST[" + st2 + ", "
+        + ge + "), envelope[" + ge + ", " + document.length() + ")]", parts.toString());
+    assertTrue(parts.get(0).startsInterchange());
+    assertEquals('~', parts.get(1).configuration.getSegmentTerminator());
+    assertEquals(':', parts.get(1).configuration.getSubElementSeparator());
+  }
+
+  public void testSplit_tokenizedIsa_subElementSeparatorFromIsa16() throws Exception {
+    final String document = SampleDocuments.OXFORD_271 + SampleDocuments.CMS_271;
+    final List<EnvelopeSplitter.Part> parts = split(document);
+    assertEquals(6, parts.size());
+    assertEquals(SampleDocuments.OXFORD_271.length(), parts.get(3).start);
+    assertTrue(parts.get(3).startsInterchange());
+    assertEquals('|', parts.get(4).configuration.getSubElementSeparator());
+  }
+
+  public void testSplit_lineBreaksBeforeSegments_stillSplit() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.replace("~", "~\r\n");
+    final List<EnvelopeSplitter.Part> parts = split(document);
+    assertEquals(3, parts.size());
+    assertTrue(parts.get(1).transactionSet);
+  }
+
+  public void testSplit_unterminatedTransactionSet_leftInLastPart() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.substring(0,
+        SampleDocuments.OXFORD_271.indexOf("SE*"));
+    final List<EnvelopeSplitter.Part> parts = split(document);
+    assertEquals(2, parts.size());
+    assertFalse(parts.get(1).transactionSet);
+    assertEquals(document.length(), parts.get(1).end);
+  }
+
+  private static List<EnvelopeSplitter.Part> split(String document) throws Exception {
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new ByteBufferTokenizer(ByteBuffer.wrap(document
+        .getBytes("US-ASCII")), configuration, fileLocation);
+    return new EnvelopeSplitter(tokenizer, configuration, fileLocation).split();
+  }
+}
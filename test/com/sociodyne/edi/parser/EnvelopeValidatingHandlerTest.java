@@ -0,0 +1,116 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class EnvelopeValidatingHandlerTest extends TestCase {
+
+  public void testValidDocument_noViolations() throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final EnvelopeValidatingHandler handler = new EnvelopeValidatingHandler(output);
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, handler);
+    handler.finish();
+    assertEquals(0, handler.getViolations().size());
+    assertTrue(output.toString().endsWith("[IEA(1)(240140919)]"));
+  }
+
+  public void testWrongCounts_reported() throws Exception {
+    final EnvelopeValidatingHandler handler = new EnvelopeValidatingHandler(new EdiEventBuffer());
+    segment(handler, "ISA", "00", "", "00", "", "ZZ", "S", "ZZ", "R", "100413", "0219", "U",
+        "00401", "000000001", "0", "P", ":");
+    segment(handler, "GS", "HB", "S", "R", "20100413", "0219", "7", "X", "004010X092A1");
+    segment(handler, "ST", "271", "0001");
+    segment(handler, "BHT", "0022");
+    segment(handler, "SE", "4", "0001");
+    segment(handler, "GE", "2", "7");
+    segment(handler, "IEA", "01", "000000001");
+    handler.finish();
+
+    final List<ParseError> violations = handler.getViolations();
+    assertEquals(violations.toString(), 2, violations.size());
+    assertEquals("3", violations.get(0).getExpected());
+    assertEquals("4", violations.get(0).getFound());
+    assertEquals(5, violations.get(0).getSegmentOrdinal());
+    assertEquals(ImmutableEdiLocation.of("SE", 1), violations.get(0).getLocation());
+    assertEquals("1", violations.get(1).getExpected());
+    assertEquals("2", violations.get(1).getFound());
+    assertEquals(ImmutableEdiLocation.of("GE", 1), violations.get(1).getLocation());
+  }
+
+  public void testWrongControlNumbers_reported() throws Exception {
+    final EnvelopeValidatingHandler handler = new EnvelopeValidatingHandler(new EdiEventBuffer());
+    segment(handler, "GS", "HB", "S", "R", "20100413", "0219", "7");
+    segment(handler, "ST", "271", "0001");
+    segment(handler, "SE", "2", "0002");
+    segment(handler, "GE", "1", "8");
+    handler.finish();
+
+    final List<ParseError> violations = handler.getViolations();
+    assertEquals(violations.toString(), 2, violations.size());
+    assertEquals("0001", violations.get(0).getExpected());
+    assertEquals("0002", violations.get(0).getFound());
+    assertEquals(ImmutableEdiLocation.of("SE", 2), violations.get(0).getLocation());
+    assertEquals("7", violations.get(1).getExpected());
+    assertEquals("8", violations.get(1).getFound());
+  }
+
+  public void testMissingTrailers_reported() throws Exception {
+    final EnvelopeValidatingHandler handler = new EnvelopeValidatingHandler(new EdiEventBuffer());
+    segment(handler, "GS", "HB", "S", "R", "20100413", "0219", "7");
+    segment(handler, "ST", "271", "0001");
+    segment(handler, "ST", "271", "0002");
+    segment(handler, "SE", "1", "0002");
+    handler.finish();
+    segment(handler, "SE", "1", "0002");
+
+    final List<ParseError> violations = handler.getViolations();
+    assertEquals(violations.toString(), 4, violations.size());
+    assertEquals("Transaction set 0001 has no SE", violations.get(0).getMessage());
+    assertEquals("ST", violations.get(0).getLocation().getSegment());
+    assertEquals("SE1 does not match the transaction set's count", violations.get(1)
+        .getMessage());
+    assertEquals("Functional group 7 has no GE", violations.get(2).getMessage());
+    assertEquals("SE outside a transaction set", violations.get(3).getMessage());
+  }
+
+  public void testFileLocation_givesOffset() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.replace("SE*314*", "SE*313*");
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final Location fileLocation = new Location();
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final Tokenizer tokenizer = new ByteBufferTokenizer(ByteBuffer.wrap(document
+        .getBytes("US-ASCII")), configuration, fileLocation);
+    final EnvelopeValidatingHandler handler = new EnvelopeValidatingHandler(output,
+        fileLocation);
+    final EdiLocation location = new EdiLocation(fileLocation, "ISA", 0);
+    EdiXmlReader.parseIsa(tokenizer, configuration, location, handler, ParserFactories
+        .segmentParsers());
+    ParserFactories.segmentListParsers().create(location, tokenizer, handler).parse(
+        tokenizer.nextToken());
+
+    final List<ParseError> violations = handler.getViolations();
+    assertEquals(violations.toString(), 1, violations.size());
+    // Found at the end of the SE
+    assertEquals(document.indexOf("~GE*") + 1, violations.get(0).getOffset());
+  }
+
+  private static void segment(EdiHandler handler, String identifier, String... elements)
+      throws EdiException {
+    handler.startSegment(identifier);
+    for (final String element : elements) {
+      handler.startElement(element);
+      handler.endElement();
+    }
+    handler.endSegment();
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class FanOutEdiHandlerTest extends TestCase {
+
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testFinish_everyHandlerGetsEveryEvent() throws Exception {
+    final EdiEventBuffer expected = new EdiEventBuffer();
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, expected);
+
+    final EdiEventBuffer first = new EdiEventBuffer();
+    final EdiEventBuffer second = new EdiEventBuffer();
+    final EdiEventBuffer third = new EdiEventBuffer();
+    // A small ring, so the parser waits for the consumers.
+    final FanOutEdiHandler fanOut = new FanOutEdiHandler(executor, 2, 1, first, second, third);
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, fanOut);
+    fanOut.finish();
+
+    assertEquals(expected.toString(), first.toString());
+    assertEquals(expected.toString(), second.toString());
+    assertEquals(expected.toString(), third.toString());
+  }
+
+  public void testFinish_failingHandler_othersCompleteAndFailureThrown() throws Exception {
+    final EdiEventBuffer expected = new EdiEventBuffer();
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, expected);
+
+    final EdiEventBuffer events = new EdiEventBuffer();
+    final EdiEventBuffer failing = new EdiEventBuffer() {
+      @Override
+      public void startLoop(String segmentIdentifier) {
+        throw new IllegalStateException("No loops");
+      }
+    };
+    final FanOutEdiHandler fanOut = new FanOutEdiHandler(executor, 2, 1, failing, events);
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, fanOut);
+    fanOut.startLoop("HL");
+    fanOut.endLoop();
+    try {
+      fanOut.finish();
+      fail("Expected IllegalStateException");
+    } catch (final IllegalStateException e) {
+      assertEquals("No loops", e.getMessage());
+    }
+    assertEquals(expected.toString() + "<HL >", events.toString());
+  }
+
+  public void testCancel_releasesWaitingParser() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final EdiHandler stuck = new EdiEventBuffer() {
+      @Override
+      public void startSegment(String segmentIdentifier) {
+        blocked.countDown();
+        try {
+          Thread.sleep(Long.MAX_VALUE);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    final FanOutEdiHandler fanOut = new FanOutEdiHandler(executor, 1, 1, stuck);
+    final Thread canceller = new Thread() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        fanOut.cancel();
+      }
+    };
+    canceller.start();
+
+    // With one slot, the parser waits for the stuck handler until cancelled.
+    fanOut.startSegment("ST");
+    try {
+      fanOut.endSegment();
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      // Expected
+    }
+    canceller.join();
+  }
+}
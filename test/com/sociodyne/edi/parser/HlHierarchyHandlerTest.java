@@ -0,0 +1,87 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class HlHierarchyHandlerTest extends TestCase {
+
+  public void testHlsNestedByParent() throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final HlHierarchyHandler handler = new HlHierarchyHandler(output);
+    segment(handler, "ST", "271", "1");
+    segment(handler, "HL", "1", "", "20", "1");
+    segment(handler, "HL", "2", "1", "21", "1");
+    segment(handler, "HL", "3", "2", "22", "0");
+    segment(handler, "NM1", "IL");
+    assertEquals(3, handler.getDepth());
+    // A sibling closes the completed subscriber
+    segment(handler, "HL", "4", "2", "22", "0");
+    // A new information source closes everything
+    segment(handler, "HL", "5", "", "20", "1");
+    segment(handler, "SE", "7", "1");
+    assertEquals(0, handler.getDepth());
+    assertEquals("[ST(271)(1)]<HL [HL(1)()(20)(1)]<HL [HL(2)(1)(21)(1)]<HL [HL(3)(2)(22)(0)]"
+        + "[NM1(IL)]><HL [HL(4)(2)(22)(0)]>>><HL [HL(5)()(20)(1)]>[SE(7)(1)]", output.toString());
+  }
+
+  public void testHlWithoutParentElement_isTopLevel() throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final HlHierarchyHandler handler = new HlHierarchyHandler(output);
+    segment(handler, "HL", "1", "", "20");
+    segment(handler, "HL", "2");
+    handler.endOpenLoops();
+    assertEquals("<HL [HL(1)()(20)]><HL [HL(2)]>", output.toString());
+  }
+
+  public void testUnknownParent_throws() throws Exception {
+    final HlHierarchyHandler handler = new HlHierarchyHandler(new EdiEventBuffer());
+    segment(handler, "HL", "1", "", "20");
+    segment(handler, "HL", "2", "1", "21");
+    segment(handler, "HL", "3", "", "20");
+    try {
+      segment(handler, "HL", "4", "2", "22");
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("parent 2"));
+    }
+  }
+
+  public void testOxford271_treeRebuilt() throws Exception {
+    final EdiEventBuffer output = new EdiEventBuffer();
+    final PushEdiParser parser = new PushEdiParser(new Configuration.Builder()
+        .setSegmentTerminator('~').setElementSeparator('*').build(), new HlHierarchyHandler(
+        output));
+    parser.feed(ByteBuffer.wrap(SampleDocuments.OXFORD_271.getBytes("US-ASCII")));
+    parser.finish();
+
+    final String events = output.toString();
+    assertTrue(events, events.contains("<HL [HL(1)()(20)(1)][NM1(PR)"));
+    assertTrue(events, events.contains("]<HL [HL(2)(1)(21)(1)][NM1(1P)"));
+    // The second subscriber closes the first
+    assertTrue(events, events.contains("]><HL [HL(4)(2)(22)(0)]"));
+    // A dependent four levels down
+    assertTrue(events, events.contains("<HL [HL(7)(6)(22)(1)][TRN"));
+    assertTrue(events, events.contains("]<HL [HL(8)(7)(23)(0)][NM1(03)"));
+    assertTrue(events, events.contains("]>>>><HL [HL(9)()(20)(1)]"));
+    assertTrue(events, events.contains("]>>>[SE(314)(000002624)]"));
+    assertEquals(17, EdiTestHelper.count(events, '<'));
+    assertEquals(17, EdiTestHelper.count(events, '>'));
+  }
+
+  private static void segment(EdiHandler handler, String identifier, String... elements)
+      throws EdiException {
+    handler.startSegment(identifier);
+    for (final String element : elements) {
+      handler.startElement(element);
+      handler.endElement();
+    }
+    handler.endSegment();
+  }
+}
@@ -0,0 +1,84 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.Mock;
+import com.sociodyne.test.MockTest;
+
+import java.nio.ByteBuffer;
+
+public class IndexedTokenizerTest extends MockTest {
+
+  @Mock(Mock.Type.NICE)
+  Location location;
+
+  Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+      .setElementSeparator(':').setSubElementSeparator('|').build();
+
+  public void testReadSegment_withSubElements_succeeds() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("ab:cd|ef~");
+    assertEquals(Token.word("ab"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("cd"), tokenizer.nextToken());
+    assertEquals(Token.SUB_ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("ef"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadWord_eofOkay_nextTokenEof() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("abc");
+    assertEquals(Token.word("abc"), tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testSetDelimiters_reindexesRestOfInput() throws Exception {
+    replay();
+
+    final Configuration isaConfiguration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator(':').build();
+    final IndexedTokenizer tokenizer = new IndexedTokenizer(bytes("a:|~b:c|d~"),
+        isaConfiguration, location);
+    assertEquals(4, tokenizer.getIndex().getEnd());
+    assertEquals(Token.word("a"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("|"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+
+    isaConfiguration.setSubElementSeparator('|');
+    tokenizer.setDelimiters(isaConfiguration.compile());
+    assertEquals(10, tokenizer.getIndex().getEnd());
+    assertEquals(Token.word("b"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("c"), tokenizer.nextToken());
+    assertEquals(Token.SUB_ELEMENT_SEPARATOR, tokenizer.nextToken());
+  }
+
+  public void testSkipSegment_positionedAfterTerminator() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new IndexedTokenizer(bytes("ab:cdefgh|ij~kl~mn"),
+        configuration, fileLocation);
+    assertEquals(Token.word("ab"), tokenizer.nextToken());
+    assertTrue(tokenizer.skipSegment());
+    assertEquals(1, fileLocation.getSegment());
+    assertEquals(13, fileLocation.getOffset());
+    assertEquals(Token.word("kl"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertFalse(tokenizer.skipSegment());
+  }
+
+  private Tokenizer tokenizerFor(String contents) throws Exception {
+    return new IndexedTokenizer(bytes(contents), configuration, location);
+  }
+
+  private static ByteBuffer bytes(String contents) throws Exception {
+    return ByteBuffer.wrap(contents.getBytes("US-ASCII"));
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+public class InstrumentingEdiHandlerTest extends TestCase {
+
+  public void testCounts_bySegmentType() throws Exception {
+    final EdiEventBuffer events = new EdiEventBuffer();
+    final InstrumentingEdiHandler handler = new InstrumentingEdiHandler(events);
+    handler.startSegment("EB");
+    handler.startElement("D");
+    handler.endElement();
+    handler.startElement("HC");
+    handler.subElement("G0389");
+    handler.endElement();
+    handler.endSegment();
+    handler.startSegment("EB");
+    handler.startElement("");
+    handler.endElement();
+    handler.endSegment();
+
+    assertEquals("[EB(D)(HC{G0389})][EB()]", events.toString());
+    final InstrumentingEdiHandler.SegmentStats eb = handler.getSegmentStats("EB");
+    assertEquals(2, eb.getSegmentCount());
+    assertEquals(3, eb.getElementCount());
+    assertEquals(1, eb.getSubElementCount());
+    assertEquals("EB*D*HC:G0389~EB*~".length(), eb.getByteCount());
+    assertNull(handler.getSegmentStats("ST"));
+  }
+
+  public void testByteCount_matchesSingleByteInput() throws Exception {
+    final InstrumentingEdiHandler handler = new InstrumentingEdiHandler(new EdiEventBuffer());
+    EdiTestHelper.pushParse(SampleDocuments.OXFORD_271, handler);
+    assertEquals(SampleDocuments.OXFORD_271.length(), handler.getByteCount());
+    assertEquals(1, handler.getSegmentStats("ST").getSegmentCount());
+    assertEquals(EdiTestHelper.count(SampleDocuments.OXFORD_271, '~'), handler.getSegmentCount());
+  }
+
+  public void testTrace_everyNthSegment() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final InstrumentingEdiHandler handler = new InstrumentingEdiHandler(new EdiEventBuffer(),
+        new PrintStream(out, true), 2);
+    for (final String segment : new String[] { "ST", "BHT", "HL", "SE" }) {
+      handler.startSegment(segment);
+      handler.startElement("1");
+      handler.endElement();
+      handler.endSegment();
+    }
+    final String lineSeparator = System.getProperty("line.separator");
+    assertEquals("[ST(1)]" + lineSeparator + "[HL(1)]" + lineSeparator, out.toString());
+  }
+}
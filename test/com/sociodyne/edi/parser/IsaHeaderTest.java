@@ -0,0 +1,94 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.test.Mock;
+import com.sociodyne.test.parser.edi.MockEdiParserTest;
+
+public class IsaHeaderTest extends MockEdiParserTest {
+
+  static final String FIXED_WIDTH_ISA = "ISA*00*          *00*          *ZZ*TPG00094935    "
+      + "*ZZ*TPG00094935    *100413*0219*U*00401*240140919*0*P*:~";
+
+  @Mock(Mock.Type.NICE)
+  EdiLocation ediLocation;
+
+  public void testParse_fixedWidth_readsSeparatorsAndElements() throws Exception {
+    replay();
+
+    final IsaHeader header = IsaHeader.parse(FIXED_WIDTH_ISA + "GS*HB~");
+    assertNotNull("Expected a fixed-width header", header);
+    assertEquals('*', header.getElementSeparator());
+    assertEquals(':', header.getSubElementSeparator());
+    assertEquals('~', header.getSegmentTerminator());
+    assertEquals("TPG00094935    ", header.getElement(6));
+    assertEquals("240140919", header.getElement(13));
+    assertEquals(":", header.getElement(16));
+    assertFalse("ISA11 is a standards identifier in 00401", header.hasRepetitionSeparator());
+  }
+
+  public void testParse_version00501_readsRepetitionSeparator() throws Exception {
+    replay();
+
+    final IsaHeader header = IsaHeader.parse(FIXED_WIDTH_ISA.replace("*U*00401*", "*^*00501*"));
+    final Configuration configuration = header.toConfiguration();
+    assertEquals('^', configuration.getRepetitionSeparator());
+    assertEquals(CompiledConfiguration.SUBELEMENT, configuration.compile().classOf(':'));
+  }
+
+  public void testParse_notPadded_returnsNull() throws Exception {
+    replay();
+
+    assertNull(IsaHeader.parse("ISA*00*        *00*        *ZZ*T000000011  *ZZ*CMS *"
+        + "050516*0734*U*00401*000005014*1*P*:~GS*HB*CMS*T000000011*20090326*1705*2381770*X~"));
+  }
+
+  public void testParse_tooShort_returnsNull() throws Exception {
+    replay();
+
+    assertNull(IsaHeader.parse(FIXED_WIDTH_ISA.substring(0, IsaHeader.LENGTH - 1)));
+    assertNull(IsaHeader.parse("GS*HB*CMS*T000000011*20090326*1705*2381770*X*004010X092A1~"));
+  }
+
+  public void testEmit_reportsSixteenElements() throws Exception {
+    handler.startSegment("ISA");
+    handler.startElement("00");
+    handler.endElement();
+    handler.startElement("          ");
+    handler.endElement();
+    handler.startElement("00");
+    handler.endElement();
+    handler.startElement("          ");
+    handler.endElement();
+    handler.startElement("ZZ");
+    handler.endElement();
+    handler.startElement("TPG00094935    ");
+    handler.endElement();
+    handler.startElement("ZZ");
+    handler.endElement();
+    handler.startElement("TPG00094935    ");
+    handler.endElement();
+    handler.startElement("100413");
+    handler.endElement();
+    handler.startElement("0219");
+    handler.endElement();
+    handler.startElement("U");
+    handler.endElement();
+    handler.startElement("00401");
+    handler.endElement();
+    handler.startElement("240140919");
+    handler.endElement();
+    handler.startElement("0");
+    handler.endElement();
+    handler.startElement("P");
+    handler.endElement();
+    handler.startElement(":");
+    handler.endElement();
+    handler.endSegment();
+
+    replay();
+
+    IsaHeader.parse(FIXED_WIDTH_ISA).emit(ediLocation, handler);
+  }
+}
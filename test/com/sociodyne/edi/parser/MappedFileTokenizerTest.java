@@ -0,0 +1,81 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.Mock;
+import com.sociodyne.test.MockTest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+public class MappedFileTokenizerTest extends MockTest {
+
+  @Mock(Mock.Type.NICE)
+  Location location;
+
+  Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+      .setElementSeparator(':').setSubElementSeparator('|').build();
+
+  private File file;
+  private FileInputStream is;
+
+  @Override
+  public void tearDown() throws Exception {
+    if (is != null) {
+      is.close();
+    }
+    if (file != null) {
+      file.delete();
+    }
+    super.tearDown();
+  }
+
+  public void testEmptyFile_eof() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("", 4);
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadSegment_wordsStraddleWindows() throws Exception {
+    replay();
+
+    final Tokenizer tokenizer = tokenizerFor("abcdefg:hi|j~", 3);
+    assertEquals(Token.word("abcdefg"), tokenizer.nextToken());
+    assertEquals(Token.ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("hi"), tokenizer.nextToken());
+    assertEquals(Token.SUB_ELEMENT_SEPARATOR, tokenizer.nextToken());
+    assertEquals(Token.word("j"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token on EOF", tokenizer.nextToken());
+  }
+
+  public void testReadRange_stopsAtEnd() throws Exception {
+    replay();
+
+    write("abc:def~ghi~");
+    final Tokenizer tokenizer = new MappedFileTokenizer(is.getChannel(), 4, 8, configuration,
+        location, 2);
+    assertEquals(Token.word("def"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertNull("Expected null token at the end of the range", tokenizer.nextToken());
+  }
+
+  private Tokenizer tokenizerFor(String contents, int windowSize) throws Exception {
+    write(contents);
+    return new MappedFileTokenizer(is.getChannel(), configuration, location, windowSize);
+  }
+
+  private void write(String contents) throws Exception {
+    file = File.createTempFile("mapped", ".edi");
+    final FileOutputStream os = new FileOutputStream(file);
+    try {
+      os.write(contents.getBytes("US-ASCII"));
+    } finally {
+      os.close();
+    }
+    is = new FileInputStream(file);
+  }
+}
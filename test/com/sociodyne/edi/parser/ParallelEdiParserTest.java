@@ -0,0 +1,120 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class ParallelEdiParserTest extends TestCase {
+
+  private ExecutorService executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testParse_manyTransactionSets_sameEventsAsSequentialParse() throws Exception {
+    final String document = repeatTransactionSet(SampleDocuments.OXFORD_271, 9);
+    final EdiEventBuffer events = new EdiEventBuffer();
+    new ParallelEdiParser(executor, 2).parse(bytes(document), events);
+    assertEquals(parseSequentially(document), events.toString());
+    assertEquals(9, count(events.toString(), "[ST(271)"));
+  }
+
+  public void testParse_interchangesWithDifferentDelimiters_eachUsesItsOwn() throws Exception {
+    final String document = SampleDocuments.OXFORD_271 + SampleDocuments.CMS_271
+        + SampleDocuments.OXFORD_271;
+    final EdiEventBuffer events = new EdiEventBuffer();
+    new ParallelEdiParser(executor).parse(bytes(document), events);
+    assertEquals(parseSequentially(SampleDocuments.OXFORD_271)
+        + parseSequentially(SampleDocuments.CMS_271)
+        + parseSequentially(SampleDocuments.OXFORD_271), events.toString());
+  }
+
+  public void testParse_file_sameEventsAsByteBuffer() throws Exception {
+    final String document = repeatTransactionSet(SampleDocuments.OXFORD_271, 3);
+    final File file = File.createTempFile("parallel", ".edi");
+    try {
+      final FileOutputStream os = new FileOutputStream(file);
+      try {
+        os.write(document.getBytes("US-ASCII"));
+      } finally {
+        os.close();
+      }
+      final EdiEventBuffer events = new EdiEventBuffer();
+      new ParallelEdiParser(executor).parse(file, events);
+      assertEquals(parseSequentially(document), events.toString());
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testParse_errorInLaterTransactionSet_earlierOnesDelivered() throws Exception {
+    final String document = repeatTransactionSet(SampleDocuments.OXFORD_271, 3);
+    final int error = document.indexOf("BHT", document.lastIndexOf("ST*271"));
+    final String broken = document.substring(0, error) + "*X~" + document.substring(error);
+    final EdiEventBuffer events = new EdiEventBuffer();
+    try {
+      new ParallelEdiParser(executor).parse(bytes(broken), events);
+      fail("Expected UnexpectedTokenException");
+    } catch (final UnexpectedTokenException e) {
+      assertEquals(2, count(events.toString(), "[SE("));
+      assertEquals(error + 1, e.getLocation().getLocation().getOffset());
+    }
+  }
+
+  /** Repeats the transaction set of a single-transaction document {@code count} times. */
+  static String repeatTransactionSet(String document, int count) {
+    final int start = document.indexOf("ST*");
+    final int end = document.indexOf("GE*");
+    final StringBuilder repeated = new StringBuilder(document.substring(0, start));
+    for (int i = 0; i < count; i++) {
+      repeated.append(document.substring(start, end));
+    }
+    return repeated.append(document.substring(end)).toString();
+  }
+
+  private static String parseSequentially(String document) throws Exception {
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new ByteBufferTokenizer(bytes(document), configuration,
+        fileLocation);
+    final EdiLocation location = new EdiLocation(fileLocation, "ISA", 0);
+    final EdiEventBuffer events = new EdiEventBuffer();
+    EdiXmlReader.parseIsa(tokenizer, configuration, location, events,
+        ParserFactories.segmentParsers());
+    ParserFactories.segmentListParsers().create(location, tokenizer, events).parse(
+        tokenizer.nextToken());
+    return events.toString();
+  }
+
+  private static ByteBuffer bytes(String document) throws Exception {
+    return ByteBuffer.wrap(document.getBytes("US-ASCII"));
+  }
+
+  private static int count(String s, String part) {
+    int count = 0;
+    for (int i = s.indexOf(part); i >= 0; i = s.indexOf(part, i + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
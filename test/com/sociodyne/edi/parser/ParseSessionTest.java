@@ -0,0 +1,65 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import static org.easymock.EasyMock.expect;
+
+import com.sociodyne.test.Mock;
+import com.sociodyne.test.parser.edi.MockEdiParserTest;
+
+public class ParseSessionTest extends MockEdiParserTest {
+
+  @Mock
+  ParserFactory<ElementListParser> elementListParserFactory;
+  @Mock
+  ElementListParser elementListParser;
+
+  public void testParserFor_sameKind_reusesParser() throws Exception {
+    replay();
+
+    final ParseSession session = new SegmentParserFactory(elementListParserFactory).newSession(
+        tokenizer, location, handler);
+    final SegmentParser dtp = session.parserFor(SegmentIdentifiers.code("DTP"));
+    assertSame(dtp, session.parserFor(SegmentIdentifiers.code("REF")));
+    assertSame(dtp, session.create(tokenizer, location, handler, "N3"));
+    assertSame(session.parserFor(SegmentIdentifiers.HL),
+        session.parserFor(SegmentIdentifiers.HL));
+    assertTrue(session.parserFor(SegmentIdentifiers.HL) instanceof HlLoopParser);
+    assertTrue(session.parserFor(SegmentIdentifiers.LS) instanceof LsLoopParser);
+    assertTrue(session.parserFor(SegmentIdentifiers.code("EB")) instanceof LoopParser);
+    assertNotSame(session.parserFor(SegmentIdentifiers.code("EB")),
+        session.parserFor(SegmentIdentifiers.code("NM1")));
+  }
+
+  public void testCreate_otherHandler_newParser() throws Exception {
+    replay();
+
+    final ParseSession session = new SegmentParserFactory(elementListParserFactory).newSession(
+        tokenizer, location, handler);
+    final EdiHandler other = new EdiEventBuffer();
+    final SegmentParser parser = session.create(tokenizer, location, other, "DTP");
+    assertNotSame(session.parserFor(SegmentIdentifiers.code("DTP")), parser);
+    assertNotSame(parser, session.create(tokenizer, location, other, "DTP"));
+  }
+
+  public void testParse_manySegments_createsOneElementListParser() throws Exception {
+    expect(elementListParserFactory.create(location, tokenizer, handler)).andReturn(
+        elementListParser).once();
+    expect(elementListParser.parse(Token.ELEMENT_SEPARATOR)).andReturn(Token.SEGMENT_TERMINATOR)
+        .times(3);
+    readTokens(Token.ELEMENT_SEPARATOR, Token.ELEMENT_SEPARATOR, Token.ELEMENT_SEPARATOR);
+    handler.startSegment("REF");
+    handler.endSegment();
+    handler.startSegment("DTP");
+    handler.endSegment();
+    handler.startSegment("REF");
+    handler.endSegment();
+
+    replay();
+
+    final ParseSession session = new SegmentParserFactory(elementListParserFactory).newSession(
+        tokenizer, location, handler);
+    for (final String segment : new String[] { "REF", "DTP", "REF" }) {
+      session.parserFor(SegmentIdentifiers.code(segment)).parse(Token.word(segment));
+    }
+  }
+}
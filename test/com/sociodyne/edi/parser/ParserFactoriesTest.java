@@ -0,0 +1,86 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+public class ParserFactoriesTest extends TestCase {
+
+  public void testFactories_createParsersDirectly() {
+    final EdiLocation location = new EdiLocation(null, "ISA", 0);
+    final EdiHandler handler = new EdiEventBuffer();
+    final Tokenizer tokenizer = null;
+    assertEquals(SegmentParser.class, ParserFactories.segmentParsers().create(location, tokenizer,
+        handler).getClass());
+    assertNotNull(ParserFactories.elementListParsers().create(location, tokenizer, handler));
+    assertNotNull(ParserFactories.subElementListParsers().create(location, tokenizer, handler));
+    assertNotNull(ParserFactories.segmentListParsers().create(location, tokenizer, handler));
+    assertTrue(ParserFactories.segmentParserFactory().create(tokenizer, location, handler, "HL")
+        instanceof HlLoopParser);
+  }
+
+  public void testParserModule_bindsPlainFactories() throws Exception {
+    final Injector injector = Guice.createInjector(new ParserModule());
+    assertSame(ParserFactories.segmentParsers(),
+        injector.getInstance(Key.get(new TypeLiteral<ParserFactory<SegmentParser>>() {
+        })));
+    assertSame(ParserFactories.segmentParserFactory(),
+        injector.getInstance(SegmentParserFactory.class));
+
+    final EdiXmlReader reader = injector.getInstance(EdiXmlReader.class);
+    reader.setContentHandler(new DefaultHandler());
+    reader.parse(new InputSource(new StringReader(SampleDocuments.OXFORD_271)));
+  }
+
+  public void testProjectedHandler_seesOnlyProjectedSegments() throws Exception {
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new Tokenizer(new StringReader(SampleDocuments.OXFORD_271),
+        configuration, fileLocation);
+    final EdiLocation location = new EdiLocation(fileLocation, "ISA", 0);
+    final SegmentProjection projection = new SegmentProjection.Builder().addSegment("DTP", 3)
+        .addSegment("AAA").build();
+    final ProjectedEventBuffer events = new ProjectedEventBuffer(projection);
+    EdiXmlReader.parseIsa(tokenizer, configuration, location, events,
+        ParserFactories.segmentParsers());
+    ParserFactories.segmentListParsers().create(location, tokenizer, events).parse(
+        tokenizer.nextToken());
+
+    final String parsed = events.toString();
+    assertTrue(parsed, parsed.contains("[DTP(20100413)]"));
+    assertTrue(parsed, parsed.contains("[AAA(Y)()(67)(C)]"));
+    // Loop segments are reported; their other children are not.
+    assertTrue(parsed, parsed.contains("[EB("));
+    assertFalse(parsed, parsed.contains("[DTP(307)"));
+    assertFalse(parsed, parsed.contains("[REF"));
+    assertFalse(parsed, parsed.contains("[TRN"));
+    assertFalse(parsed, parsed.contains("[DMG"));
+  }
+
+  private static class ProjectedEventBuffer extends EdiEventBuffer implements ProjectedEdiHandler {
+
+    private final SegmentProjection projection;
+
+    ProjectedEventBuffer(SegmentProjection projection) {
+      this.projection = projection;
+    }
+
+    public SegmentProjection getProjection() {
+      return projection;
+    }
+  }
+}
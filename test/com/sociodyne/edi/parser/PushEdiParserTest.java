@@ -0,0 +1,144 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.EdiException;
+import com.sociodyne.test.parser.edi.EdiTestHelper;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class PushEdiParserTest extends TestCase {
+
+  public void testFeed_wholeDocument_reportsEverySegment() throws Exception {
+    final String events = parse(SampleDocuments.OXFORD_271, Integer.MAX_VALUE);
+    assertTrue(events, events.startsWith("[ISA(00)(          )(00)"));
+    assertTrue(events, events.endsWith("[IEA(1)(240140919)]"));
+    assertEquals(EdiTestHelper.count(SampleDocuments.OXFORD_271, '~'), EdiTestHelper.count(
+        events, '['));
+  }
+
+  public void testFeed_smallChunks_sameEvents() throws Exception {
+    final String expected = parse(SampleDocuments.OXFORD_271, Integer.MAX_VALUE);
+    assertEquals(expected, parse(SampleDocuments.OXFORD_271, 1));
+    assertEquals(expected, parse(SampleDocuments.OXFORD_271, 7));
+    assertEquals(expected, parse(SampleDocuments.OXFORD_271, 105));
+  }
+
+  public void testFeed_unpaddedIsa_takesSubElementSeparatorFromIsa16() throws Exception {
+    final String events = parse(SampleDocuments.CMS_271, 5);
+    assertTrue(events, events.contains("[EB(D)(IND)()(MB)()()()()()()()()(HC{G0389})]"));
+    assertEquals(events, parse(SampleDocuments.CMS_271, Integer.MAX_VALUE));
+  }
+
+  public void testFeed_emptyElements_reported() throws Exception {
+    final String events = parse(SampleDocuments.OXFORD_271, 3);
+    assertTrue(events, events.contains("[HL(1)()(20)(1)]"));
+  }
+
+  public void testFeed_emptyFirstComponent_reported() throws Exception {
+    final String events = parse(SampleDocuments.OXFORD_271.substring(0, IsaHeader.LENGTH)
+        + "SV1*:X*5~", 4);
+    assertTrue(events, events.endsWith("[SV1({X})(5)]"));
+  }
+
+  public void testFeed_trailingEmptyComponent_reported() throws Exception {
+    final String events = parse(SampleDocuments.OXFORD_271.substring(0, IsaHeader.LENGTH)
+        + "SV1*HC:*5~SV1*HC:~", 4);
+    assertTrue(events, events.endsWith("[SV1(HC{})(5)][SV1(HC{})]"));
+  }
+
+  public void testFinish_insideSegment_throws() throws Exception {
+    final PushEdiParser parser = new PushEdiParser(newConfiguration(), new RecordingHandler());
+    parser.feed(bytes(SampleDocuments.OXFORD_271.substring(0, 120)));
+    try {
+      parser.finish();
+      fail("Expected EdiException");
+    } catch (final EdiException e) {
+      // Expected
+    }
+  }
+
+  public void testFeed_unexpectedToken_locatesError() throws Exception {
+    final String document = SampleDocuments.OXFORD_271.substring(0, IsaHeader.LENGTH) + "GS~";
+    final PushEdiParser parser = new PushEdiParser(newConfiguration(), new RecordingHandler());
+    try {
+      parser.feed(bytes(document));
+      fail("Expected UnexpectedTokenException");
+    } catch (final UnexpectedTokenException e) {
+      assertEquals("GS", e.getLocation().getSegment());
+      assertEquals(IsaHeader.LENGTH + 3, e.getLocation().getLocation().getOffset());
+      assertEquals(2, e.getLocation().getLocation().getSegment());
+    }
+  }
+
+  public void testGetLocation_tracksOffsetAcrossChunks() throws Exception {
+    final PushEdiParser parser = new PushEdiParser(newConfiguration(), new RecordingHandler());
+    parser.feed(bytes(SampleDocuments.OXFORD_271.substring(0, 100)));
+    assertEquals(0, parser.getOffset());
+
+    parser.feed(bytes(SampleDocuments.OXFORD_271.substring(100, 130)));
+    assertEquals(130, parser.getOffset());
+    assertEquals(130, parser.getLocation().getLocation().getChar());
+    assertEquals("GS", parser.getLocation().getSegment());
+  }
+
+  private static String parse(String document, int chunkSize) throws Exception {
+    final RecordingHandler handler = new RecordingHandler();
+    final PushEdiParser parser = new PushEdiParser(newConfiguration(), handler);
+    final ByteBuffer input = bytes(document);
+    while (input.hasRemaining()) {
+      final ByteBuffer chunk = input.slice();
+      chunk.limit(Math.min(chunkSize, chunk.remaining()));
+      parser.feed(chunk);
+      assertFalse(chunk.hasRemaining());
+      input.position(input.position() + chunk.position());
+    }
+    parser.finish();
+    return handler.events.toString();
+  }
+
+  private static Configuration newConfiguration() {
+    return new Configuration.Builder().setSegmentTerminator('~').setElementSeparator('*').build();
+  }
+
+  private static ByteBuffer bytes(String contents) throws Exception {
+    return ByteBuffer.wrap(contents.getBytes("ISO-8859-1"));
+  }
+
+  /** Records events as {@code [SEG(element)(element{sub})]}. */
+  private static class RecordingHandler implements EdiHandler {
+
+    final StringBuilder events = new StringBuilder();
+
+    public void startSegment(String segmentIdentifier) {
+      events.append('[').append(segmentIdentifier);
+    }
+
+    public void endSegment() {
+      events.append(']');
+    }
+
+    public void startElement(String contents) {
+      events.append('(').append(contents);
+    }
+
+    public void endElement() {
+      events.append(')');
+    }
+
+    public void subElement(String contents) {
+      events.append('{').append(contents).append('}');
+    }
+
+    public void startLoop(String segmentIdentifier) {
+      fail("Unexpected loop");
+    }
+
+    public void endLoop() {
+      fail("Unexpected loop");
+    }
+  }
+}
@@ -0,0 +1,57 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.ImmutableSet;
+
+public class SegmentIdentifiersTest extends TestCase {
+
+  public void testCode_identifiers_distinct() {
+    assertTrue(SegmentIdentifiers.code("HL") != SegmentIdentifiers.NONE);
+    assertTrue(SegmentIdentifiers.code("HL") != SegmentIdentifiers.code("HL1"));
+    assertTrue(SegmentIdentifiers.code("NM1") != SegmentIdentifiers.code("N1"));
+    assertEquals(SegmentIdentifiers.HL, SegmentIdentifiers.code(new StringBuilder("HL")));
+  }
+
+  public void testCode_notIdentifier_none() {
+    assertEquals(SegmentIdentifiers.NONE, SegmentIdentifiers.code("H"));
+    assertEquals(SegmentIdentifiers.NONE, SegmentIdentifiers.code("HLXX"));
+    assertEquals(SegmentIdentifiers.NONE, SegmentIdentifiers.code("hl"));
+    assertEquals(SegmentIdentifiers.NONE, SegmentIdentifiers.code("H*"));
+  }
+
+  public void testIdentifier_roundTrips() {
+    for (final String identifier : new String[] { "HL", "NM1", "N3", "ISA", "999", "A0" }) {
+      assertEquals(identifier, SegmentIdentifiers.identifier(SegmentIdentifiers.code(identifier)));
+    }
+  }
+
+  public void testIntern_returnsCanonicalInstance() {
+    assertSame("DTP", SegmentIdentifiers.intern(new StringBuilder("DTP")));
+    assertSame(SegmentIdentifiers.intern("EB"), SegmentIdentifiers.intern(new String("EB")));
+    assertEquals("lower", SegmentIdentifiers.intern("lower"));
+  }
+
+  public void testCodes_setOfIdentifiers() {
+    final BitSet codes = SegmentIdentifiers.codes(ImmutableSet.of("DTP", "MSG"));
+    assertTrue(codes.get(SegmentIdentifiers.code("DTP")));
+    assertFalse(codes.get(SegmentIdentifiers.code("EB")));
+    assertFalse(codes.get(SegmentIdentifiers.NONE));
+  }
+
+  public void testWordToken_segmentIdentifier_notAllocated() {
+    final CharArraySlice slice = new CharArraySlice();
+    final WordToken word = new WordToken(slice);
+    slice.reset("NM1*".toCharArray(), 0, 3);
+    word.reset();
+    final String first = word.getValue();
+
+    slice.reset("xNM1".toCharArray(), 1, 3);
+    word.reset();
+    assertSame(first, word.getValue());
+    assertEquals(SegmentIdentifiers.code("NM1"), word.getSegmentCode());
+  }
+}
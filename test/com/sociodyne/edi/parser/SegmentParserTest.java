@@ -17,6 +17,11 @@ public class SegmentParserTest extends MockEdiParserTest {
   ParserFactory<ElementListParser> elementListParserFactory;
   @Mock
   ElementListParser elementListParser;
+  @Mock
+  ProjectedEdiHandler projectedHandler;
+
+  SegmentProjection projection = new SegmentProjection.Builder().addSegment("NM1")
+      .addSegment("DTP", 3).build();
 
   @Override
   public void setUp() throws Exception {
@@ -83,4 +88,63 @@ public class SegmentParserTest extends MockEdiParserTest {
     tokenizer.nextToken();
   }
 
+  public void testProjection_unwantedSegment_isSkipped() throws Exception {
+    expect(projectedHandler.getProjection()).andReturn(projection);
+    expect(tokenizer.skipSegment()).andReturn(true);
+
+    replay();
+
+    final SegmentParser parser = new SegmentParser(tokenizer, location, projectedHandler,
+        elementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR, parser.parse(new Token(Token.Type.WORD, "REF")));
+  }
+
+  public void testProjection_unwantedSegmentAtEof_throwsEof() throws Exception {
+    expect(projectedHandler.getProjection()).andReturn(projection);
+    expect(tokenizer.skipSegment()).andReturn(false);
+
+    replay();
+
+    final SegmentParser parser = new SegmentParser(tokenizer, location, projectedHandler,
+        elementListParserFactory);
+    try {
+      parser.parse(new Token(Token.Type.WORD, "REF"));
+      fail("Expected EOFException");
+    } catch (final EOFException e) {
+      // Expected
+    }
+  }
+
+  public void testProjection_wantedSegment_parsesWantedElements() throws Exception {
+    expect(projectedHandler.getProjection()).andReturn(projection);
+    expect(elementListParser.parse(eq(Token.ELEMENT_SEPARATOR),
+        eq(projection.elements(SegmentIdentifiers.code("DTP"))))).andReturn(
+        Token.SEGMENT_TERMINATOR);
+    readTokens(Token.ELEMENT_SEPARATOR);
+
+    projectedHandler.startSegment(eq("DTP"));
+    projectedHandler.endSegment();
+
+    replay();
+
+    final SegmentParser parser = new SegmentParser(tokenizer, location, projectedHandler,
+        elementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR, parser.parse(new Token(Token.Type.WORD, "DTP")));
+  }
+
+  public void testProjection_wantedSegment_parsesAllElements() throws Exception {
+    expect(projectedHandler.getProjection()).andReturn(projection);
+    expect(elementListParser.parse(eq(Token.ELEMENT_SEPARATOR))).andReturn(
+        Token.SEGMENT_TERMINATOR);
+    readTokens(Token.ELEMENT_SEPARATOR);
+
+    projectedHandler.startSegment(eq("NM1"));
+    projectedHandler.endSegment();
+
+    replay();
+
+    final SegmentParser parser = new SegmentParser(tokenizer, location, projectedHandler,
+        elementListParserFactory);
+    assertEquals(Token.SEGMENT_TERMINATOR, parser.parse(new Token(Token.Type.WORD, "NM1")));
+  }
 }
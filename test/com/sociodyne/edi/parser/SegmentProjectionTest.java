@@ -0,0 +1,66 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import junit.framework.TestCase;
+
+public class SegmentProjectionTest extends TestCase {
+
+  private static final int NM1 = SegmentIdentifiers.code("NM1");
+  private static final int EB = SegmentIdentifiers.code("EB");
+  private static final int DTP = SegmentIdentifiers.code("DTP");
+
+  public void testAddSegment_allElements() {
+    final SegmentProjection projection = new SegmentProjection.Builder().addSegment("NM1")
+        .build();
+    assertTrue(projection.containsSegment(NM1));
+    assertTrue(projection.containsElement(NM1, 1));
+    assertTrue(projection.containsElement(NM1, 9));
+    assertNull(projection.elements(NM1));
+    assertFalse(projection.containsSegment(EB));
+    assertFalse(projection.containsElement(EB, 1));
+  }
+
+  public void testAddSegment_someElements() {
+    final SegmentProjection projection = new SegmentProjection.Builder().addSegment("EB", 1, 3)
+        .addSegment("EB", 4).build();
+    assertTrue(projection.containsSegment(EB));
+    assertTrue(projection.containsElement(EB, 1));
+    assertFalse(projection.containsElement(EB, 2));
+    assertTrue(projection.containsElement(EB, 3));
+    assertTrue(projection.containsElement(EB, 4));
+    assertFalse(projection.containsElement(EB, 5));
+  }
+
+  public void testAddSegment_allElementsWins() {
+    final SegmentProjection projection = new SegmentProjection.Builder().addSegment("DTP", 3)
+        .addSegment("DTP").addSegment("DTP", 1).build();
+    assertTrue(projection.containsElement(DTP, 2));
+    assertNull(projection.elements(DTP));
+  }
+
+  public void testBuild_isUnaffectedByLaterChanges() {
+    final SegmentProjection.Builder builder = new SegmentProjection.Builder().addSegment("EB", 1);
+    final SegmentProjection projection = builder.build();
+    builder.addSegment("EB", 2).addSegment("NM1");
+    assertFalse(projection.containsElement(EB, 2));
+    assertFalse(projection.containsSegment(NM1));
+  }
+
+  public void testAddSegment_notAnIdentifier_throwsIllegalArgument() {
+    try {
+      new SegmentProjection.Builder().addSegment("nm1");
+      fail("Expected IllegalArgumentException");
+    } catch (final IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  public void testAddSegment_elementZero_throwsIllegalArgument() {
+    try {
+      new SegmentProjection.Builder().addSegment("EB", 0);
+      fail("Expected IllegalArgumentException");
+    } catch (final IllegalArgumentException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,134 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.parser.Location;
+import com.sociodyne.test.parser.edi.SampleDocuments;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SegmentRouterTest extends TestCase {
+
+  public void testRoute_callsCallbackWithWholeSegment() throws Exception {
+    final RecordingCallback nm1 = new RecordingCallback();
+    final RecordingCallback eb = new RecordingCallback();
+    final SegmentRouter router = new SegmentRouter.Builder().route("NM1", nm1).route("EB", eb)
+        .build();
+
+    router.startLoop("HL");
+    router.startSegment("NM1");
+    router.startElement("IL");
+    router.endElement();
+    router.startElement("");
+    router.endElement();
+    router.startElement("SMITH");
+    router.endElement();
+    router.endSegment();
+    router.startSegment("DTP");
+    router.startElement("307");
+    router.endElement();
+    router.endSegment();
+    router.startSegment("EB");
+    router.startElement("HC");
+    router.subElement("G0389");
+    router.endElement();
+    router.endSegment();
+    router.endLoop();
+
+    assertEquals(1, nm1.segments.size());
+    assertEquals("NM1*IL**SMITH", nm1.segments.get(0));
+    assertEquals(1, eb.segments.size());
+    assertEquals("EB*HC:G0389", eb.segments.get(0));
+  }
+
+  public void testRecord_indexedElementsAndComponents() throws Exception {
+    final SegmentRecord[] seen = new SegmentRecord[1];
+    final SegmentRouter router = new SegmentRouter.Builder().route("SV1", new SegmentCallback() {
+      public void handleSegment(SegmentRecord record) {
+        assertEquals("SV1", record.getSegmentIdentifier());
+        assertEquals(SegmentIdentifiers.code("SV1"), record.getSegmentCode());
+        assertEquals(2, record.getElementCount());
+        assertEquals("HC", record.getElement(1));
+        assertEquals(3, record.getComponentCount(1));
+        assertEquals("", record.getComponent(1, 2));
+        assertEquals("25", record.getComponent(1, 3));
+        assertEquals("", record.getComponent(1, 4));
+        assertEquals("15", record.getElement(2));
+        assertEquals(1, record.getComponentCount(2));
+        assertEquals("", record.getElement(3));
+        assertEquals(0, record.getComponentCount(3));
+        seen[0] = record;
+      }
+    }).build();
+
+    router.startSegment("SV1");
+    router.startElement("HC");
+    router.subElement("");
+    router.subElement("25");
+    router.endElement();
+    router.startElement("15");
+    router.endElement();
+    router.endSegment();
+    assertNotNull(seen[0]);
+
+    try {
+      seen[0].getElement(0);
+      fail("Expected IllegalArgumentException");
+    } catch (final IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  public void testBuilder_duplicateRoute_throws() throws Exception {
+    final SegmentRouter.Builder builder = new SegmentRouter.Builder().route("EB",
+        new RecordingCallback());
+    try {
+      builder.route("EB", new RecordingCallback());
+      fail("Expected IllegalArgumentException");
+    } catch (final IllegalArgumentException e) {
+      // Expected
+    }
+    try {
+      builder.route("eb", new RecordingCallback());
+      fail("Expected IllegalArgumentException");
+    } catch (final IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
+  public void testParse_projectionSkipsUnroutedSegments() throws Exception {
+    final RecordingCallback eb = new RecordingCallback();
+    final RecordingCallback ge = new RecordingCallback();
+    final SegmentRouter router = new SegmentRouter.Builder().route("EB", eb).route("GE", ge)
+        .build();
+    assertTrue(router.getProjection().containsSegment(SegmentIdentifiers.code("EB")));
+    assertFalse(router.getProjection().containsSegment(SegmentIdentifiers.code("NM1")));
+
+    final Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator('*').build();
+    final Location fileLocation = new Location();
+    final Tokenizer tokenizer = new ByteBufferTokenizer(ByteBuffer.wrap(SampleDocuments.CMS_271
+        .getBytes("US-ASCII")), configuration, fileLocation);
+    final EdiLocation location = new EdiLocation(fileLocation, "ISA", 0);
+    EdiXmlReader.parseIsa(tokenizer, configuration, location, router,
+        ParserFactories.segmentParsers());
+    ParserFactories.segmentListParsers().create(location, tokenizer, router).parse(
+        tokenizer.nextToken());
+
+    assertTrue(eb.segments.toString(), eb.segments.contains("EB*D*IND**MB*********HC:G0389"));
+    assertEquals(1, ge.segments.size());
+    assertTrue(ge.segments.get(0), ge.segments.get(0).startsWith("GE*1*"));
+  }
+
+  private static class RecordingCallback implements SegmentCallback {
+    final List<String> segments = new ArrayList<String>();
+
+    public void handleSegment(SegmentRecord record) {
+      segments.add(record.toString());
+    }
+  }
+}
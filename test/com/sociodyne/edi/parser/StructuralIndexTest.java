@@ -0,0 +1,103 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.edi.parser;
+
+import com.sociodyne.edi.CompiledConfiguration;
+import com.sociodyne.edi.Configuration;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class StructuralIndexTest extends TestCase {
+
+  private final CompiledConfiguration delimiters = new Configuration.Builder()
+      .setSegmentTerminator('~').setElementSeparator(':').setSubElementSeparator('|').build()
+      .compile();
+
+  public void testNextDelimiter_findsEveryDelimiter() throws Exception {
+    final String contents = "ab:cd|ef~gh~ij";
+    final StructuralIndex index = StructuralIndex.build(bytes(contents), delimiters);
+    int position = -1;
+    final StringBuilder found = new StringBuilder();
+    while ((position = index.nextDelimiter(position + 1)) < index.getEnd()) {
+      found.append(position).append(' ');
+    }
+    assertEquals("2 5 8 11 ", found.toString());
+    assertEquals(contents.length(), index.getEnd());
+  }
+
+  public void testNextDelimiter_acrossBitmapWords() throws Exception {
+    final StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      contents.append('x');
+    }
+    contents.setCharAt(63, ':');
+    contents.setCharAt(64, ':');
+    contents.setCharAt(190, '~');
+    final StructuralIndex index = StructuralIndex.build(bytes(contents.toString()), delimiters);
+    assertEquals(63, index.nextDelimiter(0));
+    assertEquals(64, index.nextDelimiter(64));
+    assertEquals(190, index.nextDelimiter(65));
+    assertEquals(200, index.nextDelimiter(191));
+  }
+
+  public void testSegments_randomAccess() throws Exception {
+    final StructuralIndex index = StructuralIndex.build(bytes("ab:c~def~~gh"), delimiters);
+    assertEquals(3, index.getSegmentCount());
+    assertEquals(5, index.segmentStart(1));
+    assertEquals(8, index.segmentEnd(1));
+    assertEquals("def", ascii(index.segment(1)));
+    assertEquals("", ascii(index.segment(2)));
+    assertEquals(8, index.nextSegmentTerminator(6));
+    assertEquals(8, index.nextSegmentTerminator(8));
+    assertEquals(12, index.nextSegmentTerminator(10));
+  }
+
+  public void testBuild_positionsAreBufferIndexes() throws Exception {
+    final ByteBuffer input = bytes("skip~ab:c~");
+    input.position(5);
+    final StructuralIndex index = StructuralIndex.build(input, delimiters);
+    assertEquals(5, index.getStart());
+    assertEquals(7, index.nextDelimiter(5));
+    assertEquals(1, index.getSegmentCount());
+    assertEquals("ab:c", ascii(index.segment(0)));
+  }
+
+  public void testBuild_firstSegmentOnly_stopsAfterTerminator() throws Exception {
+    final ByteBuffer input = bytes("ab:c~de:f~");
+    final StructuralIndex index = StructuralIndex.build(input, 0, input.limit(), delimiters,
+        true);
+    assertEquals(5, index.getEnd());
+    assertEquals(1, index.getSegmentCount());
+    assertEquals(5, index.nextDelimiter(5));
+  }
+
+  public void testBuild_firstSegmentOnly_noTerminator_indexesWholeRange() throws Exception {
+    final ByteBuffer input = bytes("ab:c");
+    final StructuralIndex index = StructuralIndex.build(input, 0, input.limit(), delimiters,
+        true);
+    assertEquals(4, index.getEnd());
+    assertEquals(0, index.getSegmentCount());
+    assertEquals(2, index.nextDelimiter(0));
+  }
+
+  public void testBuild_manySegments_growsTerminators() throws Exception {
+    final StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      contents.append("a:b~");
+    }
+    final StructuralIndex index = StructuralIndex.build(bytes(contents.toString()), delimiters);
+    assertEquals(100, index.getSegmentCount());
+    assertEquals(399, index.segmentEnd(99));
+  }
+
+  private static ByteBuffer bytes(String contents) throws Exception {
+    return ByteBuffer.wrap(contents.getBytes("US-ASCII"));
+  }
+
+  private static String ascii(ByteBuffer buffer) throws Exception {
+    final byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, "US-ASCII");
+  }
+}
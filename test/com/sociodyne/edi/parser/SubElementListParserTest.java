@@ -10,19 +10,21 @@ public class SubElementListParserTest extends MockEdiParserTest {
 
   public void testOneSubElement_succeeds() throws Exception {
     readTokens(Token.word("123"), Token.SEGMENT_TERMINATOR);
+    handler.subElement("123");
 
     replay();
 
-    final SubElementListParser parser = new SubElementListParser(tokenizer, location);
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
     parser.parse(Token.SUB_ELEMENT_SEPARATOR);
   }
 
   public void testOneSubElement_noSegmentTerminator_throwsEof() throws Exception {
     readTokens(Token.word("123"));
+    handler.subElement("123");
 
     replay();
 
-    final SubElementListParser parser = new SubElementListParser(tokenizer, location);
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
     try {
       parser.parse(Token.SUB_ELEMENT_SEPARATOR);
       fail("Expected ParseException caused by EOFException");
@@ -35,29 +37,35 @@ public class SubElementListParserTest extends MockEdiParserTest {
   public void testTwoSubElements_succeeds() throws Exception {
     readTokens(Token.word("123"), Token.SUB_ELEMENT_SEPARATOR, Token.word("234"),
         Token.SEGMENT_TERMINATOR);
+    handler.subElement("123");
+    handler.subElement("234");
 
     replay();
 
-    final SubElementListParser parser = new SubElementListParser(tokenizer, location);
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
     parser.parse(Token.SUB_ELEMENT_SEPARATOR);
   }
 
   public void testTwoSubElements_withElementSeparator_succeeds() throws Exception {
     readTokens(Token.word("123"), Token.SUB_ELEMENT_SEPARATOR, Token.word("234"),
         Token.ELEMENT_SEPARATOR);
+    handler.subElement("123");
+    handler.subElement("234");
 
     replay();
 
-    final SubElementListParser parser = new SubElementListParser(tokenizer, location);
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
     parser.parse(Token.SUB_ELEMENT_SEPARATOR);
   }
 
   public void testTwoSubElements_noSegmentTerminator_throwsEof() throws Exception {
     readTokens(Token.word("123"), Token.SUB_ELEMENT_SEPARATOR, Token.word("234"));
+    handler.subElement("123");
+    handler.subElement("234");
 
     replay();
 
-    final SubElementListParser parser = new SubElementListParser(tokenizer, location);
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
     try {
       parser.parse(Token.SUB_ELEMENT_SEPARATOR);
       fail("Expected ParseException caused by EOFException");
@@ -67,4 +75,31 @@ public class SubElementListParserTest extends MockEdiParserTest {
     }
   }
 
+  public void testEmptySubElements_succeeds() throws Exception {
+    readTokens(Token.SUB_ELEMENT_SEPARATOR, Token.word("234"), Token.SUB_ELEMENT_SEPARATOR,
+        Token.ELEMENT_SEPARATOR);
+    handler.subElement("");
+    handler.subElement("234");
+    handler.subElement("");
+
+    replay();
+
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
+    assertEquals(Token.ELEMENT_SEPARATOR, parser.parse(Token.SUB_ELEMENT_SEPARATOR));
+  }
+
+  public void testWordAfterSubElement_throwsUnexpectedToken() throws Exception {
+    readTokens(Token.word("123"), Token.word("234"));
+    handler.subElement("123");
+
+    replay();
+
+    final SubElementListParser parser = new SubElementListParser(tokenizer, location, handler);
+    try {
+      parser.parse(Token.SUB_ELEMENT_SEPARATOR);
+      fail("Expected UnexpectedTokenException");
+    } catch (final UnexpectedTokenException e) {
+      // Expected
+    }
+  }
 }
@@ -17,6 +17,8 @@ public class TokenizerTest extends MockTest {
   Configuration configuration = new Configuration.Builder().setSegmentTerminator('~')
       .setElementSeparator(':').setSubElementSeparator('|').build();
 
+  private static final String CONTENTS_WITH_NEWLINES = "ab~\ncd:ef\ngh~x";
+
   public void testReadSegmentTerminator() throws Exception {
     replay();
 
@@ -93,4 +95,49 @@ public class TokenizerTest extends MockTest {
     assertNull("Expected null token on EOF", tokenizer.nextToken());
   }
 
+  public void testSetDelimiters_afterSubElementSeparatorAssigned_succeeds() throws Exception {
+    replay();
+
+    final Configuration isaConfiguration = new Configuration.Builder().setSegmentTerminator('~')
+        .setElementSeparator(':').build();
+    final Reader r = new CharArrayReader(new String("a|b~c|d~").toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, isaConfiguration, location);
+    assertEquals(new Token(Token.Type.WORD, "a|b"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+
+    isaConfiguration.setSubElementSeparator('|');
+    tokenizer.setDelimiters(isaConfiguration.compile());
+    assertEquals(new Token(Token.Type.WORD, "c"), tokenizer.nextToken());
+    assertEquals(Token.SUB_ELEMENT_SEPARATOR, tokenizer.nextToken());
+  }
+
+  public void testSkipSegment_positionedAfterTerminator() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final Reader r = new CharArrayReader("ab:cd|ef~gh~ij".toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    assertEquals(Token.word("ab"), tokenizer.nextToken());
+    assertTrue(tokenizer.skipSegment());
+    assertEquals(1, fileLocation.getSegment());
+    assertEquals(Token.word("gh"), tokenizer.nextToken());
+    assertEquals(Token.SEGMENT_TERMINATOR, tokenizer.nextToken());
+    assertFalse(tokenizer.skipSegment());
+  }
+
+  public void testLocation_resolvedFromOffset() throws Exception {
+    replay();
+
+    final Location fileLocation = new Location();
+    final Reader r = new CharArrayReader(CONTENTS_WITH_NEWLINES.toCharArray());
+    final Tokenizer tokenizer = new Tokenizer(r, configuration, fileLocation);
+    for (int i = 0; i < 5; i++) {
+      tokenizer.nextToken();
+    }
+    // The segment terminator after the last word has already been read as the look-ahead.
+    assertEquals(13, fileLocation.getOffset());
+    assertEquals(2, fileLocation.getSegment());
+    assertEquals(2, fileLocation.getLine());
+    assertEquals(3, Location.copyOf(fileLocation).getChar());
+  }
 }
@@ -0,0 +1,39 @@
+// Copyright 2011, Sociodyne LLC. All rights reserved.
+package com.sociodyne.test.parser.edi;
+
+import com.sociodyne.edi.Configuration;
+import com.sociodyne.edi.parser.EdiHandler;
+import com.sociodyne.edi.parser.PushEdiParser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parsing helpers shared by parser tests.
+ */
+public class EdiTestHelper {
+
+  /**
+   * Parses {@code document}, which uses {@code ~} and {@code *} as its delimiters, in one feed to
+   * a {@link PushEdiParser} that reports to {@code handler}.
+   */
+  public static void pushParse(String document, EdiHandler handler) throws Exception {
+    final PushEdiParser parser = new PushEdiParser(new Configuration.Builder()
+        .setSegmentTerminator('~').setElementSeparator('*').build(), handler);
+    parser.feed(ByteBuffer.wrap(document.getBytes("US-ASCII")));
+    parser.finish();
+  }
+
+  /** Returns the number of times {@code ch} occurs in {@code s}. */
+  public static int count(String s, char ch) {
+    int count = 0;
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) == ch) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private EdiTestHelper() {
+  }
+}